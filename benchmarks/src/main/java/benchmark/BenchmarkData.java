@@ -0,0 +1,154 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import io.MxFileWriter;
+
+import abstractTypes.AbstractArrayElement;
+
+import array.MxCellArray;
+import array.MxNumericArray;
+import array.MxSparseArray;
+import array.MxStructArray;
+
+/**
+ * Generates the variables and .mat files the benchmarks work on.
+ * All data is derived from a fixed seed, i.e. every run of a benchmark
+ * sees the same files.
+ *
+ * Shapes (size is the number of values of the variable):
+ *   double  - 1 x size double vector
+ *   int32   - 1 x size int32 vector
+ *   sparse  - double sparse matrix with size/100 non-zero elements
+ *   cell    - 1 x 10 cell array of 1 x size/10 double vectors
+ *   struct  - 1 x 1 struct with 10 fields of 1 x size/10 double vectors
+ */
+public class BenchmarkData
+{
+        public static final String VARNAME = "x";
+        
+        private static final int  NUM_CHILDREN = 10;
+        private static final long SEED         = 4711;
+        
+        private BenchmarkData()
+        {
+        }
+        
+        /**
+         * Creates a variable of the given shape and size
+         */
+        public static AbstractArrayElement create(String name, String shape, int size, boolean compressed)
+        {
+                Random random = new Random(SEED);
+                
+                if ( shape.equals("double") )
+                {
+                        MxNumericArray array = new MxNumericArray(name, compressed);
+                        array.setData(randomDoubles(random, size));
+                        return array;
+                }
+                else if ( shape.equals("int32") )
+                {
+                        int[] data = new int[size];
+                        for ( int i = 0; i < size; i++ )
+                                data[i] = random.nextInt();
+                        
+                        MxNumericArray array = new MxNumericArray(name, compressed);
+                        array.setData(data);
+                        return array;
+                }
+                else if ( shape.equals("sparse") )
+                {
+                        // Elements are generated in column order, 10 per column
+                        int nnz = Math.max(1, size / 100);
+                        
+                        int[]    ir   = new int[nnz];
+                        int[]    jc   = new int[nnz];
+                        double[] data = new double[nnz];
+                        
+                        for ( int k = 0; k < nnz; k++ )
+                        {
+                                ir[k]   = (k % 10) * 100 + random.nextInt(100);
+                                jc[k]   = k / 10;
+                                data[k] = random.nextGaussian() + 10.0;
+                        }
+                        
+                        MxSparseArray array = new MxSparseArray(name, compressed);
+                        array.setData(ir, jc, data);
+                        return array;
+                }
+                else if ( shape.equals("cell") )
+                {
+                        AbstractArrayElement[] cells = new AbstractArrayElement[NUM_CHILDREN];
+                        for ( int i = 0; i < NUM_CHILDREN; i++ )
+                        {
+                                MxNumericArray child = new MxNumericArray("");
+                                child.setData(randomDoubles(random, size / NUM_CHILDREN));
+                                cells[i] = child;
+                        }
+                        
+                        MxCellArray array = new MxCellArray(name, compressed);
+                        array.setData(cells);
+                        return array;
+                }
+                else if ( shape.equals("struct") )
+                {
+                        String[]               names  = new String[NUM_CHILDREN];
+                        AbstractArrayElement[] fields = new AbstractArrayElement[NUM_CHILDREN];
+                        for ( int i = 0; i < NUM_CHILDREN; i++ )
+                        {
+                                MxNumericArray child = new MxNumericArray("");
+                                child.setData(randomDoubles(random, size / NUM_CHILDREN));
+                                names[i]  = "field" + i;
+                                fields[i] = child;
+                        }
+                        
+                        MxStructArray array = new MxStructArray(name, compressed);
+                        array.setData(names, fields);
+                        return array;
+                }
+                
+                throw new IllegalArgumentException("Unknown shape: " + shape);
+        }
+        
+        /**
+         * Writes the given variables into a new temporary .mat file
+         * @return the file, deleted on exit of the JVM at the latest
+         */
+        public static File writeFile(ByteOrder byteOrder, AbstractArrayElement... arrays) throws IOException
+        {
+                File file = File.createTempFile("jmatrw-bench", ".mat");
+                file.deleteOnExit();
+                
+                MxFileWriter writer = new MxFileWriter(file.getPath(), byteOrder);
+                for ( AbstractArrayElement array : arrays )
+                        writer.write(array);
+                writer.close();
+                
+                return file;
+        }
+        
+        /**
+         * Parses the name of a byte order as used in benchmark parameters
+         */
+        public static ByteOrder byteOrder(String name)
+        {
+                if ( name.equals(ByteOrder.BIG_ENDIAN.toString()) )
+                        return ByteOrder.BIG_ENDIAN;
+                if ( name.equals(ByteOrder.LITTLE_ENDIAN.toString()) )
+                        return ByteOrder.LITTLE_ENDIAN;
+                
+                throw new IllegalArgumentException("Unknown byte order: " + name);
+        }
+        
+        private static double[] randomDoubles(Random random, int n)
+        {
+                double[] data = new double[n];
+                for ( int i = 0; i < n; i++ )
+                        data[i] = random.nextGaussian();
+                return data;
+        }
+}
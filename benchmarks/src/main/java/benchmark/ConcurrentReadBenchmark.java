@@ -0,0 +1,115 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+import io.MxFileReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import abstractTypes.AbstractArrayElement;
+
+import common.MxDataObject;
+
+/**
+ * Throughput of concurrent getVariable() calls on one shared MxFileReader.
+ * Every thread cycles through the variables of the file on its own.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConcurrentReadBenchmark
+{
+        private static final int NUM_VARS = 16;
+        
+        @State(Scope.Benchmark)
+        public static class SharedReader
+        {
+                @Param({"100000"})
+                public int size;
+                
+                @Param({"false", "true"})
+                public boolean compressed;
+                
+                @Param({"false", "true"})
+                public boolean memoryMapped;
+                
+                File         file;
+                MxFileReader reader;
+                
+                @Setup(Level.Trial)
+                public void setUp() throws IOException
+                {
+                        AbstractArrayElement[] arrays = new AbstractArrayElement[NUM_VARS];
+                        for ( int i = 0; i < NUM_VARS; i++ )
+                                arrays[i] = BenchmarkData.create("x" + i, "double", size, compressed);
+                        
+                        file   = BenchmarkData.writeFile(ByteOrder.nativeOrder(), arrays);
+                        reader = new MxFileReader(file.getPath(), memoryMapped);
+                }
+                
+                @TearDown(Level.Trial)
+                public void tearDown() throws IOException
+                {
+                        reader.close();
+                        file.delete();
+                }
+        }
+        
+        @State(Scope.Thread)
+        public static class Cursor
+        {
+                int next;
+                
+                String nextName()
+                {
+                        next = (next + 1) % NUM_VARS;
+                        return "x" + next;
+                }
+        }
+        
+        @Benchmark
+        @Threads(1)
+        public MxDataObject threads1(SharedReader shared, Cursor cursor)
+        {
+                return shared.reader.getVariable(cursor.nextName());
+        }
+        
+        @Benchmark
+        @Threads(2)
+        public MxDataObject threads2(SharedReader shared, Cursor cursor)
+        {
+                return shared.reader.getVariable(cursor.nextName());
+        }
+        
+        @Benchmark
+        @Threads(4)
+        public MxDataObject threads4(SharedReader shared, Cursor cursor)
+        {
+                return shared.reader.getVariable(cursor.nextName());
+        }
+        
+        @Benchmark
+        @Threads(8)
+        public MxDataObject threads8(SharedReader shared, Cursor cursor)
+        {
+                return shared.reader.getVariable(cursor.nextName());
+        }
+}
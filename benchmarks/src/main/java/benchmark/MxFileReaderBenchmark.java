@@ -0,0 +1,92 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import io.MxFileReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import common.MxDataObject;
+
+/**
+ * Decoding of a single variable by MxFileReader.getVariable(), and opening
+ * (i.e. scanning and indexing) of the file holding it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MxFileReaderBenchmark
+{
+        @Param({"double", "int32", "sparse", "cell", "struct"})
+        public String shape;
+        
+        @Param({"1000", "100000", "1000000"})
+        public int size;
+        
+        @Param({"false", "true"})
+        public boolean compressed;
+        
+        @Param({"LITTLE_ENDIAN", "BIG_ENDIAN"})
+        public String byteOrder;
+        
+        @Param({"false", "true"})
+        public boolean memoryMapped;
+        
+        @Param({"false", "true"})
+        public boolean zeroCopy;
+        
+        private File         file;
+        private MxFileReader reader;
+        
+        @Setup(Level.Trial)
+        public void setUp() throws IOException
+        {
+                file = BenchmarkData.writeFile(BenchmarkData.byteOrder(byteOrder),
+                                BenchmarkData.create(BenchmarkData.VARNAME, shape, size, compressed));
+                
+                reader = new MxFileReader(file.getPath(), memoryMapped);
+                reader.setZeroCopy(zeroCopy);
+        }
+        
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException
+        {
+                reader.close();
+                file.delete();
+        }
+        
+        @Benchmark
+        public MxDataObject getVariable()
+        {
+                return reader.getVariable(BenchmarkData.VARNAME);
+        }
+        
+        @Benchmark
+        public String[] open() throws IOException
+        {
+                MxFileReader r = new MxFileReader(file.getPath(), memoryMapped);
+                try {
+                        return r.getVarNames();
+                }
+                finally {
+                        r.close();
+                }
+        }
+}
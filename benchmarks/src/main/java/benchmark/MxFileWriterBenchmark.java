@@ -0,0 +1,78 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+import io.MxFileWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import abstractTypes.AbstractArrayElement;
+
+/**
+ * Writing of a single variable by MxFileWriter, including creation of the
+ * file and its header.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MxFileWriterBenchmark
+{
+        @Param({"double", "int32", "sparse", "cell", "struct"})
+        public String shape;
+        
+        @Param({"1000", "100000", "1000000"})
+        public int size;
+        
+        @Param({"false", "true"})
+        public boolean compressed;
+        
+        @Param({"LITTLE_ENDIAN", "BIG_ENDIAN"})
+        public String byteOrder;
+        
+        private File                 file;
+        private ByteOrder            order;
+        private AbstractArrayElement array;
+        
+        @Setup(Level.Trial)
+        public void setUp() throws IOException
+        {
+                file  = File.createTempFile("jmatrw-bench", ".mat");
+                file.deleteOnExit();
+                order = BenchmarkData.byteOrder(byteOrder);
+                array = BenchmarkData.create(BenchmarkData.VARNAME, shape, size, compressed);
+        }
+        
+        @TearDown(Level.Trial)
+        public void tearDown()
+        {
+                file.delete();
+        }
+        
+        @Benchmark
+        public long write()
+        {
+                MxFileWriter writer = new MxFileWriter(file.getPath(), order);
+                writer.write(array);
+                writer.close();
+                
+                return file.length();
+        }
+}
@@ -1,5 +1,7 @@
 package abstractTypes;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteOrder;
 
 import common.DataType;
@@ -45,7 +47,7 @@ public abstract class AbstractArrayElement extends AbstractDataElement
         /*
          * Number of bytes of the array-specific Data Element
          */
-        private int size_ArraySpecificDataPart;
+        private long size_ArraySpecificDataPart;
         
         protected final boolean matlabNameConvention = true;
         
@@ -121,7 +123,7 @@ public abstract class AbstractArrayElement extends AbstractDataElement
          * and Array Name) in binary form.
          * @param size
          */
-        protected void setNumOfSpecDataBytes(int size)
+        protected void setNumOfSpecDataBytes(long size)
         {
                 size_ArraySpecificDataPart = size;
                 
@@ -129,7 +131,7 @@ public abstract class AbstractArrayElement extends AbstractDataElement
                  * Update the overall size of the Data Part (including
                  * Array Flags, Dimensions Array and Array Name)
                  */
-                int numBytes = size_ArraySpecificDataPart;
+                long numBytes = size_ArraySpecificDataPart;
                 numBytes += arrayFlagsSubelement.getTotalElementLength();
                 numBytes += dimensionsArraySubelement.getTotalElementLength();
                 numBytes += arrayNameSubelement.getTotalElementLength();
@@ -137,7 +139,7 @@ public abstract class AbstractArrayElement extends AbstractDataElement
                 super.setNumOfDataElementBytes(numBytes);
         }
         
-        protected int getNumOfSpecDataBytes()
+        protected long getNumOfSpecDataBytes()
         {
                 return size_ArraySpecificDataPart;
         }
@@ -167,7 +169,7 @@ public abstract class AbstractArrayElement extends AbstractDataElement
         {
                 byte[] data = specDataToByteArray(byte_order);
                 
-                byte[] dest = new byte[super.getDataLength()];
+                byte[] dest = new byte[byteArrayLength(super.getDataLength())];
                 
                 int offset = 0;
                 
@@ -189,4 +191,28 @@ public abstract class AbstractArrayElement extends AbstractDataElement
                 
                 return dest;
         }
+        
+        /**
+         * Writes the array-specific Data Part (only) of derived Array classes
+         * to a stream. The default implementation writes the result of
+         * specDataToByteArray(ByteOrder).
+         */
+        protected void writeSpecDataTo(OutputStream out, ByteOrder byte_order) throws IOException
+        {
+                out.write(specDataToByteArray(byte_order));
+        }
+        
+        /**
+         * Writes the Data Part (only) of derived Array classes to a stream
+         * (see dataToByteArray(ByteOrder)).
+         */
+        @Override
+        protected void writeDataTo(OutputStream out, ByteOrder byte_order) throws IOException
+        {
+                out.write(arrayFlagsSubelement.toByteArray(byte_order));
+                out.write(dimensionsArraySubelement.toByteArray(byte_order));
+                out.write(arrayNameSubelement.toByteArray(byte_order));
+                
+                writeSpecDataTo(out, byte_order);
+        }
 }
@@ -1,5 +1,9 @@
 package abstractTypes;
 
+import io.compression.StreamCompressor;
+
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteOrder;
 
 import subelements.CompressedDataElement;
@@ -59,6 +63,15 @@ public abstract class AbstractDataElement
                 dataTagField.setDataType(type);
         }
         
+        /**
+         * Returns true, if the element is written as compressed (zipped)
+         * Data Element
+         */
+        public boolean isCompressed()
+        {
+                return compressed;
+        }
+        
         /**
          * Gets the type (e.g. uint32) used to represent data 
          * @return The type (e.g. uint32) which data is represented in
@@ -72,7 +85,7 @@ public abstract class AbstractDataElement
          * Sets the number of bytes used to represent a Data Element's data part (only)
          * @param size  The number of bytes used to represent a Data Element's data part (only)
          */
-        protected void setNumOfDataElementBytes(int size)
+        protected void setNumOfDataElementBytes(long size)
         {
                 dataTagField.setNumOfBytes(size);
         }
@@ -82,7 +95,7 @@ public abstract class AbstractDataElement
          * element's data part (only).
          * @return The length in bytes of the data part
          */
-        protected int getDataLength()
+        protected long getDataLength()
         {
                 return dataTagField.getNumOfBytes();
         }
@@ -92,7 +105,7 @@ public abstract class AbstractDataElement
          * element's data part and the element tag together.
          * @return The length in bytes of the data and element tag
          */
-        private int getElementLength()
+        private long getElementLength()
         {
                 return getDataLength() + dataTagField.getDataTagSize();
         }
@@ -102,7 +115,7 @@ public abstract class AbstractDataElement
          * element's data part, the element tag and the final padding sequence.
          * @return The length in bytes of the data part, element tag and padding
          */
-        public int getTotalElementLength()
+        public long getTotalElementLength()
         {
                 return getElementLength() + getPadding(getDataLength());
         }
@@ -126,7 +139,7 @@ public abstract class AbstractDataElement
          * 
          * @param size  Number of bytes required to represent the data
          */
-        protected int getPadding(int size)
+        protected int getPadding(long size)
         {
                 if (size == 0)
                         return 4;
@@ -153,12 +166,26 @@ public abstract class AbstractDataElement
                 //int padding = (b != 0) ? width-b : 0;
                 
                 // Alternative for width=8: padding = ((size+7)/8)*8 - size = 7-rem(size+7,8) = 7-(size+7)%8
-                int b = size % width; // size - width * (size/width);
+                int b = (int)(size % width); // size - width * (size/width);
                 int padding = (width-b) % width;
                 
                 return padding;
         }
         
+        /**
+         * Returns 'size' as length of a byte array holding (a part of) the
+         * element. Elements exceeding the maximum length of a Java array can
+         * only be written by writeTo(OutputStream,ByteOrder).
+         * @throws IllegalStateException if size is too large for a byte array
+         */
+        protected static int byteArrayLength(long size)
+        {
+                if ( size > Integer.MAX_VALUE - 8 )
+                        throw new IllegalStateException("Data element too large for a byte array: " + size + " bytes");
+                
+                return (int)size;
+        }
+        
         /**
          * Returns the number of bytes needed to represent one element
          * in the data part (e.g. for double it is 8 bytes, uint32 needs 4).
@@ -196,7 +223,7 @@ public abstract class AbstractDataElement
                 
                 byte[] tagBytes = dataTagField.toByteArray(byte_order);
                 
-                int len = getElementLength() + padding;
+                int len = byteArrayLength(getElementLength() + padding);
                 
                 byte[] dest = new byte[len];
                 
@@ -220,4 +247,73 @@ public abstract class AbstractDataElement
                 
                 return dest;
         }
+        
+        /**
+         * Writes the Data Part (only) of derived Data Elements to a stream.
+         * The default implementation writes the result of dataToByteArray(ByteOrder);
+         * elements with large data parts override this method to avoid the
+         * intermediate byte array.
+         */
+        protected void writeDataTo(OutputStream out, ByteOrder byte_order) throws IOException
+        {
+                out.write(dataToByteArray(byte_order));
+        }
+        
+        /**
+         * Writes the overall Data Element to a stream. The bytes written are the
+         * same as returned by toByteArray(ByteOrder), but the element is never
+         * held as a whole in memory. For compressed elements only the compressed
+         * bytes are buffered, since the size of the compressed data must be known
+         * before the tag can be written.
+         * 
+         * @param out         the stream to write the Data Element to
+         * @param byte_order  the byte-order of the written data
+         * @throws IOException if writing to the stream fails
+         */
+        public void writeTo(OutputStream out, ByteOrder byte_order) throws IOException
+        {
+                if (compressed == true)
+                {
+                        StreamCompressor streamCompressor = new StreamCompressor();
+                        byte[] compressedData;
+                        
+                        try {
+                                writeUncompressedTo(streamCompressor, byte_order);
+                                compressedData = streamCompressor.toByteAray();
+                        }
+                        finally {
+                                streamCompressor.close();
+                        }
+                        
+                        DataTagField tag = new DataTagField(DataType.miCOMPRESSED, compressedData.length);
+                        out.write(tag.toByteArray(byte_order));
+                        out.write(compressedData);
+                        return;
+                }
+                
+                writeUncompressedTo(out, byte_order);
+        }
+        
+        /**
+         * Writes the Data Element to a stream as if it was not flagged to be
+         * compressed, i.e. Data Tag Field, Data Part and Padding. Used by
+         * writers doing the compression themselves.
+         * 
+         * @param out         the stream to write the Data Element to
+         * @param byte_order  the byte-order of the written data
+         * @throws IOException if writing to the stream fails
+         */
+        public void writeUncompressedTo(OutputStream out, ByteOrder byte_order) throws IOException
+        {
+                int padding = getPadding(getDataLength());
+                
+                if ( getDataType() == DataType.miCOMPRESSED )
+                        padding = 0;
+                
+                out.write(dataTagField.toByteArray(byte_order));
+                
+                writeDataTo(out, byte_order);
+                
+                out.write(new byte[padding]);
+        }
 }
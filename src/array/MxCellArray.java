@@ -1,8 +1,8 @@
 package array;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteOrder;
-import java.util.ArrayList;
-import java.util.Iterator;
 
 import abstractTypes.AbstractArrayElement;
 
@@ -32,7 +32,22 @@ import common.MxClassID;
  */
 public class MxCellArray extends AbstractArrayElement
 {
-        private FlexMatrix  cells;
+        // Written for cells that have not been set
+        private static final MxEmptyArray EMPTY = new MxEmptyArray();
+        
+        /*
+         * The cells are kept in a slot array in column-major order with
+         * 'rowCapacity' slots per column, i.e. cell (i,j) is cells[i+j*rowCapacity].
+         * Unset cells are null and written as empty matrix. The capacity
+         * grows by doubling, so adding cells takes amortized constant time.
+         */
+        private AbstractArrayElement[] cells;
+        private int                    rowCapacity;
+        private int                    dim1;
+        private int                    dim2;
+        
+        private int                    numSet;      // number of cells != null
+        private long                   numSetBytes; // total element length of these cells
         
         public MxCellArray(String name)
         {
@@ -40,11 +55,34 @@ public class MxCellArray extends AbstractArrayElement
         }
         
         public MxCellArray(String name, boolean compFlag)
+        {
+                this(name,0,0,compFlag);
+        }
+        
+        /**
+         * Creates a cell array of the given size with all cells empty;
+         * cells set later within this size do not need to enlarge the array.
+         */
+        public MxCellArray(String name, int rows, int cols)
+        {
+                this(name,rows,cols,false);
+        }
+        
+        public MxCellArray(String name, int rows, int cols, boolean compFlag)
         {
                 super(compFlag);
                 super.setClassType(MxClassID.mxCELL_CLASS);
                 super.setName(name);
-                cells = new FlexMatrix();
+                
+                cells       = new AbstractArrayElement[rows*cols];
+                rowCapacity = rows;
+                dim1        = 0;
+                dim2        = 0;
+                
+                if ( rows > 0 && cols > 0 )
+                        ensureSize(rows-1, cols-1);
+                
+                updateSize();
         }
         
         public void setData(AbstractArrayElement[] data)
@@ -63,35 +101,13 @@ public class MxCellArray extends AbstractArrayElement
                 int dim1 = data.length;
                 int dim2 = data[0].length;
                 
+                ensureSize(dim1-1, dim2-1);
+                
                 for ( int i = 0; i < dim1; i++ )
-                {
                         for ( int j = 0; j < dim2; j++ )
-                        {
-                                if ( data[i][j] == null )
-                                {
-                                        MxEmptyArray a = new MxEmptyArray();
-                                        cells.add(a, i, j);
-                                }
-                                else
-                                {
-                                        if ( matlabNameConvention )
-                                                // Not necessary, but MATLAB behavior
-                                                data[i][j].setName("");
-                                        cells.add(data[i][j], i, j);
-                                }
-                        }
-                }
-                
-                super.setDimensions(cells.getDimensions());
-                
-                int numBytes = 0;
-                for ( Entry e : cells )
-                {
-                        AbstractArrayElement obj = e.getArray();
-                        numBytes += obj.getTotalElementLength();
-                }
+                                set(data[i][j], i, j);
                 
-                super.setNumOfSpecDataBytes(numBytes);
+                updateSize();
         }
         
         /**
@@ -100,201 +116,116 @@ public class MxCellArray extends AbstractArrayElement
          */
         public void addData(AbstractArrayElement data, int n, int m)
         {
-                if ( data == null )
-                {
-                        MxEmptyArray a = new MxEmptyArray();
-                        cells.add(a, n, m);
-                }
-                else
-                {
-                        if ( matlabNameConvention )
-                                // Not necessary, but MATLAB behavior
-                                data.setName("");
-                        cells.add(data, n, m);
-                }
-                
-                super.setDimensions(cells.getDimensions());
-                
-                int numBytes = 0;
-                for ( Entry e : cells )
-                {
-                        AbstractArrayElement obj = e.getArray();
-                        numBytes += obj.getTotalElementLength();
-                }
-                
-                super.setNumOfSpecDataBytes(numBytes);
+                ensureSize(n, m);
+                set(data, n, m);
+                updateSize();
         }
         
-        protected byte[] specDataToByteArray(ByteOrder byte_order)
+        /*
+         * Stores a cell and updates the byte count of the set cells
+         */
+        private void set(AbstractArrayElement data, int i, int j)
         {
-                byte[] b      = new byte[super.getNumOfSpecDataBytes()];
-                int    offset = 0;
+                if ( data != null && matlabNameConvention )
+                        // Not necessary, but MATLAB behavior
+                        data.setName("");
                 
-                byte[] tmp;
+                int index = i + j*rowCapacity;
                 
-                AbstractArrayElement[][] dataArray = cells.toArray();
+                AbstractArrayElement old = cells[index];
                 
-                for ( int j = 0; j < dataArray[0].length; j++ )
+                if ( old != null )
                 {
-                        for ( int i = 0; i < dataArray.length; i++ )
-                        {
-                                AbstractArrayElement obj = dataArray[i][j];
-                                
-                                tmp = obj.toByteArray(byte_order);
-                                
-                                System.arraycopy(tmp, 0, b, offset, tmp.length);
-                                offset += tmp.length;
-                        }
+                        numSet--;
+                        numSetBytes -= old.getTotalElementLength();
                 }
                 
-                return b;
-        }
-        
-        private class Entry
-        {
-                private int pos_row;
-                private int pos_col;
-                private AbstractArrayElement data;
-                
-                Entry(AbstractArrayElement data, int i, int j)
+                if ( data != null )
                 {
-                        this.data = data;
-                        this.pos_row = i;
-                        this.pos_col = j;
+                        numSet++;
+                        numSetBytes += data.getTotalElementLength();
                 }
                 
-                AbstractArrayElement getArray()
-                {
-                        return data;
-                }
-                
-                /**
-                 * True, iff the coordinates are identical.
-                 * Data content is not considered.
-                 * @param other The other Entry-element
-                 * @return true or false
-                 */
-                boolean equals(Entry other)
-                {
-                        if (other == null)
-                                return false;
-                        
-                        return (this.pos_row == other.pos_row &&
-                                        this.pos_col == other.pos_col);
-                }
+                cells[index] = data;
         }
         
-        private class FlexMatrix implements Iterable<Entry>
+        /*
+         * Enlarges the cell array, if necessary, to contain cell (i,j)
+         */
+        private void ensureSize(int i, int j)
         {
-                private ArrayList<Entry> list;
-                private int dim1;
-                private int dim2;
+                int rows = Math.max(dim1, i+1);
+                int cols = Math.max(dim2, j+1);
                 
-                FlexMatrix()
-                {
-                        list = new ArrayList<Entry>();
-                        dim1 = 0;
-                        dim2 = 0;
-                }
-                
-                public Iterator<Entry> iterator()
-                {
-                        return list.iterator();
-                }
+                int colCapacity = (rowCapacity > 0) ? cells.length / rowCapacity : 0;
                 
-                void add(AbstractArrayElement obj, int i, int j)
+                if ( rows > rowCapacity || cols > colCapacity )
                 {
-                        Entry e = new Entry(obj,i,j);
+                        int newRowCapacity = (rows > rowCapacity) ? Math.max(rows, 2*rowCapacity) : rowCapacity;
+                        int newColCapacity = (cols > colCapacity) ? Math.max(cols, 2*colCapacity) : colCapacity;
                         
-                        int index = find(e);
+                        if ( newRowCapacity*(long)newColCapacity > Integer.MAX_VALUE )
+                                newColCapacity = cols;
                         
-                        if ( index == -1 )
-                                list.add(e);
-                        else
-                                list.set(index, e); // Overwrite old Entry
+                        AbstractArrayElement[] newCells = new AbstractArrayElement[newRowCapacity*newColCapacity];
                         
-                        dim1 = Math.max(dim1, i+1);
-                        dim2 = Math.max(dim2, j+1);
+                        for ( int col = 0; col < dim2; col++ )
+                                System.arraycopy(cells, col*rowCapacity, newCells, col*newRowCapacity, dim1);
                         
-                        // EVEN IT IS SLOW, BUT
-                        // It is important to immediately fill up the cell
-                        // array with empty matrices as place holders, since
-                        // otherwise reporting of the size (call to
-                        // super.setNumOfSpecDataBytes(numBytes) in method
-                        // addData(...) is incorrect with respect to what is
-                        // returned by the call super.getNumOfSpecDataBytes()
-                        // in method specDataToByteArray(...)
-                        fill();
+                        cells       = newCells;
+                        rowCapacity = newRowCapacity;
                 }
                 
-                private int find(Entry e)
-                {
-                        return indexOf(e);
-                }
+                dim1 = rows;
+                dim2 = cols;
+        }
+        
+        private void updateSize()
+        {
+                super.setDimensions(new int[]{dim1,dim2});
                 
-                private int find(int i, int j)
-                {
-                        Entry e = new Entry(null,i,j);
-                        return find(e);
-                }
+                int numEmpty = dim1*dim2 - numSet;
                 
-                /**
-                 * Returns the index of the first occurrence of the specified element
-                 * in this list, or -1 if this list does not contain the element.
-                 * More formally, returns the lowest index <tt>i</tt> such that
-                 * <tt>(o==null&nbsp;?&nbsp;get(i)==null&nbsp;:&nbsp;o.equals(get(i)))</tt>,
-                 * or -1 if there is no such index.
-                 */
-                private int indexOf(Entry e)
-                {
-                        if (e == null) {
-                                for (int i = 0; i < list.size(); i++)
-                                        if (list.get(i) == null)
-                                                return i;
-                        } else {
-                                for (int i = 0; i < list.size(); i++)
-                                        if (e.equals(list.get(i)))
-                                                return i;
-                        }
-                        
-                        return -1;
-                }
+                super.setNumOfSpecDataBytes(numSetBytes + numEmpty*EMPTY.getTotalElementLength());
+        }
+        
+        private AbstractArrayElement get(int i, int j)
+        {
+                AbstractArrayElement obj = cells[i + j*rowCapacity];
+                
+                return (obj != null) ? obj : EMPTY;
+        }
+        
+        protected byte[] specDataToByteArray(ByteOrder byte_order)
+        {
+                byte[] b      = new byte[byteArrayLength(super.getNumOfSpecDataBytes())];
+                int    offset = 0;
+                
+                byte[] tmp;
                 
-                private void fill()
+                for ( int j = 0; j < dim2; j++ )
                 {
-                        MxEmptyArray a = new MxEmptyArray();
-                        
                         for ( int i = 0; i < dim1; i++ )
                         {
-                                for ( int j = 0; j < dim2; j++ )
-                                {
-                                        int index = find(i,j);
-                                        if ( index == -1 )
-                                        {
-                                                Entry e = new Entry(a,i,j);
-                                                list.add(e);
-                                        }
-                                }
+                                tmp = get(i,j).toByteArray(byte_order);
+                                
+                                System.arraycopy(tmp, 0, b, offset, tmp.length);
+                                offset += tmp.length;
                         }
                 }
                 
-                int[] getDimensions()
-                {
-                        return new int[]{dim1,dim2};
-                }
-                
-                AbstractArrayElement[][] toArray()
+                return b;
+        }
+        
+        @Override
+        protected void writeSpecDataTo(OutputStream out, ByteOrder byte_order) throws IOException
+        {
+                for ( int j = 0; j < dim2; j++ )
                 {
-                        AbstractArrayElement[][] array = new AbstractArrayElement[dim1][dim2];
-                        
-                        for ( Entry e : list )
+                        for ( int i = 0; i < dim1; i++ )
                         {
-                                int i = e.pos_row;
-                                int j = e.pos_col;
-                                array[i][j] = e.data;
+                                get(i,j).writeTo(out, byte_order);
                         }
-                        
-                        return array;
                 }
         }
 }
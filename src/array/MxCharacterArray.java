@@ -1,5 +1,7 @@
 package array;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteOrder;
 
 import abstractTypes.AbstractArrayElement;
@@ -39,14 +41,14 @@ public class MxCharacterArray extends AbstractArrayElement
                 
                 charPartSubelement = new CharacterPartSubelement(data);
                 
-                int numBytes = charPartSubelement.getTotalElementLength();
+                long numBytes = charPartSubelement.getTotalElementLength();
                 
                 super.setNumOfSpecDataBytes(numBytes);
         }
         
         protected byte[] specDataToByteArray(ByteOrder byte_order)
         {
-                byte[] b      = new byte[super.getNumOfSpecDataBytes()];
+                byte[] b      = new byte[byteArrayLength(super.getNumOfSpecDataBytes())];
                 int    offset = 0;
                 
                 byte[] tmp = charPartSubelement.toByteArray(byte_order);
@@ -55,4 +57,10 @@ public class MxCharacterArray extends AbstractArrayElement
                 
                 return b;
         }
+        
+        @Override
+        protected void writeSpecDataTo(OutputStream out, ByteOrder byte_order) throws IOException
+        {
+                charPartSubelement.writeTo(out, byte_order);
+        }
 }
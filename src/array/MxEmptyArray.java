@@ -1,5 +1,7 @@
 package array;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteOrder;
 
 import abstractTypes.AbstractArrayElement;
@@ -40,4 +42,13 @@ public class MxEmptyArray extends AbstractArrayElement
                 byte[] b = new byte[0];
                 return b;
         }
+        
+        /**
+         * Overwrites method 'writeDataTo(OutputStream,ByteOrder)' of super class
+         * AbstractArrayElement to produce always empty Data Part.
+         */
+        @Override
+        protected void writeDataTo(OutputStream out, ByteOrder byte_order) throws IOException
+        {
+        }
 }
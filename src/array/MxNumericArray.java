@@ -1,5 +1,7 @@
 package array;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteOrder;
 
 import abstractTypes.AbstractArrayElement;
@@ -39,7 +41,7 @@ public class MxNumericArray extends AbstractArrayElement
                 realPartSubelement = new NumericPartSubelement(data);
                 imagPartSubelement = null;
                 
-                int numBytes = realPartSubelement.getTotalElementLength();
+                long numBytes = realPartSubelement.getTotalElementLength();
                 
                 super.setNumOfSpecDataBytes(numBytes);
         }
@@ -56,7 +58,7 @@ public class MxNumericArray extends AbstractArrayElement
                 realPartSubelement = new NumericPartSubelement(data);
                 imagPartSubelement = null;
                 
-                int numBytes = realPartSubelement.getTotalElementLength();
+                long numBytes = realPartSubelement.getTotalElementLength();
                 
                 super.setNumOfSpecDataBytes(numBytes);
         }
@@ -106,7 +108,7 @@ public class MxNumericArray extends AbstractArrayElement
                 realPartSubelement = new NumericPartSubelement(real);
                 imagPartSubelement = new NumericPartSubelement(imag);
                 
-                int numBytes = 0;
+                long numBytes = 0;
                 numBytes += realPartSubelement.getTotalElementLength();
                 numBytes += imagPartSubelement.getTotalElementLength();
                 
@@ -167,13 +169,47 @@ public class MxNumericArray extends AbstractArrayElement
                 realPartSubelement = new NumericPartSubelement(real);
                 imagPartSubelement = new NumericPartSubelement(imag);
                 
-                int numBytes = 0;
+                long numBytes = 0;
                 numBytes += realPartSubelement.getTotalElementLength();
                 numBytes += imagPartSubelement.getTotalElementLength();
                 
                 super.setNumOfSpecDataBytes(numBytes);
         }
         
+        public void setData(float[] data)
+        {
+                int dim1 = 1;
+                int dim2 = data.length;
+                int[] dims = {dim1,dim2};
+                
+                super.setClassType(MxClassID.mxSINGLE_CLASS);
+                super.setDimensions(dims);
+                
+                realPartSubelement = new NumericPartSubelement(data);
+                imagPartSubelement = null;
+                
+                long numBytes = realPartSubelement.getTotalElementLength();
+                
+                super.setNumOfSpecDataBytes(numBytes);
+        }
+        
+        public void setData(float[][] data)
+        {
+                int dim1 = data.length;
+                int dim2 = data[0].length;
+                int[] dims = {dim1,dim2};
+                
+                super.setClassType(MxClassID.mxSINGLE_CLASS);
+                super.setDimensions(dims);
+                
+                realPartSubelement = new NumericPartSubelement(data);
+                imagPartSubelement = null;
+                
+                long numBytes = realPartSubelement.getTotalElementLength();
+                
+                super.setNumOfSpecDataBytes(numBytes);
+        }
+        
         public void setData(int[] data)
         {
                 int dim1 = 1;
@@ -186,7 +222,7 @@ public class MxNumericArray extends AbstractArrayElement
                 realPartSubelement = new NumericPartSubelement(data);
                 imagPartSubelement = null;
                 
-                int numBytes = realPartSubelement.getTotalElementLength();
+                long numBytes = realPartSubelement.getTotalElementLength();
                 
                 super.setNumOfSpecDataBytes(numBytes);
         }
@@ -203,7 +239,7 @@ public class MxNumericArray extends AbstractArrayElement
                 realPartSubelement = new NumericPartSubelement(data);
                 imagPartSubelement = null;
                 
-                int numBytes = realPartSubelement.getTotalElementLength();
+                long numBytes = realPartSubelement.getTotalElementLength();
                 
                 super.setNumOfSpecDataBytes(numBytes);
         }
@@ -220,7 +256,7 @@ public class MxNumericArray extends AbstractArrayElement
                 realPartSubelement = new NumericPartSubelement(data);
                 imagPartSubelement = null;
                 
-                int numBytes = realPartSubelement.getTotalElementLength();
+                long numBytes = realPartSubelement.getTotalElementLength();
                 
                 super.setNumOfSpecDataBytes(numBytes);
         }
@@ -237,7 +273,7 @@ public class MxNumericArray extends AbstractArrayElement
                 realPartSubelement = new NumericPartSubelement(data);
                 imagPartSubelement = null;
                 
-                int numBytes = realPartSubelement.getTotalElementLength();
+                long numBytes = realPartSubelement.getTotalElementLength();
                 
                 super.setNumOfSpecDataBytes(numBytes);
         }
@@ -254,7 +290,7 @@ public class MxNumericArray extends AbstractArrayElement
                 realPartSubelement = new NumericPartSubelement(data);
                 imagPartSubelement = null;
                 
-                int numBytes = realPartSubelement.getTotalElementLength();
+                long numBytes = realPartSubelement.getTotalElementLength();
                 
                 super.setNumOfSpecDataBytes(numBytes);
         }
@@ -271,7 +307,7 @@ public class MxNumericArray extends AbstractArrayElement
                 realPartSubelement = new NumericPartSubelement(data);
                 imagPartSubelement = null;
                 
-                int numBytes = realPartSubelement.getTotalElementLength();
+                long numBytes = realPartSubelement.getTotalElementLength();
                 
                 super.setNumOfSpecDataBytes(numBytes);
         }
@@ -288,7 +324,7 @@ public class MxNumericArray extends AbstractArrayElement
                 realPartSubelement = new NumericPartSubelement(data);
                 imagPartSubelement = null;
                 
-                int numBytes = realPartSubelement.getTotalElementLength();
+                long numBytes = realPartSubelement.getTotalElementLength();
                 
                 super.setNumOfSpecDataBytes(numBytes);
         }
@@ -305,7 +341,7 @@ public class MxNumericArray extends AbstractArrayElement
                 realPartSubelement = new NumericPartSubelement(data);
                 imagPartSubelement = null;
                 
-                int numBytes = realPartSubelement.getTotalElementLength();
+                long numBytes = realPartSubelement.getTotalElementLength();
                 
                 super.setNumOfSpecDataBytes(numBytes);
         }
@@ -323,7 +359,7 @@ public class MxNumericArray extends AbstractArrayElement
                 realPartSubelement = new NumericPartSubelement(data);
                 imagPartSubelement = null;
                 
-                int numBytes = realPartSubelement.getTotalElementLength();
+                long numBytes = realPartSubelement.getTotalElementLength();
                 
                 super.setNumOfSpecDataBytes(numBytes);
         }
@@ -341,14 +377,14 @@ public class MxNumericArray extends AbstractArrayElement
                 realPartSubelement = new NumericPartSubelement(data);
                 imagPartSubelement = null;
                 
-                int numBytes = realPartSubelement.getTotalElementLength();
+                long numBytes = realPartSubelement.getTotalElementLength();
                 
                 super.setNumOfSpecDataBytes(numBytes);
         }
         
         protected byte[] specDataToByteArray(ByteOrder byte_order)
         {
-                byte[] b      = new byte[super.getNumOfSpecDataBytes()];
+                byte[] b      = new byte[byteArrayLength(super.getNumOfSpecDataBytes())];
                 int    offset = 0;
                 byte[] tmp;
                 
@@ -368,4 +404,14 @@ public class MxNumericArray extends AbstractArrayElement
                 
                 return b;
         }
+        
+        @Override
+        protected void writeSpecDataTo(OutputStream out, ByteOrder byte_order) throws IOException
+        {
+                if ( realPartSubelement != null )
+                        realPartSubelement.writeTo(out, byte_order);
+                
+                if ( imagPartSubelement != null )
+                        imagPartSubelement.writeTo(out, byte_order);
+        }
 }
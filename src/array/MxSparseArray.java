@@ -1,7 +1,11 @@
 package array;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteOrder;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import abstractTypes.AbstractArrayElement;
 import common.MxClassID;
@@ -39,122 +43,185 @@ public class MxSparseArray extends AbstractArrayElement
          *     i=1:N:  S( ir[i], ic[i] ) = data_real[i]
          * This is not the MATLAB internal method to index non-zero elements;
          * the representation is internally transformed to the MATLAB way.
+         * Zero values are ignored; if a location is given more than once,
+         * the last value wins.
          */
         public void setData(int[] ir, int[] jc, double[] data_real)
         {
-                FlexMatrix entries = new FlexMatrix();
+                setData(ir, jc, data_real, null, -1, -1, false);
+        }
+        
+        public void setData(int[] ir, int[] jc, double[] data_real, double[] data_imag)
+        {
+                setData(ir, jc, data_real, data_imag, -1, -1, false);
+        }
+        
+        /**
+         * Sets the data of a sparse matrix given in coordinate form
+         * (S( ir[k], jc[k] ) = data_real[k] + i*data_imag[k], zero based indices).
+         * The elements are brought into column order by a counting sort on the
+         * column indices and a sort of the rows of every column on primitive
+         * keys; no object is created per element.
+         * 
+         * @param ir             row indices
+         * @param jc             column indices
+         * @param data_real      real parts
+         * @param data_imag      imaginary parts or null for a real matrix
+         * @param m              number of rows or -1 to use the largest row index + 1
+         * @param n              number of columns or -1 to use the largest column index + 1
+         * @param sumDuplicates  if true, values given for the same location are summed
+         *                       (as MATLAB's sparse() does); otherwise the last value wins
+         *                       and zero values are ignored
+         */
+        public void setData(int[] ir, int[] jc, double[] data_real, double[] data_imag,
+                        int m, int n, boolean sumDuplicates)
+        {
+                int nnz = data_real.length;
                 
-                entries.add(ir, jc, data_real);
+                if ( ir.length != nnz || jc.length != nnz || (data_imag != null && data_imag.length != nnz) )
+                        throw new IllegalArgumentException("Index and data arrays must have the same length");
                 
-                int[] dims = entries.getDimensions();
+                int maxRow = -1;
+                int maxCol = -1;
                 
-                super.setDimensions(dims);
-                super.setSparseFlag(true);
-                super.setNzMax(entries.getNumElements());
+                for ( int k = 0; k < nnz; k++ )
+                {
+                        if ( ir[k] < 0 || jc[k] < 0 )
+                                throw new IllegalArgumentException("Negative index of element " + k);
+                        
+                        maxRow = Math.max(maxRow, ir[k]);
+                        maxCol = Math.max(maxCol, jc[k]);
+                }
+                
+                if ( m < 0 ) m = maxRow + 1;
+                if ( n < 0 ) n = maxCol + 1;
+                
+                if ( maxRow >= m || maxCol >= n )
+                        throw new IllegalArgumentException("Element index exceeds matrix dimensions");
                 
-                SparseElement[] a = entries.toArray(); // Entries are in column order
+                // Elements in column order, rows ascending within a column;
+                // duplicates keep their input order
+                int[] colPtr = new int[n+1];
+                int[] order  = sortByColumnAndRow(ir, jc, n, colPtr);
                 
-                int[] mxir           = new int[a.length];
-                int[] mxjc           = new int[dims[1]+1];
-                double[] mxdata_real = new double[a.length];
+                int[]    mxir        = new int[nnz];
+                int[]    mxjc        = new int[n+1];
+                double[] mxdata_real = new double[nnz];
+                double[] mxdata_imag = (data_imag != null) ? new double[nnz] : null;
                 
-                int i = 0;
-                for ( SparseElement e : a )
+                int count = 0;
+                
+                for ( int j = 0; j < n; j++ )
                 {
-                        mxir[i]          = e.pos_row;
-                        mxdata_real[i] = e.data_real;
-                        i++;
+                        int p = colPtr[j];
                         
-                        mxjc[e.pos_col+1]++;
+                        while ( p < colPtr[j+1] )
+                        {
+                                int    row = ir[order[p]];
+                                double re  = 0;
+                                double im  = 0;
+                                
+                                // Merge all elements of the same location
+                                for ( ; p < colPtr[j+1] && ir[order[p]] == row; p++ )
+                                {
+                                        int    k    = order[p];
+                                        double k_re = data_real[k];
+                                        double k_im = (data_imag != null) ? data_imag[k] : 0;
+                                        
+                                        if ( sumDuplicates )
+                                        {
+                                                re += k_re;
+                                                im += k_im;
+                                        }
+                                        else if ( k_re != 0.0 || k_im != 0.0 )
+                                        {
+                                                re = k_re;
+                                                im = k_im;
+                                        }
+                                }
+                                
+                                if ( re != 0.0 || im != 0.0 )
+                                {
+                                        mxir[count]        = row;
+                                        mxdata_real[count] = re;
+                                        if ( mxdata_imag != null )
+                                                mxdata_imag[count] = im;
+                                        count++;
+                                }
+                        }
                         
-//                        // jc[j] is the sum of nonzero elements in all columns [0:j-1]
-//                        // jc[j+1] - jc[j] = #(elements column j)
-//                        for (int col = e.pos_col + 1; col < jc.length; col++)
-//                        {
-//                                mxjc[col]++;
-//                        }
+                        mxjc[j+1] = count;
                 }
                 
-                mxjc[0] = 0;
-                for ( int k = 1; k < dims[1]+1; k++ )
-                {
-                        mxjc[k] += mxjc[k-1];
-                }
-                
-                rowIndexSubelement = new RowIndexSubelement(mxir);
-                colIndexSubelement = new ColumnIndexSubelement(mxjc);
-                realPartSubelement = new NumericPartSubelement(mxdata_real);
+                mxir        = Arrays.copyOf(mxir, count);
+                mxdata_real = Arrays.copyOf(mxdata_real, count);
+                if ( mxdata_imag != null )
+                        mxdata_imag = Arrays.copyOf(mxdata_imag, count);
                 
-                int numBytes = 0;
-                numBytes += rowIndexSubelement.getTotalElementLength();
-                numBytes += colIndexSubelement.getTotalElementLength();
-                numBytes += realPartSubelement.getTotalElementLength();
-                
-                super.setNumOfSpecDataBytes(numBytes);
+                setCSC(mxir, mxjc, mxdata_real, mxdata_imag, m, n);
         }
         
-        public void setData(int[] ir, int[] jc, double[] data_real, double[] data_imag)
+        /**
+         * Sets the data of a sparse matrix given in MATLAB's compressed sparse
+         * column (CSC) form, i.e. without any conversion: the non-zero elements
+         * of column j are ir[jc[j]] ... ir[jc[j+1]-1] with values pr (and pi)
+         * at the same indices.
+         * 
+         * @param ir  row indices of the non-zero elements (0 ... m-1, strictly
+         *            increasing within each column)
+         * @param jc  column pointers (n + 1 elements)
+         * @param pr  real parts of the non-zero elements
+         * @param pi  imaginary parts of the non-zero elements or null for a real matrix
+         * @param m   number of rows
+         * @param n   number of columns
+         */
+        public void setCSC(int[] ir, int[] jc, double[] pr, double[] pi, int m, int n)
         {
-                FlexMatrix entries = new FlexMatrix();
-                
-                entries.add(ir, jc, data_real, data_imag);
-                
-                int[] dims = entries.getDimensions();
-                
-                super.setSparseFlag(true);
-                super.setComplexFlag(true);
-                super.setDimensions(dims);
-                super.setNzMax(entries.getNumElements());
+                if ( jc.length != n+1 || jc[0] != 0 )
+                        throw new IllegalArgumentException("Column pointers must have n+1 elements starting with 0");
                 
-                SparseElement[] a = entries.toArray(); // Entries are in column order
+                for ( int j = 0; j < n; j++ )
+                        if ( jc[j+1] < jc[j] )
+                                throw new IllegalArgumentException("Column pointers must not decrease");
                 
-                int[] mxir           = new int[a.length];
-                int[] mxjc           = new int[dims[1]+1];
-                double[] mxdata_real = new double[a.length];
-                double[] mxdata_imag = new double[a.length];
+                if ( ir.length < jc[n] || pr.length != ir.length || (pi != null && pi.length != ir.length) )
+                        throw new IllegalArgumentException("Row index and data arrays must have the same length");
                 
-                int i = 0;
-                for ( SparseElement e : a )
+                for ( int j = 0; j < n; j++ )
                 {
-                        mxir[i]          = e.pos_row;
-                        // mxdata_real[i++] = e.data_real; // BUG???
-                        mxdata_real[i] = e.data_real;
-                        mxdata_imag[i] = e.data_imag;
-                        i++;
-                        
-                        mxjc[e.pos_col+1]++;
-                        
-//                        // jc[j] is the sum of nonzero elements in all columns [0:j-1]
-//                        // jc[j+1] - jc[j] = #(elements column j)
-//                        for (int col = e.pos_col + 1; col < jc.length; col++)
-//                        {
-//                                mxjc[col]++;
-//                        }
+                        for ( int k = jc[j]; k < jc[j+1]; k++ )
+                        {
+                                if ( ir[k] < 0 || ir[k] >= m )
+                                        throw new IllegalArgumentException("Row index " + ir[k] + " out of range in column " + j);
+                                
+                                if ( k > jc[j] && ir[k] <= ir[k-1] )
+                                        throw new IllegalArgumentException("Row indices must increase within column " + j);
+                        }
                 }
                 
-                mxjc[0] = 0;
-                for ( int k = 1; k < dims[1]+1; k++ )
-                {
-                        mxjc[k] += mxjc[k-1];
-                }
+                super.setSparseFlag(true);
+                super.setComplexFlag(pi != null);
+                super.setDimensions(new int[] {m,n});
+                super.setNzMax(ir.length);
                 
-                rowIndexSubelement = new RowIndexSubelement(mxir);
-                colIndexSubelement = new ColumnIndexSubelement(mxjc);
-                realPartSubelement = new NumericPartSubelement(mxdata_real);
-                imagPartSubelement = new NumericPartSubelement(mxdata_imag);
+                rowIndexSubelement = new RowIndexSubelement(ir);
+                colIndexSubelement = new ColumnIndexSubelement(jc);
+                realPartSubelement = new NumericPartSubelement(pr);
+                imagPartSubelement = (pi != null) ? new NumericPartSubelement(pi) : null;
                 
-                int numBytes = 0;
+                long numBytes = 0;
                 numBytes += rowIndexSubelement.getTotalElementLength();
                 numBytes += colIndexSubelement.getTotalElementLength();
                 numBytes += realPartSubelement.getTotalElementLength();
-                numBytes += imagPartSubelement.getTotalElementLength();
+                if ( imagPartSubelement != null )
+                        numBytes += imagPartSubelement.getTotalElementLength();
                 
                 super.setNumOfSpecDataBytes(numBytes);
         }
         
         protected byte[] specDataToByteArray(ByteOrder byte_order)
         {
-                byte[] b      = new byte[super.getNumOfSpecDataBytes()];
+                byte[] b      = new byte[byteArrayLength(super.getNumOfSpecDataBytes())];
                 int    offset = 0;
                 
                 byte[] tmp;
@@ -181,225 +248,100 @@ public class MxSparseArray extends AbstractArrayElement
                 return b;
         }
         
-        /**
-         * An object of SparseElement class contains all information for a real/complex
-         * data entry in a sparse matrix. The object data is its location (columns and row index)
-         * and the data value.
-         */
-        private class SparseElement implements Comparable<SparseElement>
+        @Override
+        protected void writeSpecDataTo(OutputStream out, ByteOrder byte_order) throws IOException
         {
-                private int    pos_row;
-                private int    pos_col;
-                private double data_real;
-                private double data_imag;
-                
-                SparseElement(int i, int j, double data)
-                {
-                        this.data_real = data;
-                        this.data_imag = 0;
-                        this.pos_row   = i;
-                        this.pos_col   = j;
-                }
+                rowIndexSubelement.writeTo(out, byte_order);
+                colIndexSubelement.writeTo(out, byte_order);
+                realPartSubelement.writeTo(out, byte_order);
                 
-                SparseElement(int i, int j, double data_real, double data_imag)
-                {
-                        this.data_real = data_real;
-                        this.data_imag = data_imag;
-                        this.pos_row   = i;
-                        this.pos_col   = j;
-                }
-                
-                /**
-                 * Indicates whether some other SparseElement is "equal to" this one.
-                 * Equality is defined as having the exact same location in the sparse matrix
-                 * @param other  another SparseElement
-                 * @return true, if this object is the same as the other argument; false otherwise
-                 */
-                boolean equals(SparseElement other)
-                {
-                        if (other == null)
-                                return false;
-                        
-                        return (this.pos_row == other.pos_row &&
-                                        this.pos_col == other.pos_col);
-                }
-                
-                /* (non-Javadoc)
-                 * @see java.lang.Comparable#compareTo(java.lang.Comparable)
-                 */
-                /**
-                 * Compares this object with the specified object for order within the sparse matrix.
-                 * First, the column index is compared. If columns indices are identical,
-                 * row indices are compared in a second step.
-                 * @param other  another SparseElement
-                 * @return  <li>negative int, if the other object has higher columns/row index</li>
-                 *          <li>zero, if the other object has the same columns and row index</li>
-                 *          <li>positive int, if the other object has lower columns/row index</li>
-                 */
-                public int compareTo(SparseElement other)
-                {
-                        if ( this.pos_col == other.pos_col )
-                                return this.pos_row - other.pos_row;
-                        
-                        return this.pos_col - other.pos_col;
-                }
+                if ( imagPartSubelement != null )
+                        imagPartSubelement.writeTo(out, byte_order);
         }
         
+        /*
+         * Number of elements from which on the rows of the columns are
+         * sorted in parallel
+         */
+        private static final int PARALLEL_THRESHOLD = 1 << 16;
+        
         /**
-         * FlexMatrix implements a flexible/resizable list for sparse matrix
-         * element data (in form of SparseElement objects).
-         * You can add or overwrite existing elements.
+         * Returns the permutation of the elements (ir[k],jc[k]) that brings them
+         * into column order with ascending rows within every column; elements
+         * with the same location keep their input order.
+         * 1) Counting sort on the column indices, which gives the column pointers
+         * 2) Sort of every column on keys (row << 31 | input index)
+         * 
+         * @param colPtr  receives the column pointers (n + 1 elements)
          */
-        private class FlexMatrix
+        private static int[] sortByColumnAndRow(int[] ir, int[] jc, int n, int[] colPtr)
         {
-                private ArrayList<SparseElement> list;
+                int nnz = jc.length;
                 
-                /*
-                 * Current matrix dimensions; dimensions can change, if additional
-                 * matrix element of even higher dimensions are added.
-                 */
-                private int dim1;
-                private int dim2;
+                for ( int k = 0; k < nnz; k++ )
+                        colPtr[jc[k]+1]++;
                 
-                FlexMatrix()
-                {
-                        list = new ArrayList<SparseElement>();
-                        dim1 = 0;
-                        dim2 = 0;
-                }
+                for ( int j = 0; j < n; j++ )
+                        colPtr[j+1] += colPtr[j];
                 
-                void add(int i, int j, double data)
-                {
-                        if ( data != 0.0 )
-                        {
-                                SparseElement e = new SparseElement(i,j,data);
-                                
-                                int index = indexOf(e);
-                                
-                                if ( index == -1 )
-                                        list.add(e);
-                                else
-                                        list.set(index, e);
-                        }
-                        
-                        dim1 = Math.max(dim1, i+1);
-                        dim2 = Math.max(dim2, j+1);
-                }
+                long[] keys = new long[nnz];
+                int[]  next = Arrays.copyOf(colPtr, n);
                 
-                void add(int i, int j, double data_real, double data_imag)
-                {
-                        if ( data_real != 0.0 || data_imag != 0.0 )
-                        {
-                                SparseElement e = new SparseElement(i,j,data_real,data_imag);
-                                
-                                int index = indexOf(e);
-                                
-                                if ( index == -1 )
-                                        list.add(e);
-                                else
-                                        list.set(index, e);
-                        }
-                        
-                        dim1 = Math.max(dim1, i+1);
-                        dim2 = Math.max(dim2, j+1);
-                }
+                for ( int k = 0; k < nnz; k++ )
+                        keys[next[jc[k]]++] = ((long)ir[k] << 31) | k;
                 
-                void add(int[] ir, int[] jc, double[] data)
-                {
-                        // TODO: Check that all arrays have the same length
-                        for ( int i = 0; i < data.length; i++ )
-                                add(ir[i],jc[i],data[i]);
-                }
+                SortColumns task = new SortColumns(keys, colPtr, 0, n);
                 
-                void add(int[] ir, int[] jc, double[] data_real, double[] data_imag)
-                {
-                        // TODO: Check that all arrays have the same length
-                        for ( int i = 0; i < data_real.length; i++ )
-                                add(ir[i],jc[i],data_real[i],data_imag[i]);
-                }
+                if ( nnz < PARALLEL_THRESHOLD )
+                        task.compute();
+                else
+                        ForkJoinPool.commonPool().invoke(task);
                 
-                /**
-                 * Returns the number of non-zero elements in this FlexMatrix:
-                 * 
-                 * @return the number of non-zero elements in this FlexMatrix
-                 */
-                int getNumElements()
-                {
-                        return list.size();
-                }
+                int[] order = next; // reuse, if large enough
+                if ( order.length < nnz )
+                        order = new int[nnz];
                 
-                /**
-                 * Returns the index of the first occurrence of the specified element
-                 * in this list, or -1 if this list does not contain the element.
-                 * More formally, returns the lowest index <tt>i</tt> such that
-                 * <tt>(o==null&nbsp;?&nbsp;get(i)==null&nbsp;:&nbsp;o.equals(get(i)))</tt>,
-                 * or -1 if there is no such index.
-                 * @param  e   the SparseElement to be found
-                 * @return the index of the occurrence of the specified element, or -1 if the element is not in the list.
-                 */
-                private int indexOf(SparseElement e)
-                {
-                        if (e == null) {
-                                for (int i = 0; i < list.size(); i++)
-                                        if (list.get(i) == null)
-                                                return i;
-                        } else {
-                                for (int i = 0; i < list.size(); i++)
-                                        if (e.equals(list.get(i)))
-                                                return i;
-                        }
-                        
-                        return -1;
-                }
+                for ( int p = 0; p < nnz; p++ )
+                        order[p] = (int)(keys[p] & 0x7FFFFFFFL);
                 
-                /**
-                 * Returns the minimum required dimensions of the sparse matrix, based on current element row/column indices
-                 * @return integer array of size 2, containing the minimum required row and column
-                 *         dimension (in this order) of the sparse matrix
-                 */
-                int[] getDimensions()
-                {
-                        return new int[]{dim1,dim2};
-                }
+                return order;
+        }
+        
+        /**
+         * Sorts the keys of a range of columns, splitting the range
+         * as long as it holds many elements
+         */
+        private static class SortColumns extends RecursiveAction
+        {
+                private static final long serialVersionUID = 1L;
                 
-                SparseElement[] toArray()
+                private final long[] keys;
+                private final int[]  colPtr;
+                private final int    from;
+                private final int    to;
+                
+                SortColumns(long[] keys, int[] colPtr, int from, int to)
                 {
-                        // Need array type in the next line to specify the return type of
-                        // the list.toArray() call; see specification of ArrayList.toArray(...)
-                        SparseElement[] array = new SparseElement[0];
-                        
-                        array = list.toArray(array);
-                        
-                        bubblesort(array);
-                        
-                        return array;
+                        this.keys   = keys;
+                        this.colPtr = colPtr;
+                        this.from   = from;
+                        this.to     = to;
                 }
                 
-                /**
-                 * Sorts the provided array of SparseElement objects in ascending order of .
-                 * @param a  array of SparseElement objects to be sorted in-place
-                 */
-                private void bubblesort (SparseElement[] a)
+                @Override
+                protected void compute()
                 {
-                        int n = a.length;
-                        boolean swapped;
-                        do {
-                                swapped = false;
-                                n--;
-                                for ( int i = 0; i < n; i++ )
-                                {
-                                        SparseElement e1 = a[i];
-                                        SparseElement e2 = a[i+1];
-                                        if ( e1.compareTo(e2) > 0 )
-                                        {
-                                                // i.e. e2 would appear before e1 if a matrix is in column oriented representation
-                                                a[i]   = e2;
-                                                a[i+1] = e1;
-                                                swapped = true;
-                                        }
-                                }
+                        if ( to - from > 1 && colPtr[to] - colPtr[from] > PARALLEL_THRESHOLD )
+                        {
+                                int mid = (from + to) >>> 1;
+                                invokeAll(new SortColumns(keys, colPtr, from, mid),
+                                          new SortColumns(keys, colPtr, mid, to));
+                                return;
                         }
-                        while (swapped == true);
+                        
+                        for ( int j = from; j < to; j++ )
+                                if ( colPtr[j+1] - colPtr[j] > 1 )
+                                        Arrays.sort(keys, colPtr[j], colPtr[j+1]);
                 }
         }
 }
@@ -1,8 +1,10 @@
 package array;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteOrder;
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.HashMap;
 
 import abstractTypes.AbstractArrayElement;
 
@@ -39,7 +41,15 @@ public class MxStructArray extends AbstractArrayElement
 {
         private FieldNameLengthSubelement  fieldNameLengthSubelement;
         private FieldNamesSubelement       fieldNamesSubelement;
-        private FlexMatrix                 fields;
+        
+        /*
+         * The fields in the order of the field names; 'slots' maps a field
+         * name to its index, so that setting a field takes constant time
+         */
+        private AbstractArrayElement[]     fields;
+        private HashMap<String,Integer>    slots;
+        private int                        numFields;
+        private long                       numFieldBytes; // total element length of the fields
         
         public MxStructArray(String name)
         {
@@ -47,13 +57,25 @@ public class MxStructArray extends AbstractArrayElement
         }
         
         public MxStructArray(String name, boolean compFlag)
+        {
+                this(name,0,compFlag);
+        }
+        
+        /**
+         * @param numFields  the expected number of fields
+         *                   (more fields can be added anyway)
+         */
+        public MxStructArray(String name, int numFields, boolean compFlag)
         {
                 super(compFlag);
                 super.setClassType(MxClassID.mxSTRUCT_CLASS);
                 super.setName(name);
                 fieldNameLengthSubelement = new FieldNameLengthSubelement();
                 fieldNamesSubelement      = new FieldNamesSubelement();
-                fields                    = new FlexMatrix();
+                fields                    = new AbstractArrayElement[numFields];
+                slots                     = new HashMap<String,Integer>(Math.max(16, 2*numFields));
+                this.numFields            = 0;
+                numFieldBytes             = 0;
         }
         
         /**
@@ -66,53 +88,9 @@ public class MxStructArray extends AbstractArrayElement
                 int dim1 = data_vec.length;
                 
                 for ( int i = 0; i < dim1; i++ )
-                {
-                        String                name = name_vec[i];
-                        AbstractArrayElement  data = data_vec[i];
-                        
-                        if ( name.length() > 31 )
-                        {
-                                String str = "MxStructArray::setData: fieldname \"" +
-                                                name + "\" exceeds maximum length of 31 characters"; 
-                                System.err.println(str);
-                                System.err.println("The field will be ignored.");
-                                continue;
-                        }
-                        
-                        if ( data == null )
-                        {
-                                // Question is whether this is conform to MATLAB, since
-                                // in MATLAB any sub-field in a struct array is defined
-                                MxEmptyArray a = new MxEmptyArray();
-                                fields.add(a, name);
-                        }
-                        else
-                        {
-                                if ( matlabNameConvention )
-                                        // Not necessary, but MATLAB behavior
-                                        data.setName("");
-                                fields.add(data, name);
-                        }
-                        
-                        int len = fieldNamesSubelement.addData(name);
-                        
-                        // Update maximum field names length, as it could have changed
-                        fieldNameLengthSubelement.setData(len);
-                }
-                
-                // By observation: MATLAB structures always have dimension 1x1
-                super.setDimensions(new int[]{1,1});
-                
-                int numBytes = 0;
-                numBytes += fieldNameLengthSubelement.getTotalElementLength();
-                numBytes += fieldNamesSubelement.getTotalElementLength();
-                for ( Entry e : fields )
-                {
-                        AbstractArrayElement tmp = e.getArray();
-                        numBytes += tmp.getTotalElementLength();
-                }
+                        set(name_vec[i], data_vec[i]);
                 
-                super.setNumOfSpecDataBytes(numBytes);
+                updateSize();
         }
         
         /**
@@ -121,6 +99,15 @@ public class MxStructArray extends AbstractArrayElement
          * @param data_vec
          */
         public void addData(String name, AbstractArrayElement data)
+        {
+                set(name, data);
+                updateSize();
+        }
+        
+        /*
+         * Stores a field; a field that already exists is replaced
+         */
+        private void set(String name, AbstractArrayElement data)
         {
                 if ( name.length() > 31 )
                 {
@@ -135,40 +122,53 @@ public class MxStructArray extends AbstractArrayElement
                 {
                         // Question is whether this is conform to MATLAB, since
                         // in MATLAB any sub-field in a struct array is defined
-                        MxEmptyArray a = new MxEmptyArray();
-                        fields.add(a, name);
+                        data = new MxEmptyArray();
                 }
-                else
+                else if ( matlabNameConvention )
                 {
-                        if ( matlabNameConvention )
-                                // Not necessary, but MATLAB behavior
-                                data.setName("");
-                        fields.add(data, name);
+                        // Not necessary, but MATLAB behavior
+                        data.setName("");
                 }
                 
+                Integer slot = slots.get(name);
+                
+                if ( slot != null )
+                {
+                        numFieldBytes -= fields[slot].getTotalElementLength();
+                        numFieldBytes += data.getTotalElementLength();
+                        fields[slot] = data;
+                        return;
+                }
+                
+                if ( numFields == fields.length )
+                        fields = Arrays.copyOf(fields, Math.max(4, 2*numFields));
+                
+                slots.put(name, numFields);
+                fields[numFields++] = data;
+                numFieldBytes += data.getTotalElementLength();
+                
                 int len = fieldNamesSubelement.addData(name);
                 
                 // Update maximum field names length, as it could have changed
                 fieldNameLengthSubelement.setData(len);
-                
+        }
+        
+        private void updateSize()
+        {
                 // By observation: MATLAB structures always have dimension 1x1
                 super.setDimensions(new int[]{1,1});
                 
-                int numBytes = 0;
+                long numBytes = 0;
                 numBytes += fieldNameLengthSubelement.getTotalElementLength();
                 numBytes += fieldNamesSubelement.getTotalElementLength();
-                for ( Entry e : fields )
-                {
-                        AbstractArrayElement tmp = e.getArray();
-                        numBytes += tmp.getTotalElementLength();
-                }
+                numBytes += numFieldBytes;
                 
                 super.setNumOfSpecDataBytes(numBytes);
         }
         
         protected byte[] specDataToByteArray(ByteOrder byte_order)
         {
-                byte[] b      = new byte[super.getNumOfSpecDataBytes()];
+                byte[] b      = new byte[byteArrayLength(super.getNumOfSpecDataBytes())];
                 int    offset = 0;
                 
                 byte[] tmp;
@@ -181,15 +181,11 @@ public class MxStructArray extends AbstractArrayElement
                 System.arraycopy(tmp, 0, b, offset, tmp.length);
                 offset += tmp.length;
                 
-                // Returned list should have the same order as created in
-                // above call of fieldNamesSubelement.toByteArray()
-                String[] names = fieldNamesSubelement.listNames();
-                
-                for ( String name : names )
+                // The fields have the same order as the names written by
+                // the above call of fieldNamesSubelement.toByteArray()
+                for ( int i = 0; i < numFields; i++ )
                 {
-                        AbstractArrayElement obj = fields.get(name);
-                        
-                        tmp = ((AbstractArrayElement)obj).toByteArray(byte_order);
+                        tmp = fields[i].toByteArray(byte_order);
                         
                         System.arraycopy(tmp, 0, b, offset, tmp.length);
                         offset += tmp.length;
@@ -198,100 +194,16 @@ public class MxStructArray extends AbstractArrayElement
                 return b;
         }
         
-        private class Entry
+        @Override
+        protected void writeSpecDataTo(OutputStream out, ByteOrder byte_order) throws IOException
         {
-                private String               name;
-                private AbstractArrayElement data;
-                
-                Entry(AbstractArrayElement data, String name)
-                {
-                        this.data = data;
-                        this.name = name;
-                }
-                
-                AbstractArrayElement getArray()
-                {
-                        return data;
-                }
-                
-                boolean equals(Entry other)
-                {
-                        if (other == null)
-                                return false;
-                        
-                        return (this.name.equals(other.name));
-                }
-        }
-        
-        private class FlexMatrix implements Iterable<Entry>
-        {
-                /*
-                 * Could FlexMatrix<Entry> be a Hashtable ???
-                 */
-                ArrayList<Entry> list;
-                
-                FlexMatrix()
-                {
-                        list = new ArrayList<Entry>();
-                }
+                out.write(fieldNameLengthSubelement.toByteArray(byte_order));
+                out.write(fieldNamesSubelement.toByteArray(byte_order));
                 
-                public Iterator<Entry> iterator()
+                // Same order as in specDataToByteArray(...)
+                for ( int i = 0; i < numFields; i++ )
                 {
-                        return list.iterator();
-                }
-                
-                void add(AbstractArrayElement obj, String name)
-                {
-                        Entry e = new Entry(obj,name);
-                        
-                        int index = find(e);
-                        
-                        if ( index == -1 )
-                                list.add(e);
-                        else
-                                list.set(index, e);
-                }
-                
-                AbstractArrayElement get(String name)
-                {
-                        int index = find(name);
-                        return list.get(index).getArray();
-                }
-                
-                private int find(String name)
-                {
-                        Entry e = new Entry(null,name);
-                        return find(e);
-                }
-                
-                private int find(Entry e)
-                {
-                        return indexOf(e);
-                }
-                
-                /**
-                 * Returns the index of the first occurrence of the specified element
-                 * in this list, or -1 if this list does not contain the element.
-                 * More formally, returns the lowest index <tt>i</tt> such that
-                 * <tt>(o==null&nbsp;?&nbsp;get(i)==null&nbsp;:&nbsp;o.equals(get(i)))</tt>,
-                 * or -1 if there is no such index.
-                 */
-                private int indexOf(Entry e)
-                {
-                        if (e == null)
-                        {
-                                for (int i = 0; i < list.size(); i++)
-                                        if (list.get(i) == null)
-                                                return i;
-                        }
-                        else
-                        {
-                                for (int i = 0; i < list.size(); i++)
-                                        if (e.equals(list.get(i)))
-                                                return i;
-                        }
-                        
-                        return -1;
+                        fields[i].writeTo(out, byte_order);
                 }
         }
 }
@@ -18,8 +18,14 @@ public class DataTagField
         // its size and format. See abstractTypes.AbstractDataElement.
         private DataType dataType;
         
+        /**
+         * The largest number of bytes of a data element; the size field of
+         * the tag is an unsigned 32-bit value
+         */
+        public static final long MAX_NUM_OF_BYTES = 0xFFFFFFFFL;
+        
         // Specifies the number of bytes of data in the element.
-        private int      numOfBytes;
+        private long     numOfBytes;
         
         public DataTagField()
         {
@@ -37,10 +43,10 @@ public class DataTagField
          * @param type  Specifies how data in the data part of a data element should be interpreted
          * @param size  Specifies the number of bytes of data in the data part of a data element
          */
-        public DataTagField(DataType type, int size)
+        public DataTagField(DataType type, long size)
         {
                 dataType   = type;
-                numOfBytes = size;
+                setNumOfBytes(size);
         }
         
         public DataType getDataType()
@@ -48,7 +54,7 @@ public class DataTagField
                 return dataType;
         }
         
-        public int getNumOfBytes()
+        public long getNumOfBytes()
         {
                 return numOfBytes;
         }
@@ -58,8 +64,15 @@ public class DataTagField
                 dataType = type;
         }
         
-        public void setNumOfBytes(int size)
+        /**
+         * @throws IllegalArgumentException if the size does not fit into the
+         *         size field of the tag (see MAX_NUM_OF_BYTES)
+         */
+        public void setNumOfBytes(long size)
         {
+                if ( size < 0 || size > MAX_NUM_OF_BYTES )
+                        throw new IllegalArgumentException("Data element exceeds the maximum size of 4 GB: " + size + " bytes");
+                
                 numOfBytes = size;
         }
         
@@ -2,6 +2,7 @@ package common;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Arrays;
 
@@ -13,22 +14,26 @@ import java.util.Arrays;
 public class DataTagFieldReader
 {
         private DataType  dataType;
-        private int       numOfBytes;
+        private long      numOfBytes;  // unsigned 32-bit value of the tag
         private int       tagSize;
-        private int       elementSize;
+        private long      elementSize;
         private int       padding;
         private boolean   isShortTag;
         private byte[]    tagData;
+        private ByteBuffer tagBuffer; // view of tagData in the byte order of the file
         
         private ByteOrder byteOrder;
         
         /**
-         * @param type
-         * @param size
+         * A DataTagFieldReader can be used for any number of tags;
+         * reading a tag does not allocate any memory.
+         * @param b  the byte order of the tags
          */
         public DataTagFieldReader(ByteOrder b)
         {
                 this.byteOrder = b;
+                this.tagData   = new byte[8];
+                this.tagBuffer = ByteBuffer.wrap(tagData).order(b);
         }
         
         public DataType getDataType()
@@ -36,7 +41,10 @@ public class DataTagFieldReader
                 return dataType;
         }
         
-        public int getDataSize()
+        /**
+         * Returns the number of data bytes of the element (up to 4 GB)
+         */
+        public long getDataSize()
         {
                 return numOfBytes;
         }
@@ -46,11 +54,23 @@ public class DataTagFieldReader
                 return tagSize;
         }
         
-        public int getElementSize()
+        /**
+         * Returns the number of bytes of the element including tag and padding
+         */
+        public long getElementSize()
         {
                 return elementSize;
         }
         
+        /**
+         * Returns true, if the data bytes of the element fit into a Java
+         * array, i.e. getDataSize() can be taken as int
+         */
+        public boolean fitsIntoArray()
+        {
+                return numOfBytes <= Integer.MAX_VALUE - 8;
+        }
+        
         public int getPadding()
         {
                 return padding;
@@ -61,6 +81,10 @@ public class DataTagFieldReader
                 return isShortTag;
         }
         
+        /**
+         * Returns the 8 bytes of the tag read last (for short elements
+         * including the data). The array is reused by the next read.
+         */
         public byte[] getTagData()
         {
                 return tagData;
@@ -82,141 +106,83 @@ public class DataTagFieldReader
         /**
          * Evaluates all 8 bytes of a data element tag field 
          * @param tagBytes the first 8 bytes of a data element
-         * @return
+         * @return false, if the bytes are not a valid tag
          */
         public boolean read(byte[] tagBytes)
         {
-                if ( checkTagConsistency(tagBytes) == false )
-                        return false;
+                System.arraycopy(tagBytes, 0, tagData, 0, 8);
                 
-                if ( isSmallElement(tagBytes) )
-                {
-                        dataType = DataType.get(tagBytes[3] & 0xFF);
-                        numOfBytes = tagBytes[1] & 0xFF;
-                        if (byteOrder != ByteOrder.BIG_ENDIAN)
-                        {
-                                dataType = DataType.get(tagBytes[0] & 0xFF);
-                                numOfBytes = tagBytes[2] & 0xFF;
-                        }
-                        
-                        tagSize     = 4;
-                        padding     = 4 - numOfBytes;
-                        elementSize = 8;
-                        isShortTag  = true;
-                }
-                else
-                {
-                        dataType = DataType.get(tagBytes[3] & 0xFF);
-                        if (byteOrder != ByteOrder.BIG_ENDIAN)
-                        {
-                                dataType = DataType.get(tagBytes[0] & 0xFF);
-                        }
-                        
-                        numOfBytes = Bytes.toInt(tagBytes,4,byteOrder);
-                        tagSize  = 8;
-                        
-                        int b = numOfBytes % 8;
-                        padding = (b == 0) ? 0 : 8 - b; // possibly: (8-b)%8 ??
-                        if ( dataType == DataType.miCOMPRESSED )
-                                padding = 0;
-                        
-                        elementSize = tagSize + numOfBytes + padding;
-                        isShortTag  = false;
-                }
-                
-                tagData = tagBytes;
-                
-                return true;
+                return evaluate();
         }
         
+        /**
+         * Reads and evaluates the next 8 bytes of a stream
+         * @return false, if the bytes cannot be read or are not a valid tag
+         */
         public boolean read(InputStream in)
         {
-                byte[] tagBytes = new byte[8];
-                
                 try {
-                        in.read(tagBytes);
+                        int n = 0;
+                        while ( n < 8 )
+                        {
+                                int count = in.read(tagData, n, 8 - n);
+                                if ( count < 0 )
+                                        return false;
+                                n += count;
+                        }
                 }
                 catch (IOException e) {
                         e.printStackTrace();
                         return false;
                 }
                 
-                if (read(tagBytes) == false)
-                        return false;
-                
-                return true;
-        }
-        
-        private boolean checkTagConsistency(byte[] tagBytes)
-        {
-                if (byteOrder == ByteOrder.BIG_ENDIAN)
-                        return checkTagConsistencyBigEndian(tagBytes);
-                else
-                {
-                        byte[] rev = {tagBytes[3],tagBytes[2],tagBytes[1],tagBytes[0]};
-                        return checkTagConsistencyBigEndian(rev);
-                }
+                return evaluate();
         }
         
-        private boolean checkTagConsistencyBigEndian(byte[] tagBytes)
+        /*
+         * Evaluates the tag in tagData. The first 4 bytes read as one integer
+         * in the byte order of the file hold
+         *   - the data type (upper 2 bytes zero) for long tags
+         *   - the size (upper 2 bytes) and the data type (lower 2 bytes)
+         *     for short tags (small data element format)
+         */
+        private boolean evaluate()
         {
-                if ( tagBytes[1] != 0 ) // Short data element; data in tag field
+                int first = tagBuffer.getInt(0);
+                int size  = first >>> 16;
+                int type  = first & 0xFFFF;
+                
+                // Types and sizes of short tags fit into one byte
+                if ( type > 0xFF || size > 4 )
+                        return false;
+                
+                dataType = DataType.get(type);
+                
+                if ( dataType == null )
+                        return false;
+                
+                if ( size != 0 ) // Short data element; data in tag field
                 {
-                        int type = tagBytes[3];
-                        
-                        if ( DataType.get(type) == null )
-                                return false;
-                        
-                        int size = tagBytes[1];
-                        
-                        if ( size > 4 )
-                                return false;
-                        
-                        if ( tagBytes[0] != 0 || tagBytes[2] != 0 )
-                                return false;
+                        numOfBytes  = size;
+                        tagSize     = 4;
+                        padding     = 4 - size;
+                        elementSize = 8;
+                        isShortTag  = true;
                 }
                 else
                 {
-                        int type = tagBytes[3];
+                        numOfBytes = tagBuffer.getInt(4) & 0xFFFFFFFFL;
+                        tagSize    = 8;
                         
-                        if ( DataType.get(type) == null )
-                                return false;
+                        int b = (int)(numOfBytes % 8);
+                        padding = (b == 0) ? 0 : 8 - b; // possibly: (8-b)%8 ??
+                        if ( dataType == DataType.miCOMPRESSED )
+                                padding = 0;
                         
-                        if ( tagBytes[0] != 0 || tagBytes[1] != 0  || tagBytes[2] != 0 )
-                                return false;
+                        elementSize = tagSize + numOfBytes + padding;
+                        isShortTag  = false;
                 }
                 
                 return true;
         }
-        
-        @Deprecated
-        /* private */ boolean isShortElement_OLD(byte[] in)
-        {
-                if (byteOrder == ByteOrder.BIG_ENDIAN && in[1] != 0 )
-                        return true;
-                else if ( in[2] != 0 )
-                        return true;
-                
-                return false;
-        }
-        
-        /**
-         * Quote MathWorks: you can tell if you are processing a small data element by
-         * comparing the value of the first 2 bytes of the tag with the value zero (0).
-         * If these 2 bytes are not zero, the tag uses the small data element format.
-         * @param in  the tag bytes of a data element
-         * @return    treu, if the tag is in small data element format, false otherwise
-         */
-        private boolean isSmallElement(byte[] in)
-        {
-                if (byteOrder == ByteOrder.BIG_ENDIAN)
-                {
-                        if ( (in[0] != 0 || in[1] != 0) )
-                                return true;
-                }
-                else if ( (in[2] != 0 || in[3] != 0) )
-                        return true;
-                
-                return false;
-        }
 }
@@ -1,8 +1,6 @@
 package common;
 
 import java.util.EnumSet;
-import java.util.HashMap;
-import java.util.Map;
 
 /*
  * Reverse Lookup method from:
@@ -36,13 +34,13 @@ public enum DataType
         miUTF16     (17, 2, "utf16"),
         miUTF32     (18, 4, "utf32");
         
-        private static final Map<Integer,DataType> lookup =
-                        new HashMap<Integer,DataType>();
+        // Indexed by the value of the Data Type field (called for every tag read)
+        private static final DataType[] lookup = new DataType[miUTF32.index+1];
         
         static
         {
                 for(DataType s : EnumSet.allOf(DataType.class))
-                        lookup.put(s.getIndex(), s);
+                        lookup[s.getIndex()] = s;
         }
         
         private int    index;
@@ -63,7 +61,10 @@ public enum DataType
         
         public static DataType get(int index)
         { 
-                return lookup.get(index);
+                if ( index < 0 || index >= lookup.length )
+                        return null;
+                
+                return lookup[index];
         }
         
         public boolean isSignedType()
@@ -78,4 +79,28 @@ public enum DataType
                 
                 return false;
         }
+        
+        /**
+         * Returns true for the types of numeric data items
+         * (miINT8 ... miUINT64, miSINGLE and miDOUBLE)
+         */
+        public boolean isNumericType()
+        {
+                switch (this)
+                {
+                        case miINT8:
+                        case miUINT8:
+                        case miINT16:
+                        case miUINT16:
+                        case miINT32:
+                        case miUINT32:
+                        case miINT64:
+                        case miUINT64:
+                        case miSINGLE:
+                        case miDOUBLE:
+                                return true;
+                        default:
+                                return false;
+                }
+        }
 }
@@ -0,0 +1,103 @@
+package common;
+
+import java.lang.ref.SoftReference;
+
+import subelements.base.DataArray;
+
+/**
+ * Handle of a variable whose data has not been decoded yet.
+ * The information shared by all MxDataObjects (flags, class, dimensions and
+ * name) is available right away, e.g. from the index of a MxFileReader.
+ * The variable itself is decoded on first access to its data and then kept
+ * by a soft reference only, i.e. it may be reclaimed by the garbage collector
+ * (or explicitly by release()) and will be decoded again when needed.
+ */
+public class LazyMxDataObject extends MxDataObject
+{
+        /**
+         * Decodes the complete variable a LazyMxDataObject stands for
+         */
+        public interface Loader
+        {
+                MxDataObject load();
+        }
+        
+        private Loader                      loader;
+        private SoftReference<MxDataObject> cache;
+        
+        /**
+         * @param info    the flags, class, dimensions and name of the variable
+         * @param loader  used to decode the variable when its data is accessed
+         */
+        public LazyMxDataObject(MxDataObject info, Loader loader)
+        {
+                super(info);
+                this.loader = loader;
+                this.cache  = null;
+        }
+        
+        /**
+         * Returns the decoded variable. The variable is decoded, if it has
+         * not been decoded before or has been released in the meantime.
+         * @return the decoded variable or null, if decoding failed
+         */
+        public synchronized MxDataObject getDataObject()
+        {
+                MxDataObject obj = (cache != null) ? cache.get() : null;
+                
+                if ( obj == null )
+                {
+                        obj = loader.load();
+                        
+                        if ( obj != null )
+                                cache = new SoftReference<MxDataObject>(obj);
+                }
+                
+                return obj;
+        }
+        
+        /**
+         * Returns true, if the decoded variable is currently held in memory
+         */
+        public synchronized boolean isLoaded()
+        {
+                return cache != null && cache.get() != null;
+        }
+        
+        /**
+         * Drops the decoded variable. The next access to the data will
+         * decode the variable again.
+         */
+        public synchronized void release()
+        {
+                cache = null;
+        }
+        
+        /**
+         * Returns the real part of a numeric or sparse variable.
+         * @return the real part or null, if the variable has no numeric data
+         */
+        public DataArray getRealDataStorage()
+        {
+                MxDataObject obj = getDataObject();
+                
+                if ( obj instanceof MxNumericDataObject )
+                        return ((MxNumericDataObject)obj).getRealDataStorage();
+                
+                return null;
+        }
+        
+        /**
+         * Returns the imaginary part of a numeric or sparse variable.
+         * @return the imaginary part or null, if the variable has no (complex) numeric data
+         */
+        public DataArray getImagDataStorage()
+        {
+                MxDataObject obj = getDataObject();
+                
+                if ( obj instanceof MxNumericDataObject )
+                        return ((MxNumericDataObject)obj).getImagDataStorage();
+                
+                return null;
+        }
+}
@@ -2,8 +2,12 @@ package common;
 
 import exception.ClassIDException;
 import exception.LossOfPrecisionException;
+import subelements.base.BufferArray;
 import subelements.base.ByteArray;
+import subelements.base.CharArray;
 import subelements.base.DataArray;
+import subelements.base.DoubleArray;
+import subelements.base.FloatArray;
 import subelements.base.IntArray;
 import subelements.base.LongArray;
 import subelements.base.ShortArray;
@@ -21,6 +25,8 @@ public class MxNumericDataObject extends MxDataObject
         protected DataType  real_data_type;
         protected DataType  imag_data_type;
         
+        private DataArray   real_part_array; // real_part converted from a BufferArray
+        
         public MxNumericDataObject()
         {
                 real_part = null;
@@ -149,6 +155,60 @@ public class MxNumericDataObject extends MxDataObject
                 return data;
         }
         
+        /**
+         * Returns the real part as linear array of doubles. If the data is
+         * stored as double, the storage itself is returned; data stored in
+         * another type (e.g. a double variable stored as uint8 by MATLAB or
+         * an integer variable) is widened into a new array.
+         */
+        public double[] getDoubleLinearArray()
+        {
+                DataArray part = realPartArray();
+                
+                if ( part instanceof DoubleArray )
+                        return ((DoubleArray)part).getData();
+                
+                return part.toDoubleArray(real_data_type.isSignedType()).getData();
+        }
+        
+        /*
+         * Returns the real part as Java array based DataArray, i.e. converts
+         * a BufferArray (zero-copy view of a file) to its array counterpart.
+         * The conversion is done once, the typed accessors below return
+         * the same array on every call.
+         */
+        private DataArray realPartArray()
+        {
+                if ( real_part instanceof BufferArray )
+                {
+                        if ( real_part_array == null )
+                                real_part_array = ((BufferArray)real_part).toDataArray();
+                        
+                        return real_part_array;
+                }
+                
+                return real_part;
+        }
+        
+        public float[] getSingleLinearArray() throws ClassIDException, LossOfPrecisionException
+        {
+                if ( classType != MxClassID.mxSINGLE_CLASS )
+                {
+                        throw new ClassIDException(MxClassID.mxSINGLE_CLASS,classType);
+                }
+                
+                DataArray part = realPartArray();
+                
+                if ( !(part instanceof FloatArray) )
+                        throw new LossOfPrecisionException();
+                
+                FloatArray floatArray = (FloatArray)part;
+                
+                float[] data = floatArray.getData();
+                
+                return data;
+        }
+        
         public long[] getInt64LinearArray() throws ClassIDException, LossOfPrecisionException
         {
                 if ( classType != MxClassID.mxINT64_CLASS )
@@ -156,10 +216,12 @@ public class MxNumericDataObject extends MxDataObject
                         throw new ClassIDException(MxClassID.mxINT64_CLASS,classType);
                 }
                 
-                if ( !(real_part instanceof LongArray) )
+                DataArray part = realPartArray();
+                
+                if ( !(part instanceof LongArray) )
                         throw new LossOfPrecisionException();
                 
-                LongArray longArray = (LongArray)real_part;
+                LongArray longArray = (LongArray)part;
                 
                 long[] data = longArray.getData();
                 
@@ -173,10 +235,12 @@ public class MxNumericDataObject extends MxDataObject
                         throw new ClassIDException(MxClassID.mxINT32_CLASS,classType);
                 }
                 
-                if ( !(real_part instanceof IntArray) )
+                DataArray part = realPartArray();
+                
+                if ( !(part instanceof IntArray) )
                         throw new LossOfPrecisionException();
                 
-                IntArray intArray = (IntArray)real_part;
+                IntArray intArray = (IntArray)part;
                 
                 int[] data = intArray.getData();
                 
@@ -190,12 +254,7 @@ public class MxNumericDataObject extends MxDataObject
                         throw new ClassIDException(MxClassID.mxUINT32_CLASS,classType);
                 }
                 
-                if ( !(real_part instanceof IntArray) )
-                        throw new LossOfPrecisionException();
-                
-                IntArray intArray = (IntArray)real_part;
-                
-                int[] d = intArray.getData();
+                int[] d = getUInt32RawLinearArray();
                 
                 long[] data = new long[d.length];
                 
@@ -212,10 +271,12 @@ public class MxNumericDataObject extends MxDataObject
                         throw new ClassIDException(MxClassID.mxINT16_CLASS,classType);
                 }
                 
-                if ( !(real_part instanceof ShortArray) )
+                DataArray part = realPartArray();
+                
+                if ( !(part instanceof ShortArray) )
                         throw new LossOfPrecisionException();
                 
-                ShortArray shortArray = (ShortArray)real_part;
+                ShortArray shortArray = (ShortArray)part;
                 
                 short[] data = shortArray.getData();
                 
@@ -229,17 +290,12 @@ public class MxNumericDataObject extends MxDataObject
                         throw new ClassIDException(MxClassID.mxUINT16_CLASS,classType);
                 }
                 
-                if ( !(real_part instanceof ShortArray) )
-                        throw new LossOfPrecisionException();
-                
-                ShortArray shortArray = (ShortArray)real_part;
-                
-                short[] d = shortArray.getData();
+                char[] d = getUInt16RawLinearArray();
                 
                 int[] data = new int[d.length];
                 
                 for ( int k = 0; k < d.length; k++ )
-                        data[k] = d[k] & 0xFFFF;
+                        data[k] = d[k];
                 
                 return data;
         }
@@ -251,10 +307,12 @@ public class MxNumericDataObject extends MxDataObject
                         throw new ClassIDException(MxClassID.mxINT8_CLASS,classType);
                 }
                 
-                if ( !(real_part instanceof ByteArray) )
+                DataArray part = realPartArray();
+                
+                if ( !(part instanceof ByteArray) )
                         throw new LossOfPrecisionException();
                 
-                ByteArray byteArray = (ByteArray)real_part;
+                ByteArray byteArray = (ByteArray)part;
                 
                 byte[] data = byteArray.getData();
                 
@@ -268,12 +326,7 @@ public class MxNumericDataObject extends MxDataObject
                         throw new ClassIDException(MxClassID.mxUINT8_CLASS,classType);
                 }
                 
-                if ( !(real_part instanceof ByteArray) )
-                        throw new LossOfPrecisionException();
-                
-                ByteArray byteArray = (ByteArray)real_part;
-                
-                byte[] d = byteArray.getData();
+                byte[] d = getUInt8RawLinearArray();
                 
                 short[] data = new short[d.length];
                 
@@ -283,6 +336,73 @@ public class MxNumericDataObject extends MxDataObject
                 return data;
         }
         
+        /*
+         * The getUIntXXRawLinearArray() methods return the storage of
+         * unsigned data without copying and widening it, i.e. the values are
+         * the bit patterns of the unsigned values in the signed Java type of
+         * the same size (except for uint16, which maps to char).
+         */
+        
+        public byte[] getUInt8RawLinearArray() throws ClassIDException, LossOfPrecisionException
+        {
+                if ( classType != MxClassID.mxUINT8_CLASS )
+                {
+                        throw new ClassIDException(MxClassID.mxUINT8_CLASS,classType);
+                }
+                
+                DataArray part = realPartArray();
+                
+                if ( !(part instanceof ByteArray) )
+                        throw new LossOfPrecisionException();
+                
+                return ((ByteArray)part).getData();
+        }
+        
+        public char[] getUInt16RawLinearArray() throws ClassIDException, LossOfPrecisionException
+        {
+                if ( classType != MxClassID.mxUINT16_CLASS )
+                {
+                        throw new ClassIDException(MxClassID.mxUINT16_CLASS,classType);
+                }
+                
+                DataArray part = realPartArray();
+                
+                if ( !(part instanceof CharArray) )
+                        throw new LossOfPrecisionException();
+                
+                return ((CharArray)part).getData();
+        }
+        
+        public int[] getUInt32RawLinearArray() throws ClassIDException, LossOfPrecisionException
+        {
+                if ( classType != MxClassID.mxUINT32_CLASS )
+                {
+                        throw new ClassIDException(MxClassID.mxUINT32_CLASS,classType);
+                }
+                
+                DataArray part = realPartArray();
+                
+                if ( !(part instanceof IntArray) )
+                        throw new LossOfPrecisionException();
+                
+                return ((IntArray)part).getData();
+        }
+        
+        public long[] getUInt64RawLinearArray() throws ClassIDException, LossOfPrecisionException
+        {
+                if ( classType != MxClassID.mxUINT64_CLASS )
+                {
+                        throw new ClassIDException(MxClassID.mxUINT64_CLASS,classType);
+                }
+                
+                DataArray part = realPartArray();
+                
+                if ( !(part instanceof LongArray) )
+                        throw new LossOfPrecisionException();
+                
+                return ((LongArray)part).getData();
+        }
+        
         public boolean[] getBooleanLinearArray() throws ClassIDException, LossOfPrecisionException
         {
                 if ( classType != MxClassID.mxUINT8_CLASS )
@@ -298,10 +418,12 @@ public class MxNumericDataObject extends MxDataObject
                         " value != 0 is boolean true." );
                 }
                 
-                if ( !(real_part instanceof ByteArray) )
+                DataArray part = realPartArray();
+                
+                if ( !(part instanceof ByteArray) )
                         throw new LossOfPrecisionException();
                 
-                ByteArray byteArray = (ByteArray)real_part;
+                ByteArray byteArray = (ByteArray)part;
                 
                 byte[] d = byteArray.getData();
                 
@@ -354,7 +476,8 @@ public class MxNumericDataObject extends MxDataObject
         
         public void setRealDataStorage(DataArray real_part)
         {
-                this.real_part = real_part;
+                this.real_part       = real_part;
+                this.real_part_array = null;
         }
         
         public void setImagDataStorage(DataArray imag_part)
@@ -3,14 +3,21 @@ package common;
 import java.util.Arrays;
 
 /**
+ * Sparse matrix in MATLAB's compressed sparse column (CSC) form:
+ * for column j, the row indices of its non-zero elements are
+ * ir[jc[j]] ... ir[jc[j+1]-1], their values are the elements with the same
+ * indices of the real (and imaginary) data storage.
+ * The arrays are kept as read from the file; the coordinate form (one column
+ * index per non-zero element) is only built on request.
  *
  * @author Boris Dortschy (<a href="mailto:bodo.pub@gmail.com">bodo.pub@gmail.com</a>)
  *
  */
 public class MxSparseDataObject extends MxNumericDataObject
 {
-        private int[] ir;
-        private int[] jc;
+        private int[] ir;         // row indices (may contain excess storage behind the non-zeros)
+        private int[] jc;         // column pointers (CSC); null, if set in coordinate form
+        private int[] colIndices; // column index per non-zero element, if set in coordinate form
         
         private int nzmax;
         
@@ -21,6 +28,7 @@ public class MxSparseDataObject extends MxNumericDataObject
                 
                 ir = null;
                 jc = null;
+                colIndices = null;
                 
                 nzmax = 0;
         }
@@ -36,6 +44,7 @@ public class MxSparseDataObject extends MxNumericDataObject
                 classType = MxClassID.mxSPARSE_CLASS;
                 ir = null;
                 jc = null;
+                colIndices = null;
                 
                 nzmax = 0;
         }
@@ -47,8 +56,11 @@ public class MxSparseDataObject extends MxNumericDataObject
         public int hashCode() {
                 final int prime = 31;
                 int result = super.hashCode();
-                result = prime * result + Arrays.hashCode(ir);
-                result = prime * result + Arrays.hashCode(jc);
+                int[] p = getJc();
+                int   n = getNumNonZeros();
+                for ( int k = 0; k < n; k++ )
+                        result = prime * result + ir[k];
+                result = prime * result + Arrays.hashCode(p);
                 result = prime * result + nzmax;
                 return result;
         }
@@ -70,11 +82,26 @@ public class MxSparseDataObject extends MxNumericDataObject
                 
                 MxSparseDataObject other = (MxSparseDataObject) obj;
                 
-                if (!Arrays.equals(ir, other.ir))
+                // Compared in CSC form, no matter which form has been set
+                if (!Arrays.equals(getJc(), other.getJc()))
                         return false;
                 
-                if (!Arrays.equals(jc, other.jc))
-                        return false;
+                if ( ir == null || other.ir == null )
+                {
+                        if ( ir != other.ir )
+                                return false;
+                }
+                else
+                {
+                        int n = getNumNonZeros();
+                        
+                        if ( ir.length < n || other.ir.length < n )
+                                return false;
+                        
+                        for ( int k = 0; k < n; k++ )
+                                if ( ir[k] != other.ir[k] )
+                                        return false;
+                }
                 
                 if (nzmax != other.nzmax)
                         return false;
@@ -87,14 +114,73 @@ public class MxSparseDataObject extends MxNumericDataObject
                 return nzmax;
         }
         
+        /**
+         * Returns the number of non-zero elements
+         */
+        public int getNumNonZeros()
+        {
+                if ( colIndices != null )
+                        return colIndices.length;
+                
+                if ( jc == null || jc.length == 0 )
+                        return 0;
+                
+                return jc[jc.length-1];
+        }
+        
+        /**
+         * Returns the row indices of the non-zero elements (CSC ir) without
+         * copying them. The array may contain excess storage behind the
+         * first getNumNonZeros() elements. It must not be modified.
+         */
+        public int[] getIr()
+        {
+                return ir;
+        }
+        
+        /**
+         * Returns the column pointers (CSC jc, number of columns + 1 elements)
+         * without copying them. The array must not be modified.
+         * For matrices set in coordinate form (setColumnIndices(int[])),
+         * the pointers are built on every call.
+         */
+        public int[] getJc()
+        {
+                if ( colIndices != null )
+                        return compressColumns(colIndices);
+                
+                return jc;
+        }
+        
+        /**
+         * Returns the row index of every non-zero element (coordinate form)
+         */
         public int[] getRowIndeices()
         {
-                return ir.clone();
+                return Arrays.copyOf(ir, getNumNonZeros());
         }
         
+        /**
+         * Returns the column index of every non-zero element (coordinate form).
+         * The indices are expanded from the column pointers on every call.
+         */
         public int[] getColumnIndices()
         {
-                return jc.clone();
+                if ( colIndices != null )
+                        return colIndices.clone();
+                
+                int[] p = getJc();
+                
+                if ( p == null )
+                        return null;
+                
+                int[] cols = new int[getNumNonZeros()];
+                
+                // jc[j+1] - jc[j] = #(elements in column j)
+                for ( int j = 0; j < p.length-1; j++ )
+                        Arrays.fill(cols, p[j], p[j+1], j);
+                
+                return cols;
         }
         
         public void setNzMax(int nzmax)
@@ -102,13 +188,114 @@ public class MxSparseDataObject extends MxNumericDataObject
                 this.nzmax = nzmax;
         }
         
+        /**
+         * Sets the structure of the matrix in CSC form; the arrays are taken
+         * over without copying them
+         * @param ir  row indices of the non-zero elements
+         * @param jc  column pointers (number of columns + 1 elements)
+         */
+        public void setCSC(int[] ir, int[] jc)
+        {
+                this.ir = ir;
+                this.jc = jc;
+                this.colIndices = null;
+        }
+        
+        /**
+         * Sets the row index of every non-zero element (coordinate form)
+         */
         public void setRowIndeices(int[] ir)
         {
                 this.ir = ir;
         }
         
+        /**
+         * Sets the column index of every non-zero element (coordinate form);
+         * the non-zero elements must be in column order
+         */
         public void setColumnIndices(int[] jc)
         {
-                this.jc = jc;
+                this.colIndices = jc;
+                this.jc = null;
+        }
+        
+        /*
+         * Builds column pointers from column indices in column order
+         */
+        private int[] compressColumns(int[] cols)
+        {
+                int n = (dimensions != null && dimensions.length > 1) ? dimensions[1] : 0;
+                
+                for ( int k = 0; k < cols.length; k++ )
+                        n = Math.max(n, cols[k]+1);
+                
+                int[] p = new int[n+1];
+                
+                for ( int k = 0; k < cols.length; k++ )
+                        p[cols[k]+1]++;
+                
+                for ( int j = 0; j < n; j++ )
+                        p[j+1] += p[j];
+                
+                return p;
+        }
+        
+        /**
+         * Returns a cursor over the non-empty columns of the matrix
+         */
+        public ColumnCursor columnCursor()
+        {
+                return new ColumnCursor(getJc());
+        }
+        
+        /**
+         * Iterates over the non-empty columns of a sparse matrix without
+         * creating objects per column. The non-zero elements of the current
+         * column are the elements start() ... end()-1 of getIr() and the data storage.
+         * 
+         *     ColumnCursor c = sparse.columnCursor();
+         *     while ( c.next() )
+         *             for ( int k = c.start(); k < c.end(); k++ )
+         *                     ... ir[k], column c.column() ...
+         */
+        public static class ColumnCursor
+        {
+                private final int[] jc;
+                private int         column;
+                
+                ColumnCursor(int[] jc)
+                {
+                        this.jc     = (jc != null) ? jc : new int[] {0};
+                        this.column = -1;
+                }
+                
+                /**
+                 * Moves to the next column containing non-zero elements
+                 * @return false, if there is no further such column
+                 */
+                public boolean next()
+                {
+                        do {
+                                column++;
+                        }
+                        while ( column < jc.length-1 && jc[column] == jc[column+1] );
+                        
+                        return column < jc.length-1;
+                }
+                
+                public int column()
+                {
+                        return column;
+                }
+                
+                public int start()
+                {
+                        return jc[column];
+                }
+                
+                public int end()
+                {
+                        return jc[column+1];
+                }
         }
 }
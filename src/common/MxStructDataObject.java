@@ -1,15 +1,20 @@
 package common;
 
 import java.util.Arrays;
+import java.util.HashMap;
 
 /**
+ * Struct with named fields. Fields read lazily are only decoded when they
+ * are accessed; hashCode() does not decode them and equals() only does,
+ * if the names and the decoded fields of both structs are equal.
  *
  * @author Boris Dortschy (<a href="mailto:bodo.pub@gmail.com">bodo.pub@gmail.com</a>)
  *
  */
 public class MxStructDataObject extends MxDataObject
 {
-        private MxDataObject[] data_vec;
+        private MxDataObject[]           data_vec;
+        private HashMap<String,Integer>  slots; // field name -> index in data_vec
         
         public MxStructDataObject()
         {
@@ -32,12 +37,13 @@ public class MxStructDataObject extends MxDataObject
         
         /* (non-Javadoc)
          * @see java.lang.Object#hashCode()
+         * Only the field names are used, so lazy fields are not decoded.
          */
         @Override
         public int hashCode() {
                 final int prime = 31;
                 int result = super.hashCode();
-                result = prime * result + Arrays.hashCode(data_vec);
+                result = prime * result + Arrays.hashCode(getFieldNames());
                 return result;
         }
         
@@ -58,33 +64,149 @@ public class MxStructDataObject extends MxDataObject
                 
                 MxStructDataObject other = (MxStructDataObject) obj;
                 
-                if (!Arrays.equals(data_vec, other.data_vec))
+                if (!Arrays.equals(getFieldNames(), other.getFieldNames()))
                         return false;
                 
+                if (data_vec == null)
+                        return true;
+                
+                // Fields decoded in both structs are compared first, lazy
+                // fields are only decoded, if all of them are equal
+                boolean[] compared = new boolean[data_vec.length];
+                
+                for ( int i = 0; i < data_vec.length; i++ )
+                {
+                        if (isDecoded(i) && other.isDecoded(i))
+                        {
+                                if (!equalFields(data_vec[i], other.data_vec[i]))
+                                        return false;
+                                
+                                compared[i] = true;
+                        }
+                }
+                
+                for ( int i = 0; i < data_vec.length; i++ )
+                        if (!compared[i] && !equalFields(resolve(i), other.resolve(i)))
+                                return false;
+                
                 return true;
         }
         
+        private static boolean equalFields(MxDataObject a, MxDataObject b)
+        {
+                return (a == null) ? b == null : a.equals(b);
+        }
+        
+        /**
+         * Returns the field with the given name. A field that has been read
+         * lazily (see io.MxFileReader.setLazyFields) is decoded by the first
+         * call, the other fields of the struct are not decoded.
+         * @return the field or null, if the struct has no such field
+         */
         public MxDataObject getField(String name)
         {
-                if (name == null)
+                if (name == null || slots == null)
                         return null;
                 
-                for ( MxDataObject obj : data_vec)
-                {
-                        if (name.equals(obj.getName()))
-                                return obj;
-                }
+                Integer i = slots.get(name);
                 
-                return null;
+                if (i == null)
+                        return null;
+                
+                return resolve(i);
         }
         
+        /**
+         * Returns the names of the fields in the order they are stored,
+         * without decoding any field
+         */
+        public String[] getFieldNames()
+        {
+                if (data_vec == null)
+                        return null;
+                
+                String[] names = new String[data_vec.length];
+                
+                for ( int i = 0; i < data_vec.length; i++ )
+                        names[i] = data_vec[i].getName();
+                
+                return names;
+        }
+        
+        /**
+         * Returns true, if the field with the given name exists and its
+         * data has been decoded (always true for fields not read lazily)
+         */
+        public synchronized boolean isFieldDecoded(String name)
+        {
+                if (name == null || slots == null)
+                        return false;
+                
+                Integer i = slots.get(name);
+                
+                return i != null && isDecoded(i);
+        }
+        
+        private synchronized boolean isDecoded(int i)
+        {
+                return !(data_vec[i] instanceof LazyMxDataObject);
+        }
+        
+        /**
+         * Returns all fields; fields read lazily are decoded, i.e. this may
+         * read large parts of the file (see getField and getFieldNames)
+         */
         public MxDataObject[] getAllFields()
         {
+                if (data_vec == null)
+                        return null;
+                
+                for ( int i = 0; i < data_vec.length; i++ )
+                        resolve(i);
+                
                 return data_vec;
         }
         
         public void setAllFields(MxDataObject[] data_vec)
         {
-                this.data_vec = data_vec;
+                HashMap<String,Integer> slots = null;
+                
+                if (data_vec != null)
+                {
+                        slots = new HashMap<String,Integer>(data_vec.length*2);
+                        
+                        // The first of several fields with the same name is found
+                        for ( int i = data_vec.length-1; i >= 0; i-- )
+                                if (data_vec[i] != null)
+                                        slots.put(data_vec[i].getName(), i);
+                }
+                
+                synchronized (this)
+                {
+                        this.data_vec = data_vec;
+                        this.slots    = slots;
+                }
+        }
+        
+        /*
+         * Returns the i-th field; a lazy field is decoded and replaces
+         * its handle
+         */
+        private synchronized MxDataObject resolve(int i)
+        {
+                MxDataObject obj = data_vec[i];
+                
+                if (obj instanceof LazyMxDataObject)
+                {
+                        MxDataObject decoded = ((LazyMxDataObject)obj).getDataObject();
+                        
+                        if (decoded == null)
+                                return null;
+                        
+                        decoded.setName(obj.getName());
+                        data_vec[i] = obj = decoded;
+                }
+                
+                return obj;
         }
 }
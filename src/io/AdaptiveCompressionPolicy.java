@@ -0,0 +1,97 @@
+package io;
+
+import io.compression.CodecPool;
+
+import java.util.zip.Deflater;
+
+import abstractTypes.AbstractArrayElement;
+
+/**
+ * CompressionPolicy based on the size of an element and on a compressibility
+ * estimate, which is obtained by deflating a sample of the element with
+ * Deflater.BEST_SPEED:
+ * 
+ * - elements smaller than minSize are stored, since the zlib header and the
+ *   miCOMPRESSED tag outweigh any saving,
+ * - elements whose sample does not shrink below maxRatio of its size (e.g.
+ *   noise) are stored, since deflating them wastes CPU and may even grow
+ *   the file,
+ * - elements of at least fastSize bytes are deflated with Deflater.BEST_SPEED,
+ *   all others with the level set on the writer.
+ * 
+ * The compFlag of the elements is ignored.
+ */
+public class AdaptiveCompressionPolicy implements CompressionPolicy
+{
+        private static final int SAMPLESIZE = 64*1024;
+        
+        private int    minSize;
+        private double maxRatio;
+        private long   fastSize;
+        
+        /**
+         * Stores elements smaller than 256 bytes and elements, whose sample
+         * does not shrink below 90 %
+         */
+        public AdaptiveCompressionPolicy()
+        {
+                this(256, 0.9, Long.MAX_VALUE);
+        }
+        
+        /**
+         * @param minSize   elements smaller than this (in bytes) are stored
+         * @param maxRatio  elements are stored, if the deflated sample is larger
+         *                  than maxRatio times the sample size
+         * @param fastSize  elements of at least this size (in bytes) are
+         *                  deflated with Deflater.BEST_SPEED
+         */
+        public AdaptiveCompressionPolicy(int minSize, double maxRatio, long fastSize)
+        {
+                if ( minSize < 0 || maxRatio < 0 || fastSize < 0 )
+                        throw new IllegalArgumentException("AdaptiveCompressionPolicy: Negative threshold");
+                
+                this.minSize  = minSize;
+                this.maxRatio = maxRatio;
+                this.fastSize = fastSize;
+        }
+        
+        public int getSampleSize()
+        {
+                return SAMPLESIZE;
+        }
+        
+        public int getCompressionLevel(AbstractArrayElement array, long size, byte[] sample, int level)
+        {
+                if ( size < minSize )
+                        return STORED;
+                
+                if ( sample.length > 0 && estimateRatio(sample) > maxRatio )
+                        return STORED;
+                
+                return (size >= fastSize) ? Deflater.BEST_SPEED : level;
+        }
+        
+        /**
+         * Returns the size of the deflated sample relative to the size of the sample
+         */
+        public static double estimateRatio(byte[] sample)
+        {
+                Deflater deflater = CodecPool.borrowDeflater(Deflater.BEST_SPEED, Deflater.DEFAULT_STRATEGY);
+                
+                try {
+                        byte[] buf = new byte[Math.min(sample.length + 64, 8192)];
+                        long   n   = 0;
+                        
+                        deflater.setInput(sample);
+                        deflater.finish();
+                        
+                        while ( !deflater.finished() )
+                                n += deflater.deflate(buf);
+                        
+                        return (double)n / sample.length;
+                }
+                finally {
+                        CodecPool.release(deflater);
+                }
+        }
+}
@@ -0,0 +1,39 @@
+package io;
+
+import abstractTypes.AbstractArrayElement;
+
+/**
+ * Decides per variable whether MxFileWriter stores an element as it is or
+ * as miCOMPRESSED element, and at which Deflater level
+ * (see MxFileWriter.setCompressionPolicy). Without a policy the compFlag
+ * of the element decides.
+ */
+public interface CompressionPolicy
+{
+        /**
+         * Returned by getCompressionLevel() for elements stored uncompressed
+         */
+        int STORED = Integer.MIN_VALUE;
+        
+        /**
+         * Returns the maximum number of leading bytes of an element passed
+         * as sample to getCompressionLevel(); 0, if the policy does not
+         * look at the data.
+         */
+        int getSampleSize();
+        
+        /**
+         * Decides how an element is written.
+         * 
+         * @param array   the element; isCompressed() tells, whether compression
+         *                was requested by its compFlag
+         * @param size    size of the uncompressed element in bytes, tag included
+         * @param sample  the first bytes of the uncompressed element as they would
+         *                be written (at most getSampleSize() bytes)
+         * @param level   the compression level set on the writer
+         * @return STORED or the Deflater level, i.e. Deflater.DEFAULT_COMPRESSION
+         *         or a level between Deflater.NO_COMPRESSION (0) and
+         *         Deflater.BEST_COMPRESSION (9)
+         */
+        int getCompressionLevel(AbstractArrayElement array, long size, byte[] sample, int level);
+}
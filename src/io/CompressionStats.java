@@ -0,0 +1,94 @@
+package io;
+
+/**
+ * Counts the decisions of MxFileWriter between stored and compressed
+ * elements (see MxFileWriter.getCompressionStats). Sizes are in bytes,
+ * tags included.
+ */
+public class CompressionStats
+{
+        private long storedElements;
+        private long storedBytes;
+        private long compressedElements;
+        private long uncompressedBytes;  // size of the compressed elements before compression
+        private long compressedBytes;    // size of the compressed elements as written
+        
+        synchronized void addStored(long size)
+        {
+                storedElements++;
+                storedBytes += size;
+        }
+        
+        synchronized void addCompressed(long size, long written)
+        {
+                compressedElements++;
+                uncompressedBytes += size;
+                compressedBytes   += written;
+        }
+        
+        /**
+         * Returns the number of elements written without compression
+         */
+        public synchronized long getStoredElements()
+        {
+                return storedElements;
+        }
+        
+        /**
+         * Returns the size of the elements written without compression
+         */
+        public synchronized long getStoredBytes()
+        {
+                return storedBytes;
+        }
+        
+        /**
+         * Returns the number of elements written as miCOMPRESSED element
+         */
+        public synchronized long getCompressedElements()
+        {
+                return compressedElements;
+        }
+        
+        /**
+         * Returns the size of the compressed elements before compression
+         */
+        public synchronized long getUncompressedBytes()
+        {
+                return uncompressedBytes;
+        }
+        
+        /**
+         * Returns the size of the compressed elements as written
+         */
+        public synchronized long getCompressedBytes()
+        {
+                return compressedBytes;
+        }
+        
+        /**
+         * Returns the written size of the compressed elements relative to
+         * their uncompressed size (1, if no element has been compressed)
+         */
+        public synchronized double getCompressionRatio()
+        {
+                return (uncompressedBytes == 0) ? 1 : (double)compressedBytes / uncompressedBytes;
+        }
+        
+        public synchronized void reset()
+        {
+                storedElements     = 0;
+                storedBytes        = 0;
+                compressedElements = 0;
+                uncompressedBytes  = 0;
+                compressedBytes    = 0;
+        }
+        
+        @Override
+        public synchronized String toString()
+        {
+                return "stored: "       + storedElements     + " elements, " + storedBytes + " bytes; " +
+                       "compressed: "   + compressedElements + " elements, " +
+                       uncompressedBytes + " -> " + compressedBytes + " bytes";
+        }
+}
@@ -0,0 +1,182 @@
+package io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Implements an InputStream based on positional reads of a FileChannel.
+ * The stream keeps its own read position, i.e. it does not use (nor change)
+ * the position of the channel. Several streams on the same channel can
+ * therefore be used concurrently from different threads.
+ *
+ * Note: interrupting a thread blocked in a read closes the channel
+ * (see java.nio.channels.InterruptibleChannel).
+ */
+public class FileChannelInputStream extends InputStream
+{
+        private static final int BUFFER_SIZE = 8192;
+        
+        private FileChannel channel;
+        private ByteBuffer  buffer;     // bytes read ahead, starting at 'position'
+        private long        position;   // absolute position of the next byte to read
+        private long        readlimit;  // remaining bytes allowed to read
+        private long        markpos;
+        private long        marklimit;
+        
+        /**
+         * @param channel   the channel to read from
+         * @param position  the file position of the first byte to read
+         * @param limit     the maximum number of bytes to read from the stream
+         */
+        public FileChannelInputStream(FileChannel channel, long position, long limit) throws IOException
+        {
+                this.channel   = channel;
+                this.buffer    = ByteBuffer.allocate(BUFFER_SIZE);
+                this.position  = position;
+                this.readlimit = Math.max(0,Math.min(limit, channel.size()-position));
+                this.markpos   = position;
+                this.marklimit = readlimit;
+                
+                buffer.limit(0);
+        }
+        
+        public FileChannelInputStream(FileChannel channel, long position) throws IOException
+        {
+                this(channel, position, Long.MAX_VALUE);
+        }
+        
+        /**
+         * Returns the absolute file position of the next byte to read
+         */
+        public long getPosition()
+        {
+                return position;
+        }
+        
+        /**
+         * Reads ahead the next bytes (at most up to the read limit) into the buffer.
+         * @return false, if no more bytes are available
+         */
+        private boolean fill() throws IOException
+        {
+                buffer.clear();
+                buffer.limit((int)Math.min(buffer.capacity(), readlimit));
+                
+                int n = 0;
+                while ( n == 0 && buffer.hasRemaining() )
+                        n = channel.read(buffer, position);
+                
+                buffer.flip();
+                
+                return n > 0;
+        }
+        
+        @Override
+        public int read() throws IOException
+        {
+                if ( readlimit <= 0 )
+                        return -1;
+                
+                if ( !buffer.hasRemaining() && !fill() )
+                        return -1;
+                
+                position++;
+                readlimit--;
+                
+                return buffer.get() & 0xFF;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+                if ( len == 0 )
+                        return 0;
+                
+                if ( readlimit <= 0 )
+                        return -1;
+                
+                len = (int)Math.min(len, readlimit);
+                
+                int n;
+                
+                if ( buffer.hasRemaining() )
+                {
+                        n = Math.min(len, buffer.remaining());
+                        buffer.get(b, off, n);
+                }
+                else if ( len >= BUFFER_SIZE )
+                {
+                        // Large reads go directly into the destination array
+                        n = channel.read(ByteBuffer.wrap(b, off, len), position);
+                        if ( n < 0 )
+                                return -1;
+                }
+                else
+                {
+                        if ( !fill() )
+                                return -1;
+                        n = Math.min(len, buffer.remaining());
+                        buffer.get(b, off, n);
+                }
+                
+                position  += n;
+                readlimit -= n;
+                
+                return n;
+        }
+        
+        @Override
+        public long skip(long n) throws IOException
+        {
+                if ( n <= 0 )
+                        return 0;
+                
+                long k = Math.min(n, readlimit);
+                
+                if ( k <= buffer.remaining() )
+                        buffer.position(buffer.position() + (int)k);
+                else
+                        buffer.limit(0);
+                
+                position  += k;
+                readlimit -= k;
+                
+                return k;
+        }
+        
+        @Override
+        public int available() throws IOException
+        {
+                return (int)Math.min(readlimit, Integer.MAX_VALUE);
+        }
+        
+        /**
+         * Set the current marked position in the stream.
+         * A mark has no restriction on how many read operations can be performed
+         * before the mark gets invalidated. The <code>dummy</code> input argument
+         * for this method has no meaning.
+         */
+        @Override
+        public synchronized void mark(int dummy)
+        {
+                markpos   = position;
+                marklimit = readlimit;
+        }
+        
+        @Override
+        public synchronized void reset() throws IOException
+        {
+                position  = markpos;
+                readlimit = marklimit;
+                
+                buffer.limit(0);
+        }
+        
+        @Override
+        public boolean markSupported()
+        {
+                return true;
+        }
+}
@@ -0,0 +1,100 @@
+package io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only memory mapping of a whole file.
+ * A single MappedByteBuffer can address at most 2 GB, therefore the file
+ * is mapped in consecutive chunks of (at most) <code>chunkSize</code> bytes.
+ * Data elements may well span the border between two chunks; this is
+ * hidden by the streams returned by newInputStream(long, long).
+ *
+ * |------------|------------|------------|-------|
+ * |  chunk 0   |  chunk 1   |  chunk 2   |  ...  |   file
+ * |------------|------------|------------|-------|
+ */
+public class MappedFile
+{
+        /**
+         * Default size of a mapped chunk (1 GB)
+         */
+        public static final int DEFAULT_CHUNK_SIZE = 1 << 30;
+        
+        private MappedByteBuffer[] chunks;
+        private int                chunkSize;
+        private long               length;
+        
+        public MappedFile(FileChannel channel) throws IOException
+        {
+                this(channel,DEFAULT_CHUNK_SIZE);
+        }
+        
+        /**
+         * Maps the complete content of a file channel read-only into memory.
+         *
+         * @param channel    the channel of the file to be mapped
+         * @param chunkSize  the maximum number of bytes mapped by a single buffer
+         * @throws IOException if the mapping fails
+         */
+        public MappedFile(FileChannel channel, int chunkSize) throws IOException
+        {
+                this.chunkSize = chunkSize;
+                this.length    = channel.size();
+                
+                int nChunks = (int)((length + chunkSize - 1) / chunkSize);
+                
+                chunks = new MappedByteBuffer[nChunks];
+                
+                for ( int k = 0; k < nChunks; k++ )
+                {
+                        long offset = (long)k * chunkSize;
+                        long size   = Math.min(chunkSize, length - offset);
+                        chunks[k] = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+                }
+        }
+        
+        /**
+         * Returns the number of bytes of the mapped file
+         */
+        public long length()
+        {
+                return length;
+        }
+        
+        /**
+         * Returns a stream reading the mapped file from a given position on.
+         * Streams have their own read position, i.e. several streams
+         * on the same MappedFile do not interfere with each other.
+         *
+         * @param position  the file position of the first byte to read
+         * @param limit     the maximum number of bytes to read from the stream
+         * @return an InputStream on the mapped file content
+         */
+        public MappedFileInputStream newInputStream(long position, long limit)
+        {
+                return new MappedFileInputStream(this,position,limit);
+        }
+        
+        public MappedFileInputStream newInputStream(long position)
+        {
+                return newInputStream(position, length-position);
+        }
+        
+        int getChunkSize()
+        {
+                return chunkSize;
+        }
+        
+        /**
+         * Returns an independent view of a chunk of the mapped file.
+         * The view shares content with the mapping, but has its own
+         * position and limit.
+         */
+        ByteBuffer getChunk(int index)
+        {
+                return chunks[index].duplicate();
+        }
+}
@@ -0,0 +1,190 @@
+package io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Implements an InputStream based on a memory mapped file (see MappedFile).
+ * Bytes are taken directly from the mapped buffers, i.e. reading does not
+ * involve any system call.
+ */
+public class MappedFileInputStream extends InputStream
+{
+        private MappedFile  file;
+        private ByteBuffer  chunk;      // view of the chunk containing 'position'
+        private int         chunkIndex;
+        private long        position;   // absolute position in the file
+        private long        readlimit;  // remaining bytes allowed to read
+        private long        markpos;
+        private long        marklimit;
+        
+        MappedFileInputStream(MappedFile file, long position, long limit)
+        {
+                this.file       = file;
+                this.chunk      = null;
+                this.chunkIndex = -1;
+                this.position   = position;
+                this.readlimit  = Math.max(0,Math.min(limit, file.length()-position));
+                this.markpos    = position;
+                this.marklimit  = readlimit;
+        }
+        
+        /**
+         * Returns the absolute file position of the next byte to read
+         */
+        public long getPosition()
+        {
+                return position;
+        }
+        
+        /**
+         * Makes sure 'chunk' is positioned at the current file position
+         * and has at least one byte remaining.
+         */
+        private void locate()
+        {
+                int index = (int)(position / file.getChunkSize());
+                
+                if ( chunk == null || index != chunkIndex )
+                {
+                        chunk      = file.getChunk(index);
+                        chunkIndex = index;
+                }
+                
+                chunk.position((int)(position - (long)index * file.getChunkSize()));
+        }
+        
+        @Override
+        public int read() throws IOException
+        {
+                if ( readlimit <= 0 )
+                        return -1;
+                
+                if ( chunk == null || !chunk.hasRemaining() )
+                        locate();
+                
+                int i = chunk.get() & 0xFF;
+                
+                position++;
+                readlimit--;
+                
+                return i;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+                if ( len == 0 )
+                        return 0;
+                
+                if ( readlimit <= 0 )
+                        return -1;
+                
+                int n = (int)Math.min(len, readlimit);
+                int remaining = n;
+                
+                while ( remaining > 0 )
+                {
+                        if ( chunk == null || !chunk.hasRemaining() )
+                                locate();
+                        
+                        int k = Math.min(remaining, chunk.remaining());
+                        chunk.get(b, off, k);
+                        
+                        off       += k;
+                        remaining -= k;
+                        position  += k;
+                }
+                
+                readlimit -= n;
+                
+                return n;
+        }
+        
+        /**
+         * Returns the next <code>len</code> bytes as a view of the mapping,
+         * i.e. without copying them, and advances the stream behind them.
+         * @return the view (position 0, limit len) or null, if there are less
+         *         than <code>len</code> bytes left or the bytes span two
+         *         mapped chunks; the stream is not advanced in this case
+         */
+        public ByteBuffer slice(int len)
+        {
+                if ( len > readlimit )
+                        return null;
+                
+                long offset = position % file.getChunkSize();
+                
+                if ( offset + len > file.getChunkSize() )
+                        return null;
+                
+                if ( len > 0 )
+                        locate();
+                
+                if ( chunk == null )
+                        return ByteBuffer.allocate(0);
+                
+                ByteBuffer view = chunk.slice();
+                view.limit(len);
+                
+                chunk.position(chunk.position() + len);
+                
+                position  += len;
+                readlimit -= len;
+                
+                return view;
+        }
+        
+        @Override
+        public long skip(long n) throws IOException
+        {
+                if ( n <= 0 )
+                        return 0;
+                
+                long k = Math.min(n, readlimit);
+                
+                position  += k;
+                readlimit -= k;
+                
+                if ( chunk != null && readlimit > 0 )
+                        locate();
+                
+                return k;
+        }
+        
+        @Override
+        public int available() throws IOException
+        {
+                return (int)Math.min(readlimit, Integer.MAX_VALUE);
+        }
+        
+        /**
+         * Set the current marked position in the stream.
+         * A mark has no restriction on how many read operations can be performed
+         * before the mark gets invalidated. The <code>dummy</code> input argument
+         * for this method has no meaning.
+         */
+        @Override
+        public synchronized void mark(int dummy)
+        {
+                markpos   = position;
+                marklimit = readlimit;
+        }
+        
+        @Override
+        public synchronized void reset() throws IOException
+        {
+                position  = markpos;
+                readlimit = marklimit;
+                
+                if ( chunk != null && readlimit > 0 )
+                        locate();
+        }
+        
+        @Override
+        public boolean markSupported()
+        {
+                return true;
+        }
+}
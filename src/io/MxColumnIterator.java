@@ -0,0 +1,199 @@
+package io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.DoubleBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+
+import subelements.numeric.NumericPartReader;
+
+/**
+ * Iterates over the columns of a numeric variable in batches of a fixed
+ * number of columns (see MxFileReader.getColumnIterator). The columns are
+ * decoded on the fly from the file, i.e. from the uncompressed data or
+ * through the inflater for compressed variables, so memory use is one
+ * batch regardless of the size of the matrix.
+ *
+ * A batch holds the real parts of its columns in column-major order,
+ * converted to double. For arrays with more than two dimensions, all
+ * dimensions behind the first are taken as columns. The MxFileReader
+ * must not be closed while iterating.
+ *
+ * The iterator closes its stream after the last batch. A caller stopping
+ * earlier (break, a short-circuiting stream operation, an exception) must
+ * call close(), otherwise the stream and, for compressed variables, the
+ * pooled Inflater are not released.
+ */
+public class MxColumnIterator implements Iterator<double[]>, Closeable
+{
+        private MyDataInputStream in;
+        private NumericPartReader part;
+        private int               rows;
+        private int               cols;
+        private int               batchColumns;
+        private int               nextColumn;
+        private double[]          buffer; // reused by nextBuffer()
+        
+        /*
+         * Called by MxFileReader.getColumnIterator with a stream positioned
+         * at the data items of the real part
+         */
+        MxColumnIterator(MyDataInputStream in, NumericPartReader part, int rows, int cols, int batchColumns)
+        {
+                this.in           = in;
+                this.part         = part;
+                this.rows         = rows;
+                this.cols         = (rows == 0) ? 0 : cols;
+                this.batchColumns = batchColumns;
+                this.nextColumn   = 0;
+                this.buffer       = null;
+                
+                if ( this.cols == 0 )
+                {
+                        try {
+                                in.close();
+                        }
+                        catch (IOException e) {
+                                e.printStackTrace();
+                        }
+                }
+        }
+        
+        /**
+         * Returns the number of rows, i.e. the length of each column
+         */
+        public int getRows()
+        {
+                return rows;
+        }
+        
+        /**
+         * Returns the number of columns of the variable
+         */
+        public int getColumns()
+        {
+                return cols;
+        }
+        
+        /**
+         * Returns the number of columns per batch (the last batch may have less)
+         */
+        public int getBatchColumns()
+        {
+                return batchColumns;
+        }
+        
+        /**
+         * Returns the index of the first column of the next batch
+         */
+        public int getColumnIndex()
+        {
+                return nextColumn;
+        }
+        
+        public boolean hasNext()
+        {
+                return nextColumn < cols;
+        }
+        
+        /**
+         * Returns the next batch of columns as new array
+         * @throws UncheckedIOException if reading the file fails
+         */
+        public double[] next()
+        {
+                if ( !hasNext() )
+                        throw new NoSuchElementException();
+                
+                double[] batch = new double[nextBatchLength()];
+                
+                readBatch(batch);
+                
+                return batch;
+        }
+        
+        /**
+         * Returns the next batch of columns as view of an array owned by the
+         * iterator. The array is overwritten by the next call, i.e. iterating
+         * this way does not allocate memory per batch.
+         * @throws UncheckedIOException if reading the file fails
+         */
+        public DoubleBuffer nextBuffer()
+        {
+                if ( !hasNext() )
+                        throw new NoSuchElementException();
+                
+                int len = nextBatchLength();
+                
+                if ( buffer == null )
+                        buffer = new double[len];
+                
+                readBatch(buffer);
+                
+                return DoubleBuffer.wrap(buffer, 0, len).slice();
+        }
+        
+        /**
+         * Returns a sequential spliterator over the remaining batches
+         * (e.g. for StreamSupport.stream(...))
+         */
+        public Spliterator<double[]> spliterator()
+        {
+                long nBatches = ((long)cols - nextColumn + batchColumns - 1) / batchColumns;
+                
+                return Spliterators.spliterator(this, nBatches,
+                                Spliterator.ORDERED | Spliterator.NONNULL);
+        }
+        
+        public void remove()
+        {
+                throw new UnsupportedOperationException();
+        }
+        
+        public void close() throws IOException
+        {
+                nextColumn = cols;
+                in.close();
+        }
+        
+        private int nextBatchLength()
+        {
+                return rows * Math.min(batchColumns, cols - nextColumn);
+        }
+        
+        private void readBatch(double[] batch)
+        {
+                int len = nextBatchLength();
+                
+                try {
+                        for ( int off = 0; off < len; )
+                        {
+                                int n = part.readDoubles(batch, off, len - off);
+                                
+                                if ( n < 0 )
+                                        throw new IOException("Unexpected end of numeric data");
+                                
+                                off += n;
+                        }
+                }
+                catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                }
+                
+                nextColumn += len / rows;
+                
+                if ( nextColumn == cols )
+                {
+                        try {
+                                in.close();
+                        }
+                        catch (IOException e) {
+                                e.printStackTrace();
+                        }
+                }
+        }
+}
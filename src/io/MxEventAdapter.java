@@ -0,0 +1,54 @@
+package io;
+
+import java.nio.ByteBuffer;
+
+import common.DataType;
+import common.MxDataObject;
+
+/**
+ * MxEventHandler with empty methods, to be extended by handlers interested
+ * in some of the events only. startArray() accepts all arrays.
+ */
+public class MxEventAdapter implements MxEventHandler
+{
+        public boolean startArray(MxDataObject header)
+        {
+                return true;
+        }
+        
+        public void numericChunk(ByteBuffer data, DataType type, boolean imaginary)
+        {
+        }
+        
+        public void sparseIndices(int[] ir, int[] jc)
+        {
+        }
+        
+        public void characters(String s)
+        {
+        }
+        
+        public void startCell(int index)
+        {
+        }
+        
+        public void endCell(int index)
+        {
+        }
+        
+        public void startStruct(String[] fieldNames)
+        {
+        }
+        
+        public void field(String name)
+        {
+        }
+        
+        public void endStruct()
+        {
+        }
+        
+        public void endArray()
+        {
+        }
+}
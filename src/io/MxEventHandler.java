@@ -0,0 +1,89 @@
+package io;
+
+import java.nio.ByteBuffer;
+
+import common.DataType;
+import common.MxDataObject;
+
+/**
+ * Receives the content of a .mat file as a sequence of events, in the
+ * order the data is stored in the file (see MxFileReader.parse). No
+ * MxDataObject tree is built; the handler decides what to keep.
+ *
+ * Every array causes the events
+ * <pre>
+ *   startArray
+ *     numericChunk ...                       (numeric and sparse arrays;
+ *     numericChunk(..., imaginary=true) ...   imaginary part if complex)
+ *     sparseIndices                          (sparse arrays, before the data)
+ *     characters                             (char arrays)
+ *     startCell(0) ... endCell(0) ...        (cell arrays, one array per cell)
+ *     startStruct, field ... endStruct       (structs, one array per field)
+ *   endArray
+ * </pre>
+ * Buffers and objects passed to the handler are only valid during the call;
+ * they are reused or overwritten afterwards.
+ */
+public interface MxEventHandler
+{
+        /**
+         * Called at the beginning of an array (a variable, a cell or a field)
+         * @param header  flags, class, dimensions and name of the array
+         * @return false to skip the content of the array; no further events
+         *         (including endArray) are sent for it then
+         */
+        boolean startArray(MxDataObject header);
+        
+        /**
+         * Passes data items of the real or imaginary part of a numeric or
+         * sparse array. A part may be passed in several chunks; every chunk
+         * holds complete data items.
+         * @param data       the data items from position to limit, in the
+         *                   byte order of the buffer (the one of the file)
+         * @param type       the data type the items are stored in
+         * @param imaginary  true for data of the imaginary part
+         */
+        void numericChunk(ByteBuffer data, DataType type, boolean imaginary);
+        
+        /**
+         * Passes the row indices and the column offsets (CSC form)
+         * of a sparse array
+         */
+        void sparseIndices(int[] ir, int[] jc);
+        
+        /**
+         * Passes the content of a char array (in column-major order)
+         */
+        void characters(String s);
+        
+        /**
+         * Called before the array of the cell with the given linear index
+         */
+        void startCell(int index);
+        
+        /**
+         * Called after the array of the cell with the given linear index
+         */
+        void endCell(int index);
+        
+        /**
+         * Called at the beginning of the fields of a struct
+         * @param fieldNames  the names of the fields in the order of their arrays
+         */
+        void startStruct(String[] fieldNames);
+        
+        /**
+         * Called before the array of a field
+         */
+        void field(String name);
+        
+        /**
+         * Called after the last field of a struct
+         */
+        void endStruct();
+        
+        /**
+         * Called at the end of an array
+         */
+        void endArray();
+}
@@ -3,17 +3,37 @@ package io;
 import io.compression.StreamDecompressor;
 
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 import common.DataTagFieldReader;
 import common.DataType;
+import common.LazyMxDataObject;
+import common.MxClassID;
 import common.MxFileHeader;
 import common.MxDataObject;
 import common.MxCellDataObject;
@@ -27,6 +47,7 @@ import subelements.common.ArrayFlagsSubelement;
 import subelements.common.ArrayNameSubelement;
 import subelements.common.DimensionsArraySubelement;
 import subelements.numeric.CharacterPartSubelement;
+import subelements.numeric.NumericPartReader;
 import subelements.numeric.NumericPartSubelement;
 import subelements.sparse.ColumnIndexSubelement;
 import subelements.sparse.RowIndexSubelement;
@@ -47,7 +68,54 @@ public class MxFileReader implements Closeable
         
         private Hashtable<String,MatElementInfo>  indexTable;
         
+        /*
+         * Memory mapping of the file; null if the file is read through
+         * the RandomAccessFile only
+         */
+        private MappedFile mappedFile = null;
+        
+        /*
+         * If true, uncompressed numeric data of a memory mapped file is
+         * not copied, but returned as BufferArray (view of the mapping)
+         */
+        private volatile boolean zeroCopy = false;
+        
+        private volatile boolean lazyFields = false;
+        
+        // Fields of structs up to this size (bytes) are always decoded right away
+        private static final int LAZYFIELDLENGTH = 256;
+        
+        // Numeric data is passed to MxEventHandlers in chunks of this size (bytes)
+        private static final int EVENTCHUNKLENGTH = 65536;
+        
         public MxFileReader(String filename)
+        {
+                this(filename,false);
+        }
+        
+        /**
+         * Opens a .mat file for reading.
+         * @param filename      name of the file to read
+         * @param memoryMapped  if true, the file is mapped into memory and all
+         *                      data elements are decoded directly from the mapping
+         *                      instead of reading the file byte by byte
+         */
+        public MxFileReader(String filename, boolean memoryMapped)
+        {
+                this(filename,memoryMapped,false);
+        }
+        
+        /**
+         * Opens a .mat file for reading.
+         * @param filename      name of the file to read
+         * @param memoryMapped  if true, the file is mapped into memory (see
+         *                      MxFileReader(String,boolean))
+         * @param useIndexFile  if true, the index of variables is taken from the
+         *                      sidecar file &lt;filename&gt;.idx, provided it is
+         *                      up to date; otherwise the file is scanned and
+         *                      the sidecar file is (re-)written
+         */
+        public MxFileReader(String filename, boolean memoryMapped, boolean useIndexFile)
         {
                 File file = new File(filename);
                 
@@ -59,6 +127,9 @@ public class MxFileReader implements Closeable
                 }
                 
                 try {
+                        if ( memoryMapped )
+                                mappedFile = new MappedFile(rfile.getChannel());
+                        
                         byte[] header = getHeader();
                         
                         int err_code = MxFileHeader.checkHeader(header);
@@ -96,7 +167,16 @@ public class MxFileReader implements Closeable
                                 byte_order = ByteOrder.LITTLE_ENDIAN;
                         }
                         
-                        indexTable = createIndexTable();
+                        if ( useIndexFile )
+                                indexTable = MxIndexFile.read(file);
+                        
+                        if ( indexTable == null )
+                        {
+                                indexTable = createIndexTable();
+                                
+                                if ( useIndexFile && indexTable != null )
+                                        MxIndexFile.write(file,indexTable);
+                        }
                         
                         if ( indexTable == null )
                         {
@@ -109,21 +189,62 @@ public class MxFileReader implements Closeable
                 }
         }
         
+        /**
+         * Enables or disables zero-copy reading of numeric data.
+         * If enabled and the file is memory mapped (see MxFileReader(String,boolean)),
+         * the real and imaginary parts of uncompressed numeric and sparse
+         * variables are returned as subelements.base.BufferArray, i.e. as views
+         * of the mapping in the data type and byte order of the file, instead
+         * of being copied into Java arrays. Compressed variables and files read
+         * without mapping are not affected.
+         * The views stay valid after the MxFileReader has been closed.
+         */
+        public void setZeroCopy(boolean zeroCopy)
+        {
+                this.zeroCopy = zeroCopy;
+        }
+        
+        public boolean isZeroCopy()
+        {
+                return zeroCopy;
+        }
+        
+        /**
+         * Enables or disables lazy decoding of struct fields.
+         * If enabled, the fields of structs are not decoded along with the
+         * struct. Reading a struct then only scans the tags of its fields
+         * and records their positions; a field is decoded when it is
+         * accessed by MxStructDataObject.getField(String) (or getAllFields()).
+         * Small fields are decoded right away. For compressed variables the
+         * data is inflated again up to the field on access.
+         * The fields can only be decoded as long as the MxFileReader is not closed.
+         */
+        public void setLazyFields(boolean lazyFields)
+        {
+                this.lazyFields = lazyFields;
+        }
+        
+        public boolean isLazyFields()
+        {
+                return lazyFields;
+        }
+        
         public void close() throws IOException
         {
+                mappedFile = null;
                 rfile.close();
         }
         
         public byte[] readEntireFile() throws IOException
         {
+                if ( rfile.length() > Integer.MAX_VALUE - 8 )
+                        throw new IOException("File too large for a byte array");
+                
                 int len = (int)rfile.length();
                 
                 byte[] b = new byte[len];
                 
-                long cur_position = rfile.getFilePointer();
-                rfile.seek(0L);
-                rfile.read(b);
-                rfile.seek(cur_position);
+                new MyDataInputStream(openInputStream(0L),byte_order).readFully(b);
                 
                 return b;
         }
@@ -137,6 +258,14 @@ public class MxFileReader implements Closeable
                 return a;
         }
         
+        /**
+         * Decodes a variable of the file. Every call reads the file through
+         * a stream of its own, i.e. getVariable() may be called concurrently
+         * from several threads.
+         * 
+         * @param varName  name of the variable
+         * @return the decoded variable or null, if it cannot be found or decoded
+         */
         public MxDataObject getVariable(String varName)
         {
                 MatElementInfo i = indexTable.get(varName);
@@ -147,202 +276,1102 @@ public class MxFileReader implements Closeable
                         return null;
                 }
                 
-                int pos = i.position;
+                long pos = i.position;
+                
+                InputStream is;
                 try {
-                        rfile.seek(pos);
+                        is = openInputStream(pos);
                 }
                 catch (IOException e) {
                         e.printStackTrace();
                         return null;
                 }
                 
-                InputStream is = new RandomAccessFileInputStream(rfile);
-                
-                MxDataObject obj = evalArray(is);
+                MxDataObject obj = evalArray(is, new DecodeContext());
                 
                 return obj;
         }
         
-        private byte[] getHeader() throws IOException
+        /**
+         * Returns a variable, either decoded or as lazy handle.
+         * A lazy handle (LazyMxDataObject) provides flags, class, dimensions
+         * and name from the index of the file; the data is decoded on first
+         * access only. The data of a lazy handle can only be decoded as long
+         * as the MxFileReader is not closed.
+         * 
+         * @param varName  name of the variable
+         * @param lazy     if true, a LazyMxDataObject is returned
+         */
+        public MxDataObject getVariable(final String varName, boolean lazy)
         {
-                byte[] header = new byte[128];
-                long cur_position = rfile.getFilePointer();
-                rfile.seek(0L);
-                rfile.read(header);
-                rfile.seek(cur_position);
-                return header;
+                if ( lazy == false )
+                        return getVariable(varName);
+                
+                MatElementInfo i = indexTable.get(varName);
+                
+                if ( i == null )
+                {
+                        System.err.println("MxFileReader::getVariable: Cannot find variable.");
+                        return null;
+                }
+                
+                LazyMxDataObject.Loader loader = new LazyMxDataObject.Loader()
+                {
+                        public MxDataObject load()
+                        {
+                                return getVariable(varName);
+                        }
+                };
+                
+                return new LazyMxDataObject(i,loader);
         }
         
-        private Hashtable<String, MatElementInfo> createIndexTable() throws IOException
+        /**
+         * Decodes a block (hyperslab) of a numeric variable only.
+         * The block consists of the elements with indices
+         * start[d] + k*stride[d], k = 0 ... count[d]-1 in every dimension d,
+         * e.g. start = {0,10}, count = {rows,5}, stride = {1,1} selects the
+         * columns 10 ... 14 of a matrix. Data items outside the block are not
+         * read from uncompressed variables and are inflated, but not decoded,
+         * for compressed variables.
+         * 
+         * @param varName  name of the variable (a non-sparse numeric variable)
+         * @param start    the index of the first element of the block per dimension
+         * @param count    the number of elements of the block per dimension
+         * @param stride   the distance of elements of the block per dimension;
+         *                 null selects neighbouring elements
+         * @return the block with dimensions <code>count</code> or null, if the
+         *         variable cannot be found, is not numeric or cannot be decoded
+         * @throws IllegalArgumentException if the block does not lie within the variable
+         */
+        public MxNumericDataObject getVariable(String varName, int[] start, int[] count, int[] stride)
         {
-                Hashtable<String,MatElementInfo> table = new Hashtable<String,MatElementInfo>();
+                MatElementInfo i = indexTable.get(varName);
+                
+                if ( i == null )
+                {
+                        System.err.println("MxFileReader::getVariable: Cannot find variable.");
+                        return null;
+                }
                 
-                rfile.seek(128); // position file pointer behind header
+                if ( i.isSparse() || !isNumericClass(i.getClassID()) )
+                {
+                        System.err.println("MxFileReader::getVariable: Variable " + varName + " is not numeric.");
+                        return null;
+                }
                 
-                while (true)
+                int[] dims = i.getDimensions();
+                
+                if ( stride == null )
                 {
-                        long curPos = rfile.getFilePointer();
+                        stride = new int[dims.length];
+                        Arrays.fill(stride, 1);
+                }
+                
+                checkBlock(dims, start, count, stride);
+                
+                try {
+                        MyDataInputStream mi = openNumericData(i);
                         
-                        byte[] tag = new byte[8];
-                        rfile.read(tag);
+                        if ( mi == null )
+                                return null;
                         
-                        DataTagFieldReader tagInfo = new DataTagFieldReader(byte_order);
+                        MxNumericDataObject numDataObject = new MxNumericDataObject(i);
+                        numDataObject.setDimensions(count.clone());
                         
-                        if(tagInfo.read(tag) == false)
-                                return null;
+                        NumericPartSubelement real_part = new NumericPartSubelement().read(mi,dims,start,count,stride);
                         
-                        if(isArrayElement(tagInfo) == false)
+                        if ( real_part == null )
                                 return null;
                         
-                        int elementSize = tagInfo.getElementSize();
-                        
-                        InputStream is = new RandomAccessFileInputStream(rfile,tagInfo.getElementSize());
+                        numDataObject.setRealDataStorageType( real_part.getDataType() );
+                        numDataObject.setRealDataStorage( real_part.getData() );
                         
-                        if (isCompressedElement(tagInfo))
+                        if ( numDataObject.isComplex() )
                         {
-                                is = new StreamDecompressor(is);
+                                NumericPartSubelement imag_part = new NumericPartSubelement().read(mi,dims,start,count,stride);
                                 
-                                // re-read compressed matrix tag
-                                is.read(tag);
-                                
-                                if(tagInfo.read(tag) == false)
-                                {
-                                        is.close();
+                                if ( imag_part == null )
                                         return null;
-                                }
                                 
-                                if(isMatrixElement(tagInfo) == false)
-                                {
-                                        is.close();
-                                        return null;
-                                }
+                                numDataObject.setImagDataStorageType( imag_part.getDataType() );
+                                numDataObject.setImagDataStorage( imag_part.getData() );
                         }
                         
-                        MyDataInputStream mi = new MyDataInputStream(is,byte_order);
+                        mi.close();
                         
-                        ArrayFlagsSubelement      flagField;
-                        DimensionsArraySubelement dimField;
-                        ArrayNameSubelement       nameField;
+                        return numDataObject;
+                }
+                catch (IOException e) {
+                        e.printStackTrace();
+                        return null;
+                }
+                catch (DataTypeException e) {
+                        e.printStackTrace();
+                        return null;
+                }
+        }
+        
+        /**
+         * Decodes the real part of a numeric variable directly into a Java
+         * array of the requested type, i.e. every data item is converted from
+         * the type it is stored in to the requested type in one pass without
+         * intermediate arrays.
+         * 
+         * @param varName  name of the variable (a non-sparse numeric variable)
+         * @param type     float[].class or double[].class
+         * @return the data in column-major order or null, if the variable
+         *         cannot be found, is not numeric or cannot be decoded
+         * @throws IllegalArgumentException if the type is not supported
+         */
+        public <T> T getVariableAs(String varName, Class<T> type)
+        {
+                if ( type != float[].class && type != double[].class )
+                        throw new IllegalArgumentException("Unsupported type " + type.getSimpleName());
+                
+                MatElementInfo i = indexTable.get(varName);
+                
+                if ( i == null )
+                {
+                        System.err.println("MxFileReader::getVariableAs: Cannot find variable.");
+                        return null;
+                }
+                
+                int n = numElements(i.getDimensions());
+                
+                if ( type == float[].class )
+                {
+                        float[] data = new float[n];
                         
-                        try {
-                                flagField = new ArrayFlagsSubelement().read(mi);
-                                dimField  = new DimensionsArraySubelement().read(mi);
-                                nameField = new ArrayNameSubelement().read(mi);
-                        }
-                        catch (DataTypeException e) {
-                                e.printStackTrace();
+                        if ( getVariableInto(varName, FloatBuffer.wrap(data)) < 0 )
                                 return null;
-                        }
-                        
-                        MatElementInfo obj = new MatElementInfo();
                         
-                        obj.setComplex   ( flagField.getComplexFlag() );
-                        obj.setGlobal    ( flagField.getGlobalFlag()  );
-                        obj.setLogical   ( flagField.getLogicalFlag() );
-                        obj.setSparse    ( flagField.getSparseFlag()  );
-                        obj.setClassID   ( flagField.getClassType()   );
-                        obj.setDimensions(  dimField.getDimensions()  );
-                        obj.setName      ( nameField.getName()        );
-                        obj.position    = (int)curPos;
-                        // obj could also include tag information
+                        return type.cast(data);
+                }
+                else
+                {
+                        double[] data = new double[n];
                         
-                        table.put(nameField.getName(), obj);
+                        if ( getVariableInto(varName, DoubleBuffer.wrap(data)) < 0 )
+                                return null;
                         
-                        if ( curPos + elementSize < rfile.length() )
-                                rfile.seek( curPos + elementSize );
-                        else
-                                break;
+                        return type.cast(data);
                 }
-                
-                return table;
         }
         
-        private MxDataObject evalArray(InputStream in)
+        /**
+         * Decodes the real part of a numeric variable directly into a float
+         * buffer (see getVariableAs(String, Class)). The data items are put
+         * in column-major order at the position of the buffer.
+         * 
+         * @param varName  name of the variable (a non-sparse numeric variable)
+         * @param dst      the buffer receiving the data
+         * @return the number of data items or -1, if the variable cannot be
+         *         found, is not numeric or cannot be decoded
+         * @throws BufferOverflowException if dst has not enough space left
+         */
+        public int getVariableInto(String varName, FloatBuffer dst)
         {
-                /*
-                 * Array consists of
-                 * 1) Data element tag
-                 * 2) Flag      sub-element
-                 * 3) Dimension sub-element
-                 * 4) Name      sub-element
-                 * 5) Further array type specific data
-                 */
-                
-                //
-                // Evaluate array tag field
-                //
-                DataTagFieldReader tagInfo = new DataTagFieldReader(byte_order);
+                return getVariableInto(varName, dst, null);
+        }
+        
+        /**
+         * Decodes the real part of a numeric variable directly into a double
+         * buffer (see getVariableInto(String, FloatBuffer)).
+         */
+        public int getVariableInto(String varName, DoubleBuffer dst)
+        {
+                return getVariableInto(varName, null, dst);
+        }
+        
+        private int getVariableInto(String varName, FloatBuffer fdst, DoubleBuffer ddst)
+        {
+                MatElementInfo i = indexTable.get(varName);
                 
-                if ( tagInfo.read(in) == false )
-                        return null;
+                if ( i == null )
+                {
+                        System.err.println("MxFileReader::getVariableInto: Cannot find variable.");
+                        return -1;
+                }
                 
-                if ( isArrayElement(tagInfo) == false )
-                        return null;
+                if ( i.isSparse() || !isNumericClass(i.getClassID()) )
+                {
+                        System.err.println("MxFileReader::getVariableInto: Variable " + varName + " is not numeric.");
+                        return -1;
+                }
                 
-                if ( tagInfo.getDataSize() == 0 )
-                        return new MxEmptyDataObject();
+                if ( numElements(i.getDimensions()) > (fdst != null ? fdst.remaining() : ddst.remaining()) )
+                        throw new BufferOverflowException();
                 
-                if (isCompressedElement(tagInfo))
-                {
-                        in = new StreamDecompressor(in);
+                try {
+                        MyDataInputStream mi = openNumericData(i);
                         
-                        // re-read compressed matrix tag
-                        tagInfo.read(in);
+                        if ( mi == null )
+                                return -1;
                         
-                        if(isMatrixElement(tagInfo) == false)
-                                return null;
+                        int n = (fdst != null) ? NumericPartSubelement.readInto(mi, fdst)
+                                               : NumericPartSubelement.readInto(mi, ddst);
+                        
+                        mi.close();
+                        
+                        return n;
+                }
+                catch (IOException e) {
+                        e.printStackTrace();
+                        return -1;
+                }
+                catch (DataTypeException e) {
+                        e.printStackTrace();
+                        return -1;
+                }
+        }
+        
+        /**
+         * Returns an iterator over the columns of a numeric variable, in
+         * batches of <code>batchColumns</code> columns (see MxColumnIterator).
+         * The columns are decoded while iterating, i.e. only one batch is
+         * held in memory. The MxFileReader must not be closed before the
+         * iteration is finished. The iterator must be closed, if the
+         * iteration is stopped early.
+         * 
+         * @param varName       name of the variable (a non-sparse numeric variable)
+         * @param batchColumns  number of columns per batch
+         * @return the iterator or null, if the variable cannot be found, is
+         *         not numeric or cannot be read
+         */
+        public MxColumnIterator getColumnIterator(String varName, int batchColumns)
+        {
+                MatElementInfo i = indexTable.get(varName);
+                
+                if ( i == null )
+                {
+                        System.err.println("MxFileReader::getColumnIterator: Cannot find variable.");
+                        return null;
                 }
                 
-                MyDataInputStream mi = new MyDataInputStream(in,byte_order);
+                if ( i.isSparse() || !isNumericClass(i.getClassID()) )
+                {
+                        System.err.println("MxFileReader::getColumnIterator: Variable " + varName + " is not numeric.");
+                        return null;
+                }
                 
-                ArrayFlagsSubelement      flagField;
-                DimensionsArraySubelement dimField;
-                ArrayNameSubelement       nameField;
+                int[] dims = i.getDimensions();
+                int   rows = dims[0];
+                int   cols = (rows == 0) ? 0 : numElements(dims) / rows;
+                
+                if ( batchColumns < 1 || (long)rows * batchColumns > Integer.MAX_VALUE - 8 )
+                        throw new IllegalArgumentException("Invalid number of columns per batch: " + batchColumns);
                 
                 try {
-                        flagField = new ArrayFlagsSubelement().read(mi);
-                        dimField  = new DimensionsArraySubelement().read(mi);
-                        nameField = new ArrayNameSubelement().read(mi);
+                        MyDataInputStream mi = openNumericData(i);
+                        
+                        if ( mi == null )
+                                return null;
+                        
+                        NumericPartReader part = new NumericPartReader().read(mi);
+                        
+                        if ( part == null || part.remaining() < (long)rows * cols )
+                        {
+                                System.err.println("MxFileReader::getColumnIterator: Data of variable " + varName + " is incomplete.");
+                                mi.close();
+                                return null;
+                        }
+                        
+                        return new MxColumnIterator(mi, part, rows, cols, batchColumns);
+                }
+                catch (IOException e) {
+                        e.printStackTrace();
+                        return null;
                 }
                 catch (DataTypeException e) {
                         e.printStackTrace();
                         return null;
                 }
+        }
+        
+        /*
+         * Opens a stream on the data of a numeric variable, positioned at
+         * the tag of its real part; null, if the element is not an array
+         */
+        private MyDataInputStream openNumericData(MatElementInfo i) throws IOException, DataTypeException
+        {
+                InputStream in = openInputStream(i.position);
                 
-                MxDataObject dataObject = new MxDataObject();
-                
-                dataObject.setComplex   ( flagField.getComplexFlag() );
-                dataObject.setGlobal    ( flagField.getGlobalFlag()  );
-                dataObject.setLogical   ( flagField.getLogicalFlag() );
-                dataObject.setSparse    ( flagField.getSparseFlag()  );
-                dataObject.setClassID   ( flagField.getClassType()   );
-                dataObject.setDimensions(  dimField.getDimensions()  );
-                dataObject.setName(       nameField.getName()        );
+                boolean opened = false;
                 
-                switch (dataObject.getClassID())
-                {
-                        case mxDOUBLE_CLASS:
+                try {
+                        DataTagFieldReader tagInfo = new DataTagFieldReader(byte_order);
+                        
+                        if ( tagInfo.read(in) == false || isArrayElement(tagInfo) == false )
+                                return null;
+                        
+                        if ( isCompressedElement(tagInfo) )
                         {
-                                MxNumericDataObject numDataObject = new MxNumericDataObject(dataObject);
-                                
-                                NumericPartSubelement real_part = new NumericPartSubelement().read(mi);
+                                in = new StreamDecompressor(in);
                                 
-                                numDataObject.setRealDataStorageType( real_part.getDataType() );
-                                numDataObject.setRealDataStorage( real_part.getData() );
-                                
-                                if ( numDataObject.isComplex() )
-                                {
-                                        NumericPartSubelement imag_part = new NumericPartSubelement().read(mi);
-                                        
-                                        numDataObject.setImagDataStorageType( imag_part.getDataType() );
-                                        numDataObject.setImagDataStorage( imag_part.getData() );
-                                        
-                                        if ( numDataObject.getRealDataStorage().length() != numDataObject.getImagDataStorage().length() )
-                                                return null; // TODO: Better to throw an Exception ???
-                                }
+                                if ( tagInfo.read(in) == false || isMatrixElement(tagInfo) == false )
+                                        return null;
+                        }
+                        
+                        MyDataInputStream mi = new MyDataInputStream(in,byte_order);
+                        
+                        // Flags, dimensions and name are known from the index already
+                        new ArrayFlagsSubelement().read(mi);
+                        new DimensionsArraySubelement().read(mi);
+                        new ArrayNameSubelement().read(mi);
+                        
+                        opened = true;
+                        
+                        return mi;
+                }
+                finally {
+                        // gives the Inflater of a compressed element back
+                        if ( !opened )
+                                in.close();
+                }
+        }
+        
+        private static int numElements(int[] dims)
+        {
+                long n = 1;
+                
+                for ( int d : dims )
+                        n *= d;
+                
+                if ( n > Integer.MAX_VALUE )
+                        throw new IllegalArgumentException("Variable has more than " + Integer.MAX_VALUE + " elements");
+                
+                return (int)n;
+        }
+        
+        private static boolean isNumericClass(MxClassID classID)
+        {
+                switch (classID)
+                {
+                        case mxDOUBLE_CLASS:
+                        case mxSINGLE_CLASS:
+                        case mxINT64_CLASS:
+                        case mxINT32_CLASS:
+                        case mxINT16_CLASS:
+                        case mxINT8_CLASS:
+                        case mxUINT64_CLASS:
+                        case mxUINT32_CLASS:
+                        case mxUINT16_CLASS:
+                        case mxUINT8_CLASS:
+                                return true;
+                        default:
+                                return false;
+                }
+        }
+        
+        private static void checkBlock(int[] dims, int[] start, int[] count, int[] stride)
+        {
+                if ( start.length != dims.length || count.length != dims.length || stride.length != dims.length )
+                        throw new IllegalArgumentException("Block must have " + dims.length + " dimensions");
+                
+                long nSelected = 1;
+                
+                for ( int d = 0; d < dims.length; d++ )
+                {
+                        if ( start[d] < 0 || count[d] < 0 || stride[d] < 1 )
+                                throw new IllegalArgumentException("Invalid block in dimension " + d);
+                        
+                        if ( count[d] > 0 && start[d] + (long)(count[d]-1)*stride[d] >= dims[d] )
+                                throw new IllegalArgumentException("Block exceeds dimension " + d +
+                                                " of size " + dims[d]);
+                        
+                        nSelected *= count[d];
+                }
+                
+                if ( nSelected * 8 > Integer.MAX_VALUE )
+                        throw new IllegalArgumentException("Block too large");
+        }
+        
+        /**
+         * Decodes several variables concurrently. Every variable is decoded by
+         * a task of its own, which is run by the given executor. The tasks read
+         * the file independently of each other (through positional reads or
+         * the memory mapping), i.e. compressed variables are inflated in parallel.
+         * 
+         * @param varNames  names of the variables to decode
+         * @param executor  executes the decoding tasks (e.g. a thread pool)
+         * @return the decoded variables by name, in the order of <code>varNames</code>;
+         *         variables that cannot be found or decoded are mapped to null
+         */
+        public Map<String,MxDataObject> getVariables(Collection<String> varNames, Executor executor)
+        {
+                Map<String,FutureTask<MxDataObject>> tasks = new LinkedHashMap<String,FutureTask<MxDataObject>>();
+                
+                for ( String varName : varNames )
+                {
+                        final MatElementInfo i = indexTable.get(varName);
+                        
+                        if ( i == null )
+                        {
+                                System.err.println("MxFileReader::getVariables: Cannot find variable " + varName + ".");
+                                tasks.put(varName, null);
+                                continue;
+                        }
+                        
+                        FutureTask<MxDataObject> task = new FutureTask<MxDataObject>(new Callable<MxDataObject>()
+                        {
+                                public MxDataObject call() throws IOException
+                                {
+                                        return evalArray(openInputStream(i.position), new DecodeContext());
+                                }
+                        });
+                        
+                        tasks.put(varName, task);
+                        
+                        executor.execute(task);
+                }
+                
+                Map<String,MxDataObject> variables = new LinkedHashMap<String,MxDataObject>();
+                
+                for ( Map.Entry<String,FutureTask<MxDataObject>> e : tasks.entrySet() )
+                {
+                        MxDataObject obj = null;
+                        
+                        try {
+                                if ( e.getValue() != null )
+                                        obj = e.getValue().get();
+                        }
+                        catch (ExecutionException ex) {
+                                ex.getCause().printStackTrace();
+                        }
+                        catch (InterruptedException ex) {
+                                for ( FutureTask<MxDataObject> task : tasks.values() )
+                                        if ( task != null )
+                                                task.cancel(false);
+                                
+                                Thread.currentThread().interrupt();
+                                return null;
+                        }
+                        
+                        variables.put(e.getKey(), obj);
+                }
+                
+                return variables;
+        }
+        
+        /**
+         * Decodes all variables of the file concurrently
+         * (see getVariables(Collection,Executor)).
+         */
+        public Map<String,MxDataObject> readAll(Executor executor)
+        {
+                return getVariables(Arrays.asList(getVarNames()), executor);
+        }
+        
+        /**
+         * Reads a variable as a sequence of events sent to the given handler
+         * (see MxEventHandler), without building a MxDataObject. Numeric data
+         * is passed in chunks of the stored bytes; for memory mapped files
+         * the chunks are views of the mapping, i.e. the data is not copied
+         * before the handler gets it.
+         * 
+         * @param varName  name of the variable
+         * @param handler  receives the events
+         * @return false, if the variable cannot be found or decoded
+         */
+        public boolean parse(String varName, MxEventHandler handler)
+        {
+                MatElementInfo i = indexTable.get(varName);
+                
+                if ( i == null )
+                {
+                        System.err.println("MxFileReader::parse: Cannot find variable.");
+                        return false;
+                }
+                
+                try {
+                        return parseArray(openInputStream(i.position), new DecodeContext(true), handler);
+                }
+                catch (IOException e) {
+                        e.printStackTrace();
+                        return false;
+                }
+        }
+        
+        /**
+         * Reads all variables of the file, in the order they are stored,
+         * as events sent to the given handler (see parse(String,MxEventHandler)).
+         * @return false, if a variable cannot be decoded
+         */
+        public boolean parse(MxEventHandler handler)
+        {
+                List<MatElementInfo> variables = new ArrayList<MatElementInfo>(indexTable.values());
+                
+                Collections.sort(variables, new Comparator<MatElementInfo>()
+                {
+                        public int compare(MatElementInfo a, MatElementInfo b)
+                        {
+                                return Long.compare(a.position, b.position);
+                        }
+                });
+                
+                for ( MatElementInfo i : variables )
+                        if ( parse(i.getName(), handler) == false )
+                                return false;
+                
+                return true;
+        }
+        
+        private byte[] getHeader() throws IOException
+        {
+                byte[] header = new byte[128];
+                new MyDataInputStream(openInputStream(0L,header.length),byte_order).readFully(header);
+                return header;
+        }
+        
+        /**
+         * Returns a stream reading the file from the given position on,
+         * either from the memory mapping or by positional reads of the file
+         * channel. The stream does not use the file pointer of the
+         * RandomAccessFile, i.e. any number of streams can be used concurrently.
+         */
+        private InputStream openInputStream(long position) throws IOException
+        {
+                if ( mappedFile != null )
+                        return mappedFile.newInputStream(position);
+                
+                return new FileChannelInputStream(rfile.getChannel(),position);
+        }
+        
+        /**
+         * Returns a stream reading at most 'limit' bytes from the given
+         * file position on (see openInputStream(long)).
+         */
+        private InputStream openInputStream(long position, long limit) throws IOException
+        {
+                if ( mappedFile != null )
+                        return mappedFile.newInputStream(position,limit);
+                
+                return new FileChannelInputStream(rfile.getChannel(),position,limit);
+        }
+        
+        private Hashtable<String, MatElementInfo> createIndexTable() throws IOException
+        {
+                Hashtable<String,MatElementInfo> table = new Hashtable<String,MatElementInfo>();
+                
+                long curPos = 128; // position behind header
+                
+                while (true)
+                {
+                        InputStream is = openInputStream(curPos);
+                        
+                        DataTagFieldReader tagInfo = new DataTagFieldReader(byte_order);
+                        
+                        if(tagInfo.read(is) == false)
+                                return null;
+                        
+                        if(isArrayElement(tagInfo) == false)
+                                return null;
+                        
+                        long elementSize = tagInfo.getElementSize();
+                        
+                        is = openInputStream(curPos+8,elementSize);
+                        
+                        if (isCompressedElement(tagInfo))
+                        {
+                                is = new StreamDecompressor(is);
+                                
+                                // re-read compressed matrix tag
+                                if(tagInfo.read(is) == false)
+                                {
+                                        is.close();
+                                        return null;
+                                }
+                                
+                                if(isMatrixElement(tagInfo) == false)
+                                {
+                                        is.close();
+                                        return null;
+                                }
+                        }
+                        
+                        MyDataInputStream mi = new MyDataInputStream(is,byte_order);
+                        
+                        ArrayFlagsSubelement      flagField;
+                        DimensionsArraySubelement dimField;
+                        ArrayNameSubelement       nameField;
+                        
+                        try {
+                                flagField = new ArrayFlagsSubelement().read(mi);
+                                dimField  = new DimensionsArraySubelement().read(mi);
+                                nameField = new ArrayNameSubelement().read(mi);
+                        }
+                        catch (DataTypeException e) {
+                                e.printStackTrace();
+                                return null;
+                        }
+                        finally {
+                                // gives the Inflater of a compressed element back
+                                is.close();
+                        }
+                        
+                        MatElementInfo obj = new MatElementInfo();
+                        
+                        obj.setComplex   ( flagField.getComplexFlag() );
+                        obj.setGlobal    ( flagField.getGlobalFlag()  );
+                        obj.setLogical   ( flagField.getLogicalFlag() );
+                        obj.setSparse    ( flagField.getSparseFlag()  );
+                        obj.setClassID   ( flagField.getClassType()   );
+                        obj.setDimensions(  dimField.getDimensions()  );
+                        obj.setName      ( nameField.getName()        );
+                        obj.position    = curPos;
+                        // obj could also include tag information
+                        
+                        table.put(nameField.getName(), obj);
+                        
+                        if ( curPos + elementSize < rfile.length() )
+                                curPos += elementSize;
+                        else
+                                break;
+                }
+                
+                return table;
+        }
+        
+        private MxDataObject evalArray(InputStream in, DecodeContext ctx)
+        {
+                /*
+                 * Array consists of
+                 * 1) Data element tag
+                 * 2) Flag      sub-element
+                 * 3) Dimension sub-element
+                 * 4) Name      sub-element
+                 * 5) Further array type specific data
+                 */
+                
+                //
+                // Evaluate array tag field
+                //
+                DataTagFieldReader tagInfo = ctx.tagInfo;
+                
+                if ( tagInfo.read(in) == false )
+                        return null;
+                
+                if ( isArrayElement(tagInfo) == false )
+                        return null;
+                
+                if ( tagInfo.getDataSize() == 0 )
+                        return new MxEmptyDataObject();
+                
+                if (isCompressedElement(tagInfo))
+                {
+                        // position of the miCOMPRESSED tag, if known
+                        long pos = position(in);
+                        ctx.root = (pos < 0) ? -1 : pos - 8;
+                        
+                        StreamDecompressor sd = new StreamDecompressor(in);
+                        
+                        try {
+                                // re-read compressed matrix tag
+                                tagInfo.read(sd);
+                                
+                                if(isMatrixElement(tagInfo) == false)
+                                        return null;
+                                
+                                return evalMatrix(sd,ctx);
+                        }
+                        finally {
+                                sd.end();
+                        }
+                }
+                
+                return evalMatrix(in,ctx);
+        }
+        
+        /*
+         * Evaluates a miMATRIX element behind its tag
+         */
+        private MxDataObject evalMatrix(InputStream in, DecodeContext ctx)
+        {
+                MyDataInputStream mi = ctx.dataStream(in);
+                
+                MxDataObject dataObject = evalMatrixHeader(mi,ctx);
+                
+                if ( dataObject == null )
+                        return null;
+                
+                DataTagFieldReader tagInfo = ctx.tagInfo;
+                
+                switch (dataObject.getClassID())
+                {
+                        case mxDOUBLE_CLASS:
+                        case mxSINGLE_CLASS:
+                        case mxINT64_CLASS:
+                        case mxINT32_CLASS:
+                        case mxINT16_CLASS:
+                        case mxINT8_CLASS:
+                        case mxUINT64_CLASS:
+                        case mxUINT32_CLASS:
+                        case mxUINT16_CLASS:
+                        case mxUINT8_CLASS:
+                        {
+                                // The parts keep the data type they are stored in
+                                MxNumericDataObject numDataObject = new MxNumericDataObject(dataObject);
+                                
+                                NumericPartSubelement real_part = ctx.numField.read(mi,tagInfo);
+                                
+                                if ( real_part == null )
+                                        return null;
+                                
+                                numDataObject.setRealDataStorageType( real_part.getDataType() );
+                                numDataObject.setRealDataStorage( real_part.getData() );
+                                
+                                if ( numDataObject.isComplex() )
+                                {
+                                        NumericPartSubelement imag_part = ctx.numField.read(mi,tagInfo);
+                                        
+                                        if ( imag_part == null )
+                                                return null;
+                                        
+                                        numDataObject.setImagDataStorageType( imag_part.getDataType() );
+                                        numDataObject.setImagDataStorage( imag_part.getData() );
+                                        
+                                        if ( numDataObject.getRealDataStorage().length() != numDataObject.getImagDataStorage().length() )
+                                                return null; // TODO: Better to throw an Exception ???
+                                }
+                                
+                                return numDataObject;
+                        }
+                        case mxCHAR_CLASS:
+                        {
+                                MxCharacterDataObject charDataObject = new MxCharacterDataObject(dataObject);
+                                
+                                CharacterPartSubelement char_part = ctx.charField.read(mi,tagInfo);
+                                
+                                if ( char_part == null )
+                                        return null;
+                                
+                                charDataObject.setString( char_part.getString() );
+                                
+                                return charDataObject;
+                        }
+                        case mxCELL_CLASS:
+                        {
+                                MxCellDataObject cellDataObject = new MxCellDataObject(dataObject);
+                                
+                                cellDataObject.setCells( evalCellArrayData(in,cellDataObject.getNumOfElements(),ctx) );
+                                
+                                return cellDataObject;
+                        }
+                        case mxSTRUCT_CLASS:
+                        {
+                                MxStructDataObject structDataObject = new MxStructDataObject(dataObject);
+                                
+                                String[] names = evalFieldNames(mi);
+                                
+                                if ( names == null )
+                                        return null;
+                                
+                                // Evaluate struct data fields
+                                structDataObject.setAllFields( evalStructArrayData(in,names,ctx) );
+                                
+                                return structDataObject;
+                        }
+                        case mxSPARSE_CLASS:
+                        {
+                                MxSparseDataObject sparseDataObject = new MxSparseDataObject(dataObject);
+                                
+                                sparseDataObject.setNzMax( ctx.flagField.getNzMax() );
+                                
+                                SparseRaw sr = evalSparseArrayData(mi,sparseDataObject.isComplex());
+                                
+                                sparseDataObject.setRealDataStorageType( sr.real_data_type );
+                                sparseDataObject.setImagDataStorageType( sr.imag_data_type );
+                                sparseDataObject.setRealDataStorage( sr.real_part );
+                                sparseDataObject.setImagDataStorage( sr.imag_part );
+                                sparseDataObject.setCSC( sr.ir, sr.jc );
+                                
+                                return sparseDataObject;
+                        }
+                        default:
+                                return null;
+                }
+        }
+        
+        /*
+         * Reads the field name length and field names sub-elements of a struct
+         */
+        private String[] evalFieldNames(MyDataInputStream mi)
+        {
+                try {
+                        // Evaluate field names length
+                        FieldNameLengthSubelement lenField = new FieldNameLengthSubelement().read(mi);
+                        
+                        if ( lenField == null )
+                                return null;
+                        
+                        // Evaluate field names
+                        FieldNamesSubelement namesField = new FieldNamesSubelement().read(mi,lenField.getLength());
+                        
+                        return (namesField != null) ? namesField.listNames() : null;
+                }
+                catch (DataTypeException e) {
+                        e.printStackTrace();
+                        return null;
+                }
+        }
+        
+        /*
+         * Reads the flags, dimensions and name of a miMATRIX element into
+         * ctx.header
+         */
+        private MxDataObject evalMatrixHeader(MyDataInputStream mi, DecodeContext ctx)
+        {
+                DataTagFieldReader tagInfo = ctx.tagInfo;
+                
+                ArrayFlagsSubelement      flagField;
+                DimensionsArraySubelement dimField;
+                ArrayNameSubelement       nameField;
+                
+                try {
+                        flagField = ctx.flagField.read(mi,tagInfo);
+                        dimField  = ctx.dimField.read(mi,tagInfo);
+                        nameField = ctx.nameField.read(mi,tagInfo);
+                }
+                catch (DataTypeException e) {
+                        e.printStackTrace();
+                        return null;
+                }
+                
+                if ( flagField == null || dimField == null || nameField == null )
+                        return null;
+                
+                MxDataObject dataObject = ctx.header;
+                
+                dataObject.setComplex   ( flagField.getComplexFlag() );
+                dataObject.setGlobal    ( flagField.getGlobalFlag()  );
+                dataObject.setLogical   ( flagField.getLogicalFlag() );
+                dataObject.setSparse    ( flagField.getSparseFlag()  );
+                dataObject.setClassID   ( flagField.getClassType()   );
+                dataObject.setDimensions(  dimField.getDimensions()  );
+                dataObject.setName(       nameField.getName()        );
+                
+                return dataObject;
+        }
+        
+        private SparseRaw evalSparseArrayData(MyDataInputStream in, boolean isComplex)
+        {
+                RowIndexSubelement rowIndices = null;
+                try {
+                        rowIndices = new RowIndexSubelement().read(in);
+                } catch (DataTypeException e) {
+                        // TODO Auto-generated catch block
+                        e.printStackTrace();
+                }
+                
+                ColumnIndexSubelement colIndices = null;
+                try {
+                        colIndices = new ColumnIndexSubelement().read(in);
+                } catch (DataTypeException e) {
+                        // TODO Auto-generated catch block
+                        e.printStackTrace();
+                }
+                
+                // ir and jc are kept in CSC form as stored
+                SparseRaw sr = new SparseRaw();
+                
+                sr.ir = rowIndices.getRowIndices();
+                sr.jc = colIndices.getRowIndices();
+                
+                // Evaluate data field
+                NumericPartSubelement realField = new NumericPartSubelement().read(in);
+                
+                sr.real_part      = realField.getData();
+                sr.real_data_type = realField.getDataType();
+                
+                if ( isComplex == true )
+                {
+                        NumericPartSubelement imagField = new NumericPartSubelement().read(in);
+                        
+                        sr.imag_part      = imagField.getData();
+                        sr.imag_data_type = imagField.getDataType();
+                        
+                        if ( sr.real_part.length() != sr.imag_part.length() )
+                                return null;
+                }
+                
+                return sr;
+        }
+        
+        private MxDataObject[] evalCellArrayData(InputStream in, int nElements, DecodeContext ctx)
+        {
+                MxDataObject[] elements = new MxDataObject[nElements];
+                
+                for ( int i = 0; i < nElements; i++ )
+                        elements[i] = evalArray(in,ctx);
+                
+                return elements;
+        }
+        
+        private MxDataObject[] evalStructArrayData(InputStream in, String[] names, DecodeContext ctx)
+        {
+                int nElements = names.length;
+                
+                MxDataObject[] elements = new MxDataObject[nElements];
+                
+                boolean lazy = ctx.lazy && position(in) >= 0;
+                
+                for ( int i = 0; i < nElements; i++ )
+                {
+                        elements[i] = lazy ? evalLazyField(in,ctx) : evalArray(in,ctx);
+                        
+                        if ( elements[i] == null )
+                                return null;
+                        
+                        elements[i].setName(names[i]); // Substitute field name
+                }
+                
+                return elements;
+        }
+        
+        /*
+         * Returns a struct field as LazyMxDataObject, which only records the
+         * position of the field: the header of the field is read and its data
+         * skipped. Small fields are decoded right away.
+         */
+        private MxDataObject evalLazyField(InputStream in, DecodeContext ctx)
+        {
+                DataTagFieldReader tagInfo = ctx.tagInfo;
+                
+                final long start = position(in);
+                
+                if ( tagInfo.read(in) == false )
+                        return null;
+                
+                if ( isMatrixElement(tagInfo) == false )
+                        return null;
+                
+                long size = tagInfo.getDataSize();
+                
+                if ( size == 0 )
+                        return new MxEmptyDataObject();
+                
+                if ( size <= LAZYFIELDLENGTH )
+                        return evalMatrix(in,ctx);
+                
+                long end = position(in) + size;
+                
+                MxDataObject header = evalMatrixHeader(ctx.dataStream(in),ctx);
+                
+                if ( header == null )
+                        return null;
+                
+                try {
+                        skipFully(in, end - position(in));
+                }
+                catch (IOException e) {
+                        e.printStackTrace();
+                        return null;
+                }
+                
+                // Fields of compressed variables are found by inflating the variable again
+                final long root = (in instanceof StreamDecompressor) ? ctx.root : -1;
+                
+                LazyMxDataObject.Loader loader = new LazyMxDataObject.Loader()
+                {
+                        public MxDataObject load()
+                        {
+                                return evalField(root,start);
+                        }
+                };
+                
+                return new LazyMxDataObject(header,loader);
+        }
+        
+        /*
+         * Decodes a field recorded by evalLazyField()
+         * @param root    file position of the compressed variable containing
+         *                the field or -1, if the variable is not compressed
+         * @param offset  position of the field, within the inflated data
+         *                of the variable, if it is compressed
+         */
+        private MxDataObject evalField(long root, long offset)
+        {
+                DecodeContext ctx = new DecodeContext();
+                
+                try {
+                        if ( root < 0 )
+                                return evalArray(openInputStream(offset), ctx);
+                        
+                        InputStream in = openInputStream(root);
+                        
+                        if ( ctx.tagInfo.read(in) == false || isCompressedElement(ctx.tagInfo) == false )
+                                return null;
+                        
+                        StreamDecompressor sd = new StreamDecompressor(in);
+                        
+                        try {
+                                skipFully(sd, offset);
                                 
-                                return numDataObject;
+                                ctx.root = root;
+                                
+                                return evalArray(sd, ctx);
+                        }
+                        finally {
+                                sd.close();
+                        }
+                }
+                catch (IOException e) {
+                        e.printStackTrace();
+                        return null;
+                }
+        }
+        
+        /*
+         * Sends the events of an array element to the handler; the event
+         * counterpart of evalArray()
+         */
+        private boolean parseArray(InputStream in, DecodeContext ctx, MxEventHandler handler) throws IOException
+        {
+                DataTagFieldReader tagInfo = ctx.tagInfo;
+                
+                if ( tagInfo.read(in) == false || isArrayElement(tagInfo) == false )
+                        return false;
+                
+                if ( tagInfo.getDataSize() == 0 )
+                {
+                        if ( handler.startArray(new MxEmptyDataObject()) )
+                                handler.endArray();
+                        return true;
+                }
+                
+                if ( isCompressedElement(tagInfo) )
+                {
+                        // the inflated data starts with the miMATRIX tag
+                        StreamDecompressor sd = new StreamDecompressor(in);
+                        
+                        try {
+                                return parseArray(sd, ctx, handler);
                         }
+                        finally {
+                                sd.end();
+                        }
+                }
+                
+                long end = position(in) + tagInfo.getDataSize();
+                
+                MyDataInputStream mi = ctx.dataStream(in);
+                
+                MxDataObject header = evalMatrixHeader(mi,ctx);
+                
+                if ( header == null )
+                        return false;
+                
+                if ( handler.startArray(header) == false )
+                {
+                        skipFully(in, end - position(in));
+                        return true;
+                }
+                
+                switch (header.getClassID())
+                {
+                        case mxDOUBLE_CLASS:
+                        case mxSINGLE_CLASS:
                         case mxINT64_CLASS:
                         case mxINT32_CLASS:
                         case mxINT16_CLASS:
@@ -352,189 +1381,268 @@ public class MxFileReader implements Closeable
                         case mxUINT16_CLASS:
                         case mxUINT8_CLASS:
                         {
-                                MxNumericDataObject numDataObject = new MxNumericDataObject(dataObject);
+                                boolean complex = header.isComplex();
                                 
-                                NumericPartSubelement real_part = new NumericPartSubelement().read(mi);
+                                if ( parseNumericPart(mi, ctx, false, handler) == false )
+                                        return false;
                                 
-                                numDataObject.setRealDataStorageType( real_part.getDataType() );
-                                numDataObject.setRealDataStorage( real_part.getData() );
+                                if ( complex && parseNumericPart(mi, ctx, true, handler) == false )
+                                        return false;
                                 
-                                return numDataObject;
+                                break;
                         }
                         case mxCHAR_CLASS:
                         {
-                                MxCharacterDataObject charDataObject = new MxCharacterDataObject(dataObject);
+                                CharacterPartSubelement char_part = ctx.charField.read(mi,tagInfo);
                                 
-                                charDataObject.setString( new CharacterPartSubelement().read(mi).getString() );
+                                if ( char_part == null )
+                                        return false;
                                 
-                                return charDataObject;
+                                handler.characters( char_part.getString() );
+                                
+                                break;
                         }
                         case mxCELL_CLASS:
                         {
-                                MxCellDataObject cellDataObject = new MxCellDataObject(dataObject);
+                                int n = header.getNumOfElements();
                                 
-                                cellDataObject.setCells( evalCellArrayData(in,cellDataObject.getNumOfElements()) );
+                                for ( int k = 0; k < n; k++ )
+                                {
+                                        handler.startCell(k);
+                                        
+                                        if ( parseArray(in, ctx, handler) == false )
+                                                return false;
+                                        
+                                        handler.endCell(k);
+                                }
                                 
-                                return cellDataObject;
+                                break;
                         }
                         case mxSTRUCT_CLASS:
                         {
-                                MxStructDataObject structDataObject = new MxStructDataObject(dataObject);
+                                String[] names = evalFieldNames(mi);
                                 
-                                // Evaluate field names length
-                                FieldNameLengthSubelement lenField;
-                                int                       len = 0;
+                                if ( names == null )
+                                        return false;
                                 
-                                try {
-                                        lenField = new FieldNameLengthSubelement().read(mi);
-                                        len = lenField.getLength();
-                                } catch (DataTypeException e) {
-                                        // TODO Auto-generated catch block
-                                        e.printStackTrace();
-                                }
+                                handler.startStruct(names);
                                 
-                                // Evaluate field names
-                                FieldNamesSubelement namesField;
-                                String[]             names = null;
-                                try {
-                                        namesField = new FieldNamesSubelement().read(mi,len);
-                                        names      = namesField.listNames();
-                                } catch (DataTypeException e) {
-                                        // TODO Auto-generated catch block
-                                        e.printStackTrace();
+                                for ( String name : names )
+                                {
+                                        handler.field(name);
+                                        
+                                        if ( parseArray(in, ctx, handler) == false )
+                                                return false;
                                 }
                                 
-                                // Evaluate struct data fields
-                                structDataObject.setAllFields( evalStructArrayData(in,names) );
+                                handler.endStruct();
                                 
-                                return structDataObject;
+                                break;
                         }
                         case mxSPARSE_CLASS:
                         {
-                                MxSparseDataObject sparseDataObject = new MxSparseDataObject(dataObject);
+                                boolean complex = header.isComplex();
                                 
-                                sparseDataObject.setNzMax( flagField.getNzMax() );
+                                try {
+                                        RowIndexSubelement    rowIndices = new RowIndexSubelement().read(mi);
+                                        ColumnIndexSubelement colIndices = new ColumnIndexSubelement().read(mi);
+                                        
+                                        if ( rowIndices == null || colIndices == null )
+                                                return false;
+                                        
+                                        handler.sparseIndices(rowIndices.getRowIndices(), colIndices.getRowIndices());
+                                }
+                                catch (DataTypeException e) {
+                                        e.printStackTrace();
+                                        return false;
+                                }
                                 
-                                SparseRaw sr = evalSparseArrayData(mi,sparseDataObject.isComplex());
+                                if ( parseNumericPart(mi, ctx, false, handler) == false )
+                                        return false;
                                 
-                                sparseDataObject.setRealDataStorageType( sr.real_data_type );
-                                sparseDataObject.setImagDataStorageType( sr.imag_data_type );
-                                sparseDataObject.setRealDataStorage( sr.real_part );
-                                sparseDataObject.setImagDataStorage( sr.imag_part );
-                                sparseDataObject.setRowIndeices  ( sr.ir );
-                                sparseDataObject.setColumnIndices( sr.jc );
+                                if ( complex && parseNumericPart(mi, ctx, true, handler) == false )
+                                        return false;
                                 
-                                return sparseDataObject;
+                                break;
                         }
                         default:
-                                return null;
+                                return false;
                 }
+                
+                handler.endArray();
+                
+                return true;
         }
         
-        private SparseRaw evalSparseArrayData(MyDataInputStream in, boolean isComplex)
+        /*
+         * Passes the data items of a numeric part to the handler, as view of
+         * the memory mapping or in chunks of at most EVENTCHUNKLENGTH bytes
+         */
+        private boolean parseNumericPart(MyDataInputStream mi, DecodeContext ctx, boolean imaginary,
+                        MxEventHandler handler) throws IOException
         {
-                RowIndexSubelement rowIndices = null;
-                try {
-                        rowIndices = new RowIndexSubelement().read(in);
-                } catch (DataTypeException e) {
-                        // TODO Auto-generated catch block
-                        e.printStackTrace();
-                }
-                
-                ColumnIndexSubelement colIndices = null;
-                try {
-                        colIndices = new ColumnIndexSubelement().read(in);
-                } catch (DataTypeException e) {
-                        // TODO Auto-generated catch block
-                        e.printStackTrace();
-                }
+                DataTagFieldReader tagInfo = ctx.tagInfo;
                 
-                int[][] coord = transform(rowIndices.getRowIndices(),colIndices.getRowIndices());
+                if ( tagInfo.read(mi) == false || tagInfo.getDataType().isNumericType() == false )
+                        return false;
                 
-                SparseRaw sr = new SparseRaw();
+                DataType type     = tagInfo.getDataType();
+                long     size     = tagInfo.getDataSize();
+                int      atomSize = type.sizeOf();
                 
-                sr.ir = coord[0];
-                sr.jc = coord[1];
+                // Data items of short elements are part of the tag
+                if ( tagInfo.isShortElement() )
+                {
+                        ByteBuffer b = ByteBuffer.wrap(tagInfo.getTagData(), 4, (int)size).slice().order(byte_order);
+                        handler.numericChunk(b, type, imaginary);
+                        return true;
+                }
                 
-                // Evaluate data field
-                NumericPartSubelement realField = new NumericPartSubelement().read(in);
+                long numBytes = size - size % atomSize; // complete data items
                 
-                sr.real_part      = realField.getData();
-                sr.real_data_type = realField.getDataType();
+                ByteBuffer view = (numBytes <= Integer.MAX_VALUE - 8) ? mi.readView((int)numBytes) : null;
                 
-                if ( isComplex == true )
+                if ( view != null )
                 {
-                        NumericPartSubelement imagField = new NumericPartSubelement().read(in);
-                        
-                        sr.imag_part      = imagField.getData();
-                        sr.imag_data_type = imagField.getDataType();
+                        handler.numericChunk(view, type, imaginary);
+                }
+                else
+                {
+                        ByteBuffer chunk = ctx.chunk();
                         
-                        if ( sr.real_part.length() != sr.imag_part.length() )
-                                return null;
+                        for ( long done = 0; done < numBytes; )
+                        {
+                                int n = (int)Math.min(chunk.capacity(), numBytes - done);
+                                
+                                mi.readFully(chunk.array(), 0, n);
+                                chunk.clear();
+                                chunk.limit(n);
+                                
+                                handler.numericChunk(chunk, type, imaginary);
+                                
+                                done += n;
+                        }
                 }
                 
-                return sr;
+                skipFully(mi, size - numBytes + tagInfo.getPadding());
+                
+                return true;
         }
         
         /*
-         * cols(j) points to (is the index of) the first elements of column j
-         * in rows[]. Since rows[cols(j+1)] is the row-index of the first
-         * element in column (j+1), it follows that rows[cols(j+1)-1] is the
-         * row-index of the last element in column j.
-         * Also, cols(j) = #(elements in columns 0:j-1). Therefore,
-         * cols(j+1)- cols(j) = #(elements in column j)
+         * Returns the position of the next byte to read from 'in' (the file
+         * position, or the position within the inflated data for a
+         * StreamDecompressor) or -1, if the stream does not know its position
          */
-        private int[][] transform(int[] rows, int[] cols)
+        private static long position(InputStream in)
         {
-                int n_cols     = cols.length-1;
-                int n_elements = cols[n_cols];
+                if ( in instanceof MappedFileInputStream )
+                        return ((MappedFileInputStream)in).getPosition();
                 
-                // 'rows' may contain more elements than non-zero elements
-                // in the sparse matrix (it may contain excess storage),
-                // we use 'n_elements' to determine the exact number of
-                // non-zero elements.
-                int[][] coord = new int[2][n_elements];
+                if ( in instanceof FileChannelInputStream )
+                        return ((FileChannelInputStream)in).getPosition();
                 
-                for ( int j = 0 ; j < n_cols; j ++)
+                if ( in instanceof StreamDecompressor )
+                        return ((StreamDecompressor)in).getPosition();
+                
+                return -1;
+        }
+        
+        private static void skipFully(InputStream in, long n) throws IOException
+        {
+                while ( n > 0 )
                 {
-                        for ( int i = cols[j]; i <= cols[j+1]-1; i++)
+                        long k = in.skip(n);
+                        
+                        if ( k <= 0 )
                         {
-                                coord[0][i] = rows[i]; // Could be done outside the for-loops
-                                coord[1][i] = j;
+                                if ( in.read() < 0 )
+                                        throw new EOFException();
+                                k = 1;
                         }
+                        
+                        n -= k;
                 }
-                
-                return coord;
         }
         
-        private MxDataObject[] evalCellArrayData(InputStream in, int nElements)
+        /*
+         * Scratch objects of one decode (one getVariable call), reused for
+         * all elements of the variable, e.g. the cells of a cell array. The
+         * memory allocated per element is thereby limited to the returned
+         * objects. A DecodeContext must not be used by several threads.
+         */
+        private class DecodeContext
         {
-                MxDataObject[] elements = new MxDataObject[nElements];
+                final DataTagFieldReader        tagInfo   = new DataTagFieldReader(byte_order);
+                final ArrayFlagsSubelement      flagField = new ArrayFlagsSubelement();
+                final DimensionsArraySubelement dimField  = new DimensionsArraySubelement();
+                final ArrayNameSubelement       nameField = new ArrayNameSubelement();
+                final NumericPartSubelement     numField  = new NumericPartSubelement();
+                final CharacterPartSubelement   charField = new CharacterPartSubelement();
                 
-                for ( int i = 0; i < nElements; i++ )
-                        elements[i] = evalArray(in);
+                // Flags, dimensions and name of the element read last
+                final MxDataObject              header    = new MxDataObject();
                 
-                return elements;
-        }
-        
-        private MxDataObject[] evalStructArrayData(InputStream in, String[] names)
-        {
-                int nElements = names.length;
+                private final boolean           views;
+                final boolean                   lazy      = lazyFields;
                 
-                MxDataObject[] elements = new MxDataObject[nElements];
+                // File position of the compressed variable being decoded (-1 if none)
+                long                            root      = -1;
                 
-                for ( int i = 0; i < nElements; i++ )
+                private InputStream             source;
+                private MyDataInputStream       stream;
+                private ByteBuffer              chunk;
+                
+                DecodeContext()
                 {
-                        elements[i] = evalArray(in);
-                        elements[i].setName(names[i]); // Substitute field name
+                        this(zeroCopy);
                 }
                 
-                return elements;
+                /*
+                 * @param views  if true, numeric data of memory mapped files
+                 *               is read as views of the mapping
+                 */
+                DecodeContext(boolean views)
+                {
+                        this.views = views;
+                }
+                
+                /*
+                 * Returns the buffer numeric data is passed to event
+                 * handlers in (a multiple of 8 bytes)
+                 */
+                ByteBuffer chunk()
+                {
+                        if ( chunk == null )
+                                chunk = ByteBuffer.allocate(EVENTCHUNKLENGTH).order(byte_order);
+                        
+                        chunk.clear();
+                        
+                        return chunk;
+                }
+                
+                /*
+                 * Returns a MyDataInputStream on 'in', the same one
+                 * for all elements read from the same stream
+                 */
+                MyDataInputStream dataStream(InputStream in)
+                {
+                        if ( in != source )
+                        {
+                                source = in;
+                                stream = new MyDataInputStream(in,byte_order,views);
+                        }
+                        
+                        return stream;
+                }
         }
         
-        private class MatElementInfo extends MxDataObject
+        /*
+         * Entry of the index table; package visible for MxIndexFile
+         */
+        static class MatElementInfo extends MxDataObject
         {
-                int position;
+                long position;
                 
                 @Override
                 public String toString()
@@ -543,12 +1651,70 @@ public class MxFileReader implements Closeable
                 }
         }
         
-        private boolean isArrayElement(DataTagFieldReader tagInfo)
+        /**
+         * Walks the tags of the top level elements of a file, the same way
+         * createIndexTable() does, and returns the position behind the last
+         * complete array element. Data behind it, i.e. a truncated element or
+         * anything that is not an array element (e.g. left over by an
+         * interrupted write), is not taken into account.
+         */
+        static long findEndOfElements(FileChannel channel, ByteOrder byteOrder) throws IOException
+        {
+                long length = channel.size();
+                long curPos = 128; // position behind header
+                
+                byte[] tag = new byte[8];
+                
+                while ( curPos + tag.length <= length )
+                {
+                        InputStream is = new FileChannelInputStream(channel,curPos,tag.length);
+                        new MyDataInputStream(is,byteOrder).readFully(tag);
+                        
+                        DataTagFieldReader tagInfo = new DataTagFieldReader(byteOrder);
+                        
+                        if ( tagInfo.read(tag) == false || isArrayElement(tagInfo) == false )
+                                break;
+                        
+                        if ( curPos + tagInfo.getElementSize() > length )
+                                break;
+                        
+                        curPos += tagInfo.getElementSize();
+                }
+                
+                return curPos;
+        }
+        
+        /**
+         * Tells, whether the data from <code>position</code> to the end of a file
+         * is a single array element cut off by an interrupted write, i.e. a
+         * partial tag or an array element running past the end of the file.
+         */
+        static boolean isTruncatedElement(FileChannel channel, ByteOrder byteOrder, long position) throws IOException
+        {
+                long length = channel.size();
+                
+                byte[] tag = new byte[8];
+                
+                if ( position + tag.length > length )
+                        return true;
+                
+                InputStream is = new FileChannelInputStream(channel,position,tag.length);
+                new MyDataInputStream(is,byteOrder).readFully(tag);
+                
+                DataTagFieldReader tagInfo = new DataTagFieldReader(byteOrder);
+                
+                if ( tagInfo.read(tag) == false || isArrayElement(tagInfo) == false )
+                        return false;
+                
+                return position + tagInfo.getElementSize() > length;
+        }
+        
+        private static boolean isArrayElement(DataTagFieldReader tagInfo)
         {
                 return (isMatrixElement(tagInfo) || isCompressedElement(tagInfo));
         }
         
-        private boolean isMatrixElement(DataTagFieldReader tagInfo)
+        private static boolean isMatrixElement(DataTagFieldReader tagInfo)
         {
                 if ( tagInfo.isShortElement() )
                         return false;
@@ -558,7 +1724,7 @@ public class MxFileReader implements Closeable
                 return isMatrix;
         }
         
-        private boolean isCompressedElement(DataTagFieldReader tagInfo)
+        private static boolean isCompressedElement(DataTagFieldReader tagInfo)
         {
                 if ( tagInfo.isShortElement() )
                         return false;
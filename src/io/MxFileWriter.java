@@ -1,11 +1,29 @@
 package io;
 
+import io.compression.CodecPool;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 
+import common.DataTagField;
+import common.DataType;
 import common.MxFileHeader;
 
 import abstractTypes.AbstractArrayElement;
@@ -21,22 +39,100 @@ public class MxFileWriter
 {
         RandomAccessFile raFile;
         
+        /*
+         * Buffered stream on the channel of raFile. Elements are streamed
+         * through it instead of being converted to a byte array first.
+         */
+        OutputStream     out;
+        
         //ByteOrder byte_order = ByteOrder.nativeOrder();
         ByteOrder byte_order = MxByteOrder.byte_order;
         
+        private static final int BUFFER_SIZE = 64*1024;
+        
+        /*
+         * Currently open streaming writer; no other element can be written
+         * while it is open
+         */
+        MxStreamingNumericWriter stream = null;
+        
+        /*
+         * Settings of the Deflater used for compressed elements
+         */
+        private int compressionLevel    = Deflater.DEFAULT_COMPRESSION;
+        private int compressionStrategy = Deflater.DEFAULT_STRATEGY;
+        
+        /*
+         * Decides per element about compression; null, if the compFlag
+         * of the element decides
+         */
+        private CompressionPolicy compressionPolicy = null;
+        
+        private final CompressionStats compressionStats = new CompressionStats();
+        
         public MxFileWriter(String filename)
         {
-                File file = new File(filename);
-                
-                if (file.exists())
-                        file.delete();
+                this(filename,MxByteOrder.byte_order);
+        }
+        
+        /**
+         * Creates a .mat file (an existing file is replaced)
+         * @param filename   name of the file to write
+         * @param byteOrder  byte order of the written file
+         */
+        public MxFileWriter(String filename, ByteOrder byteOrder)
+        {
+                this(filename,byteOrder,false);
+        }
+        
+        /**
+         * Opens a .mat file for writing (see MxFileWriter(String,ByteOrder,boolean))
+         */
+        public MxFileWriter(String filename, boolean append)
+        {
+                this(filename,MxByteOrder.byte_order,append);
+        }
+        
+        /**
+         * Opens a .mat file for writing.
+         * @param filename   name of the file to write
+         * @param byteOrder  byte order of the file, if it is created
+         * @param append     if true and the file exists, the elements written are
+         *                   appended behind the existing elements, which are neither
+         *                   decoded nor rewritten; the byte order of the existing file
+         *                   is kept. Otherwise an existing file is replaced.
+         */
+        public MxFileWriter(String filename, ByteOrder byteOrder, boolean append)
+        {
+                byte_order = byteOrder;
                 
-                MxFileHeader fileHeader = MxFileHeader.fileHeaderFactory();
-                byte[] head = fileHeader.toByteArray(byte_order);
+                File file = new File(filename);
                 
                 try {
-                        raFile = new RandomAccessFile(file,"rw");
-                        raFile.write(head);
+                        if ( append && file.exists() )
+                        {
+                                raFile = new RandomAccessFile(file,"rw");
+                                
+                                if ( seekEndOfElements() == false )
+                                {
+                                        raFile.close();
+                                        raFile = null;
+                                        return;
+                                }
+                        }
+                        else
+                        {
+                                if (file.exists())
+                                        file.delete();
+                                
+                                MxFileHeader fileHeader = MxFileHeader.fileHeaderFactory();
+                                byte[] head = fileHeader.toByteArray(byte_order);
+                                
+                                raFile = new RandomAccessFile(file,"rw");
+                                raFile.write(head);
+                        }
+                        
+                        out = new BufferedOutputStream(Channels.newOutputStream(raFile.getChannel()), BUFFER_SIZE);
                 }
                 catch (FileNotFoundException e) {
                         e.printStackTrace();
@@ -46,20 +142,421 @@ public class MxFileWriter
                 }
         }
         
-        private synchronized void write(byte[] data)
+        /*
+         * Checks the header of an existing file, takes over its byte order and
+         * positions the file behind the last complete element. Remains of an
+         * interrupted write behind it are cut off; any other data behind it
+         * is left alone and the file is not opened.
+         */
+        private boolean seekEndOfElements() throws IOException
         {
+                byte[] header = new byte[128];
+                
+                if ( raFile.length() < header.length )
+                {
+                        System.err.println("MxFileWriter:: Not a MATLAB >= Version 5 file.");
+                        return false;
+                }
+                
+                raFile.seek(0);
+                raFile.readFully(header);
+                
+                if ( MxFileHeader.checkHeader(header) != 0 )
+                {
+                        System.err.println("MxFileWriter:: Invalid file header, cannot append.");
+                        return false;
+                }
+                
+                if ( header[126] == 'M' && header[127] == 'I' )
+                        byte_order = ByteOrder.BIG_ENDIAN;
+                else
+                        byte_order = ByteOrder.LITTLE_ENDIAN;
+                
+                long end = MxFileReader.findEndOfElements(raFile.getChannel(), byte_order);
+                
+                if ( end < raFile.length() )
+                {
+                        if ( MxFileReader.isTruncatedElement(raFile.getChannel(), byte_order, end) == false )
+                        {
+                                System.err.println("MxFileWriter:: Unknown data behind element at position " + end + ", cannot append.");
+                                return false;
+                        }
+                        
+                        raFile.setLength(end);
+                }
+                
+                raFile.seek(end);
+                
+                return true;
+        }
+        
+        /**
+         * Returns the byte order of the written file
+         */
+        public ByteOrder getByteOrder()
+        {
+                return byte_order;
+        }
+        
+        /**
+         * Sets the compression level used for compressed elements
+         * @param level  Deflater.DEFAULT_COMPRESSION or a level between
+         *               Deflater.NO_COMPRESSION (0) and Deflater.BEST_COMPRESSION (9)
+         */
+        public synchronized void setCompressionLevel(int level)
+        {
+                if ( (level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION )
+                        throw new IllegalArgumentException("Invalid compression level: " + level);
+                
+                compressionLevel = level;
+        }
+        
+        public int getCompressionLevel()
+        {
+                return compressionLevel;
+        }
+        
+        /**
+         * Sets the compression strategy used for compressed elements
+         * @param strategy  Deflater.DEFAULT_STRATEGY, Deflater.FILTERED or Deflater.HUFFMAN_ONLY
+         */
+        public synchronized void setCompressionStrategy(int strategy)
+        {
+                if ( strategy != Deflater.DEFAULT_STRATEGY &&
+                     strategy != Deflater.FILTERED &&
+                     strategy != Deflater.HUFFMAN_ONLY )
+                        throw new IllegalArgumentException("Invalid compression strategy: " + strategy);
+                
+                compressionStrategy = strategy;
+        }
+        
+        public int getCompressionStrategy()
+        {
+                return compressionStrategy;
+        }
+        
+        /**
+         * Sets the policy deciding per element, whether it is compressed and
+         * at which level. With a policy the compFlag of the elements is only
+         * a hint to the policy.
+         * @param policy  the policy or null, if the compFlag of the elements
+         *                decides (default)
+         */
+        public synchronized void setCompressionPolicy(CompressionPolicy policy)
+        {
+                compressionPolicy = policy;
+        }
+        
+        public synchronized CompressionPolicy getCompressionPolicy()
+        {
+                return compressionPolicy;
+        }
+        
+        /**
+         * Returns the statistics of the elements written so far, stored and
+         * compressed ones
+         */
+        public CompressionStats getCompressionStats()
+        {
+                return compressionStats;
+        }
+        
+        /*
+         * Borrows a Deflater with the given level and the current strategy
+         * from the CodecPool; it must be given back with CodecPool.release()
+         */
+        private Deflater newDeflater(int level)
+        {
+                return CodecPool.borrowDeflater(level, compressionStrategy);
+        }
+        
+        /*
+         * Returns the Deflater level for an element or CompressionPolicy.STORED,
+         * if the element is written uncompressed
+         */
+        private int compressionLevel(AbstractArrayElement array) throws IOException
+        {
+                if ( compressionPolicy == null )
+                        return array.isCompressed() ? compressionLevel : CompressionPolicy.STORED;
+                
+                int level = compressionPolicy.getCompressionLevel(array, array.getTotalElementLength(),
+                                                                  sample(array, compressionPolicy.getSampleSize()),
+                                                                  compressionLevel);
+                
+                if ( level != CompressionPolicy.STORED && (level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION )
+                        throw new IllegalArgumentException("Invalid compression level: " + level);
+                
+                return level;
+        }
+        
+        /*
+         * Returns the first bytes (at most size) of the uncompressed element
+         */
+        private byte[] sample(AbstractArrayElement array, int size) throws IOException
+        {
+                SampleOutputStream s = new SampleOutputStream((int)Math.min(size, array.getTotalElementLength()));
+                
+                if ( s.buf.length > 0 )
+                {
+                        try {
+                                array.writeUncompressedTo(s, byte_order);
+                        }
+                        catch (SampleFullException e) {
+                                // the rest of the element is not needed
+                        }
+                }
+                
+                return (s.count == s.buf.length) ? s.buf : Arrays.copyOf(s.buf, s.count);
+        }
+        
+        /*
+         * Keeps the first bytes written to it and stops the writer, once
+         * its buffer is full
+         */
+        private static class SampleOutputStream extends OutputStream
+        {
+                byte[] buf;
+                int    count;
+                
+                SampleOutputStream(int size)
+                {
+                        buf = new byte[size];
+                }
+                
+                public void write(int b) throws IOException
+                {
+                        if ( count == buf.length )
+                                throw new SampleFullException();
+                        
+                        buf[count++] = (byte)b;
+                }
+                
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException
+                {
+                        int n = Math.min(len, buf.length - count);
+                        
+                        System.arraycopy(b, off, buf, count, n);
+                        count += n;
+                        
+                        if ( n < len )
+                                throw new SampleFullException();
+                }
+        }
+        
+        private static class SampleFullException extends IOException
+        {
+                private static final long serialVersionUID = 1L;
+        }
+        
+        /**
+         * Writes an array element to the file. The element is streamed to the
+         * file, i.e. it is not converted to a byte array in memory beforehand.
+         * Compressed elements are deflated on the fly; the size field of the
+         * miCOMPRESSED tag is patched once the compressed size is known.
+         */
+        public synchronized void write(AbstractArrayElement array)
+        {
+                if ( out == null )
+                {
+                        System.err.println("MxFileWriter::write: File is not open.");
+                        return;
+                }
+                
+                if ( stream != null )
+                {
+                        System.err.println("MxFileWriter::write: A streaming writer is open.");
+                        return;
+                }
+                
                 try {
-                        raFile.write(data);
+                        int level = compressionLevel(array);
+                        
+                        if ( level != CompressionPolicy.STORED )
+                        {
+                                writeCompressed(array, level);
+                        }
+                        else
+                        {
+                                array.writeUncompressedTo(out, byte_order);
+                                compressionStats.addStored(array.getTotalElementLength());
+                        }
+                        
+                        out.flush();
                 }
                 catch (IOException e) {
                         e.printStackTrace();
                 }
         }
         
-        public synchronized void write(AbstractArrayElement array)
+        private void writeCompressed(AbstractArrayElement array, int level) throws IOException
+        {
+                long tagPos = raFile.getFilePointer();
+                
+                // Place holder for the miCOMPRESSED tag; size is not known yet
+                DataTagField tag = new DataTagField(DataType.miCOMPRESSED, Integer.MAX_VALUE);
+                out.write(tag.toByteArray(byte_order));
+                
+                Deflater             deflater = newDeflater(level);
+                DeflaterOutputStream dos      = new DeflaterOutputStream(out, deflater, BUFFER_SIZE);
+                
+                try {
+                        array.writeUncompressedTo(dos, byte_order);
+                        dos.finish();
+                        out.flush();
+                }
+                finally {
+                        CodecPool.release(deflater);
+                }
+                
+                long endPos = raFile.getFilePointer();
+                
+                if ( endPos - tagPos - 8 > DataTagField.MAX_NUM_OF_BYTES )
+                        throw new IOException("Compressed element exceeds the maximum size of 4 GB");
+                
+                tag.setNumOfBytes(endPos - tagPos - 8);
+                
+                raFile.seek(tagPos);
+                raFile.write(tag.toByteArray(byte_order));
+                raFile.seek(endPos);
+                
+                compressionStats.addCompressed(array.getTotalElementLength(), endPos - tagPos);
+        }
+        
+        /**
+         * Starts a real double matrix that is written column by column
+         * (see MxStreamingNumericWriter). Until the returned writer is closed,
+         * no other variable can be written to this file.
+         * 
+         * @param name  name of the variable
+         * @param rows  number of rows of the matrix
+         * @return the writer taking the columns of the matrix
+         * @throws IOException if the file is not open or writing fails
+         */
+        public synchronized MxStreamingNumericWriter createStreamingWriter(String name, int rows) throws IOException
+        {
+                if ( out == null )
+                        throw new IOException("File is not open");
+                
+                if ( stream != null )
+                        throw new IllegalStateException("Another streaming writer is still open");
+                
+                if ( rows < 1 )
+                        throw new IllegalArgumentException("Invalid number of rows: " + rows);
+                
+                stream = new MxStreamingNumericWriter(this, name, rows);
+                
+                return stream;
+        }
+        
+        /**
+         * Writes a batch of array elements to the file. Compressed elements are
+         * deflated in parallel by tasks run on the given executor; all elements
+         * are written in the order of the collection. The compressed data of
+         * an element is held in memory until the element has been written.
+         * The compression policy, if any, is asked on the calling thread.
+         * 
+         * @param arrays    the elements to write
+         * @param executor  executes the compression tasks (e.g. a thread pool)
+         */
+        public synchronized void write(Collection<? extends AbstractArrayElement> arrays, Executor executor)
+        {
+                if ( out == null )
+                {
+                        System.err.println("MxFileWriter::write: File is not open.");
+                        return;
+                }
+                
+                if ( stream != null )
+                {
+                        System.err.println("MxFileWriter::write: A streaming writer is open.");
+                        return;
+                }
+                
+                List<FutureTask<byte[]>> tasks = new ArrayList<FutureTask<byte[]>>(arrays.size());
+                
+                int k = 0;
+                
+                try {
+                        for ( final AbstractArrayElement array : arrays )
+                        {
+                                FutureTask<byte[]> task = null;
+                                
+                                final int level = compressionLevel(array);
+                                
+                                if ( level != CompressionPolicy.STORED )
+                                {
+                                        task = new FutureTask<byte[]>(new Callable<byte[]>()
+                                        {
+                                                public byte[] call() throws IOException
+                                                {
+                                                        return deflate(array, level);
+                                                }
+                                        });
+                                        
+                                        executor.execute(task);
+                                }
+                                
+                                tasks.add(task);
+                        }
+                        
+                        for ( AbstractArrayElement array : arrays )
+                        {
+                                FutureTask<byte[]> task = tasks.get(k++);
+                                
+                                if ( task != null )
+                                {
+                                        byte[] compressedData = task.get();
+                                        
+                                        DataTagField tag = new DataTagField(DataType.miCOMPRESSED, compressedData.length);
+                                        out.write(tag.toByteArray(byte_order));
+                                        out.write(compressedData);
+                                        
+                                        compressionStats.addCompressed(array.getTotalElementLength(), 8 + compressedData.length);
+                                }
+                                else
+                                {
+                                        array.writeUncompressedTo(out, byte_order);
+                                        compressionStats.addStored(array.getTotalElementLength());
+                                }
+                        }
+                        
+                        out.flush();
+                }
+                catch (IOException e) {
+                        e.printStackTrace();
+                }
+                catch (ExecutionException e) {
+                        e.getCause().printStackTrace();
+                }
+                catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                }
+                finally {
+                        for ( FutureTask<byte[]> task : tasks )
+                                if ( task != null )
+                                        task.cancel(false);
+                }
+        }
+        
+        /**
+         * Returns the deflated bytes of an element (without miCOMPRESSED tag)
+         */
+        private byte[] deflate(AbstractArrayElement array, int level) throws IOException
         {
-                byte[] data = array.toByteArray(byte_order);
-                write(data);
+                ByteArrayOutputStream baos     = new ByteArrayOutputStream();
+                Deflater              deflater = newDeflater(level);
+                DeflaterOutputStream  dos      = new DeflaterOutputStream(baos, deflater, BUFFER_SIZE);
+                
+                try {
+                        array.writeUncompressedTo(dos, byte_order);
+                        dos.finish();
+                }
+                finally {
+                        CodecPool.release(deflater);
+                }
+                
+                return baos.toByteArray();
         }
         
         public synchronized void write(String name, double[] vec)
@@ -114,14 +611,32 @@ public class MxFileWriter
                 write(cellArray);
         }
         
-        public void close()
+        public synchronized void close()
         {
+                if ( raFile == null )
+                        return;
+                
+                try {
+                        // Patches the sizes of a matrix still being streamed
+                        if ( stream != null )
+                                stream.close();
+                        
+                        if ( out != null )
+                                out.flush();
+                }
+                catch (IOException e) {
+                        e.printStackTrace();
+                }
+                
                 try {
                         raFile.close();
                 }
                 catch (IOException e) {
                         e.printStackTrace();
                 }
+                
+                raFile = null;
+                out    = null;
         }
         
         public void flush()
@@ -133,6 +648,7 @@ public class MxFileWriter
         protected void finalize() throws Throwable
         {
                 super.finalize();
-                raFile.close();
+                if ( raFile != null )
+                        raFile.close();
         }
 }
@@ -0,0 +1,190 @@
+package io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Hashtable;
+
+import common.MxClassID;
+
+/**
+ * Sidecar index of a .mat file (stored as &lt;file&gt;.idx next to it).
+ * It keeps the entries of the index table built by MxFileReader, so the
+ * file does not need to be scanned (and compressed variables do not need
+ * to be inflated) again when the file is reopened.
+ * An index file is only valid as long as size and modification time of the
+ * .mat file are the same as at the time the index file has been written.
+ *
+ * |----------------------------------------------------|
+ * | MAGIC | VERSION | file length | file mtime |   n   |  header
+ * |----------------------------------------------------|
+ * | name | flags | class | dimensions | file position  |  n entries
+ * |----------------------------------------------------|
+ */
+class MxIndexFile
+{
+        private static final int MAGIC   = 0x4D584958; // "MXIX"
+        private static final int VERSION = 1;
+        
+        private static final String SUFFIX = ".idx";
+        
+        private static final int HEADERSIZE   = 28; // bytes of the header
+        private static final int MINENTRYSIZE = 22; // bytes of an entry with empty name and no dimensions
+        
+        private MxIndexFile()
+        {
+        }
+        
+        /**
+         * Returns the index file belonging to a .mat file
+         */
+        static File indexFileOf(File matFile)
+        {
+                return new File(matFile.getPath() + SUFFIX);
+        }
+        
+        /**
+         * Reads the index table of a .mat file from its index file.
+         * @return the index table or null, if there is no valid index file
+         */
+        static Hashtable<String,MxFileReader.MatElementInfo> read(File matFile)
+        {
+                File idxFile = indexFileOf(matFile);
+                
+                if ( !idxFile.isFile() )
+                        return null;
+                
+                DataInputStream in = null;
+                
+                try {
+                        in = new DataInputStream(new BufferedInputStream(new FileInputStream(idxFile)));
+                        
+                        if ( in.readInt() != MAGIC || in.readInt() != VERSION )
+                                return null;
+                        
+                        if ( in.readLong() != matFile.length() || in.readLong() != matFile.lastModified() )
+                                return null; // outdated
+                        
+                        long idxLength = idxFile.length();
+                        long matLength = matFile.length();
+                        
+                        int n = in.readInt();
+                        
+                        if ( n < 0 || n > (idxLength - HEADERSIZE) / MINENTRYSIZE )
+                                return null;
+                        
+                        Hashtable<String,MxFileReader.MatElementInfo> table =
+                                        new Hashtable<String,MxFileReader.MatElementInfo>();
+                        
+                        for ( int k = 0; k < n; k++ )
+                        {
+                                MxFileReader.MatElementInfo obj = new MxFileReader.MatElementInfo();
+                                
+                                obj.setName     ( in.readUTF()     );
+                                obj.setComplex  ( in.readBoolean() );
+                                obj.setGlobal   ( in.readBoolean() );
+                                obj.setLogical  ( in.readBoolean() );
+                                obj.setSparse   ( in.readBoolean() );
+                                obj.setClassID  ( MxClassID.get(in.readInt()) );
+                                
+                                int numDims = in.readInt();
+                                
+                                if ( numDims < 0 || numDims > idxLength / 4 )
+                                        return null;
+                                
+                                int[] dims = new int[numDims];
+                                for ( int i = 0; i < dims.length; i++ )
+                                        dims[i] = in.readInt();
+                                obj.setDimensions(dims);
+                                
+                                obj.position = in.readLong();
+                                
+                                if ( obj.position < 128 || obj.position >= matLength )
+                                        return null;
+                                
+                                table.put(obj.getName(), obj);
+                        }
+                        
+                        return table;
+                }
+                catch (IOException e) {
+                        // A corrupt index file is simply not used
+                        return null;
+                }
+                catch (RuntimeException e) {
+                        // dito
+                        return null;
+                }
+                finally {
+                        close(in);
+                }
+        }
+        
+        /**
+         * Writes the index table of a .mat file to its index file.
+         * @return true, if the index file has been written
+         */
+        static boolean write(File matFile, Hashtable<String,MxFileReader.MatElementInfo> table)
+        {
+                File idxFile = indexFileOf(matFile);
+                
+                DataOutputStream out = null;
+                
+                try {
+                        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(idxFile)));
+                        
+                        out.writeInt(MAGIC);
+                        out.writeInt(VERSION);
+                        out.writeLong(matFile.length());
+                        out.writeLong(matFile.lastModified());
+                        out.writeInt(table.size());
+                        
+                        for ( MxFileReader.MatElementInfo obj : table.values() )
+                        {
+                                out.writeUTF    ( obj.getName()   );
+                                out.writeBoolean( obj.isComplex() );
+                                out.writeBoolean( obj.isGlobal()  );
+                                out.writeBoolean( obj.isLogical() );
+                                out.writeBoolean( obj.isSparse()  );
+                                out.writeInt    ( obj.getClassID() == null ? 0 : obj.getClassID().getValue() );
+                                
+                                int[] dims = obj.getDimensions();
+                                out.writeInt(dims.length);
+                                for ( int i = 0; i < dims.length; i++ )
+                                        out.writeInt(dims[i]);
+                                
+                                out.writeLong(obj.position);
+                        }
+                        
+                        out.close();
+                        out = null;
+                        
+                        return true;
+                }
+                catch (IOException e) {
+                        System.err.println("MxIndexFile::write: Cannot write index file " + idxFile);
+                        close(out);
+                        idxFile.delete();
+                        return false;
+                }
+        }
+        
+        private static void close(Closeable c)
+        {
+                if ( c == null )
+                        return;
+                
+                try {
+                        c.close();
+                }
+                catch (IOException e) {
+                        e.printStackTrace();
+                }
+        }
+}
@@ -0,0 +1,181 @@
+package io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import common.DataTagField;
+import common.DataType;
+import common.MxClassID;
+import subelements.common.ArrayFlagsSubelement;
+import subelements.common.ArrayNameSubelement;
+import subelements.common.DimensionsArraySubelement;
+
+/**
+ * Writes a real double matrix with a fixed number of rows column by column,
+ * without knowing the number of columns in advance. The data is streamed to
+ * the file as it comes, i.e. memory use does not depend on the size of the
+ * matrix. The sizes of the element and the number of columns are patched
+ * when the writer is closed.
+ *
+ * The matrix is written uncompressed, since the patched fields would be part
+ * of the compressed data otherwise. No other variable can be written to the
+ * MxFileWriter while a MxStreamingNumericWriter is open.
+ *
+ * |-------------------------------------------------------------|
+ * | miMATRIX tag | flags | dims (rows, cols) | name | miDOUBLE tag | data ...
+ * |-------------------------------------------------------------|
+ *       ^                          ^                    ^
+ *       patched at close()         patched              patched
+ */
+public class MxStreamingNumericWriter implements Closeable
+{
+        private static final int CHUNKLENGTH = 8192; // elements converted at once
+        
+        private MxFileWriter writer;
+        private int          rows;
+        private long         numElements;
+        private ByteBuffer   buffer;
+        
+        private long         startPos;   // position of the miMATRIX tag
+        private long         dimsPos;    // position of the dimensions data
+        private long         realTagPos; // position of the miDOUBLE tag
+        private int          headerSize; // bytes from startPos to the first data item
+        
+        /*
+         * Writes the header of the element with 0 columns
+         * (called by MxFileWriter.createStreamingWriter)
+         */
+        MxStreamingNumericWriter(MxFileWriter writer, String name, int rows) throws IOException
+        {
+                this.writer      = writer;
+                this.rows        = rows;
+                this.numElements = 0;
+                this.buffer      = ByteBuffer.allocate(CHUNKLENGTH*8).order(writer.byte_order);
+                
+                byte[] flags = new ArrayFlagsSubelement(MxClassID.mxDOUBLE_CLASS).toByteArray(writer.byte_order);
+                byte[] dims  = new DimensionsArraySubelement(new int[] {rows,0}).toByteArray(writer.byte_order);
+                byte[] label = new ArrayNameSubelement(name).toByteArray(writer.byte_order);
+                
+                writer.out.flush();
+                
+                startPos   = writer.raFile.getFilePointer();
+                dimsPos    = startPos + 8 + flags.length + 8;
+                realTagPos = startPos + 8 + flags.length + dims.length + label.length;
+                headerSize = (int)(realTagPos - startPos) + 8;
+                
+                writer.out.write(tag(DataType.miMATRIX, headerSize - 8));
+                writer.out.write(flags);
+                writer.out.write(dims);
+                writer.out.write(label);
+                writer.out.write(tag(DataType.miDOUBLE, 0));
+        }
+        
+        /**
+         * Returns the number of rows of the matrix
+         */
+        public int getRows()
+        {
+                return rows;
+        }
+        
+        /**
+         * Returns the number of data items written so far
+         */
+        public long getNumElements()
+        {
+                synchronized (writer)
+                {
+                        return numElements;
+                }
+        }
+        
+        /**
+         * Appends a column to the matrix
+         * @param column  the column, its length must be the number of rows
+         */
+        public void writeColumn(double[] column) throws IOException
+        {
+                if ( column.length != rows )
+                        throw new IllegalArgumentException("Column must have " + rows + " elements");
+                
+                write(column, 0, column.length);
+        }
+        
+        /**
+         * Appends data items to the matrix in column-major order.
+         * A column may be split across several calls.
+         */
+        public void write(double[] data, int off, int len) throws IOException
+        {
+                synchronized (writer)
+                {
+                        if ( writer.stream != this )
+                                throw new IOException("MxStreamingNumericWriter is closed");
+                        
+                        if ( headerSize + (numElements + len) * 8 > DataTagField.MAX_NUM_OF_BYTES )
+                                throw new IOException("Matrix exceeds the maximum element size of a .mat file");
+                        
+                        for ( int i = 0; i < len; i += CHUNKLENGTH )
+                        {
+                                int n = Math.min(CHUNKLENGTH, len-i);
+                                
+                                buffer.clear();
+                                buffer.asDoubleBuffer().put(data, off+i, n);
+                                
+                                writer.out.write(buffer.array(), 0, n*8);
+                        }
+                        
+                        numElements += len;
+                }
+        }
+        
+        /**
+         * Completes the matrix: an incomplete last column is filled up with
+         * zeros and the sizes and the number of columns are written.
+         * The MxFileWriter can be used for other variables afterwards.
+         */
+        public void close() throws IOException
+        {
+                synchronized (writer)
+                {
+                        if ( writer.stream != this )
+                                return;
+                        
+                        int rest = (int)(numElements % rows);
+                        
+                        if ( rest != 0 )
+                        {
+                                System.err.println("MxStreamingNumericWriter::close: Last column is filled up with zeros.");
+                                write(new double[rows - rest], 0, rows - rest);
+                        }
+                        
+                        writer.stream = null;
+                        writer.out.flush();
+                        
+                        long endPos = writer.raFile.getFilePointer();
+                        int  cols   = (int)(numElements / rows);
+                        
+                        ByteBuffer dims = ByteBuffer.allocate(8).order(writer.byte_order);
+                        dims.putInt(rows).putInt(cols);
+                        
+                        writer.raFile.seek(startPos);
+                        writer.raFile.write(tag(DataType.miMATRIX, endPos - startPos - 8));
+                        writer.raFile.seek(dimsPos);
+                        writer.raFile.write(dims.array());
+                        writer.raFile.seek(realTagPos);
+                        writer.raFile.write(tag(DataType.miDOUBLE, numElements * 8));
+                        writer.raFile.seek(endPos);
+                }
+        }
+        
+        /*
+         * Returns a tag in its long (8 byte) form, also for sizes <= 4
+         */
+        private byte[] tag(DataType type, long size)
+        {
+                ByteBuffer b = ByteBuffer.allocate(8).order(writer.byte_order);
+                b.putInt(type.getIndex()).putInt((int)size); // unsigned 32-bit size
+                return b.array();
+        }
+}
@@ -4,6 +4,7 @@ import java.io.EOFException;
 import java.io.FilterInputStream;
 import java.io.InputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
 /**
@@ -17,6 +18,7 @@ import java.nio.ByteOrder;
 public class MyDataInputStream extends FilterInputStream
 {
         private ByteOrder    byteOrder;
+        private boolean      views;
         
         /**
          * Creates a MyDataInputStream that uses the specified
@@ -26,9 +28,24 @@ public class MyDataInputStream extends FilterInputStream
          * @param  byteOrder   the byte order to assume when reading short, int, ...
          */
         public MyDataInputStream(InputStream in, ByteOrder byteOrder)
+        {
+                this(in,byteOrder,false);
+        }
+        
+        /**
+         * Creates a MyDataInputStream that uses the specified
+         * underlying InputStream and byte order.
+         *
+         * @param  in          the specified input stream
+         * @param  byteOrder   the byte order to assume when reading short, int, ...
+         * @param  views       if true, readView(int) hands out views of the
+         *                     underlying data instead of copies where possible
+         */
+        public MyDataInputStream(InputStream in, ByteOrder byteOrder, boolean views)
         {
                 super(in);
                 this.byteOrder = byteOrder;
+                this.views     = views;
         }
         
         /**
@@ -39,6 +56,73 @@ public class MyDataInputStream extends FilterInputStream
                 return byteOrder;
         }
         
+        /**
+         * Reads the next <code>len</code> bytes as a view of the memory mapped
+         * file underlying this stream, i.e. without copying them.
+         * The view has the byte order of this stream.
+         *
+         * @param      len   the number of bytes to read.
+         * @return     the view or null, if views are not enabled for this stream
+         *             or not supported by the contained input stream; no bytes
+         *             have been read in this case.
+         */
+        public final ByteBuffer readView(int len)
+        {
+                if ( !views || !(in instanceof MappedFileInputStream) )
+                        return null;
+                
+                ByteBuffer view = ((MappedFileInputStream)in).slice(len);
+                
+                return (view != null) ? view.order(byteOrder) : null;
+        }
+        
+        /**
+         * See the general contract of the <code>readFully</code>
+         * method of <code>DataInput</code>.
+         * <p>
+         * Bytes for this operation are read from the contained input stream.
+         *
+         * @param      b   the buffer into which the data is read.
+         * @exception  EOFException  if this input stream reaches the end before
+         *             reading all the bytes.
+         * @exception  IOException   the stream has been closed and the contained
+         *             input stream does not support reading after close, or
+         *             another I/O error occurs.
+         * @see        java.io.FilterInputStream#in
+         */
+        public final void readFully(byte[] b) throws IOException
+        {
+                readFully(b, 0, b.length);
+        }
+        
+        /**
+         * See the general contract of the <code>readFully</code>
+         * method of <code>DataInput</code>.
+         * <p>
+         * Bytes for this operation are read from the contained input stream.
+         *
+         * @param      b     the buffer into which the data is read.
+         * @param      off   the start offset of the data.
+         * @param      len   the number of bytes to read.
+         * @exception  EOFException  if this input stream reaches the end before
+         *             reading all the bytes.
+         * @exception  IOException   the stream has been closed and the contained
+         *             input stream does not support reading after close, or
+         *             another I/O error occurs.
+         * @see        java.io.FilterInputStream#in
+         */
+        public final void readFully(byte[] b, int off, int len) throws IOException
+        {
+                int n = 0;
+                while (n < len)
+                {
+                        int count = in.read(b, off + n, len - n);
+                        if (count < 0) // Test for EOF
+                                throw new EOFException();
+                        n += count;
+                }
+        }
+        
         /**
          * See the general contract of the <code>readBoolean</code>
          * method of <code>DataInput</code>.
@@ -12,17 +12,17 @@ import java.io.RandomAccessFile;
 public class RandomAccessFileInputStream extends InputStream
 {
         private RandomAccessFile  file;
-        private int               readlimit;
+        private long              readlimit;
         private long              markpos = 0;
         
         public RandomAccessFileInputStream(RandomAccessFile file)
         {
                 this.file  = file;
                 
-                int limit = Integer.MAX_VALUE;
+                long limit = Long.MAX_VALUE;
                 
                 try {
-                        limit = (int)(file.length()-file.getFilePointer());
+                        limit = file.length()-file.getFilePointer();
                 }
                 catch (IOException e) {
                         e.printStackTrace();
@@ -31,7 +31,7 @@ public class RandomAccessFileInputStream extends InputStream
                 this.readlimit = limit;
         }
         
-        public RandomAccessFileInputStream(RandomAccessFile file, int limit)
+        public RandomAccessFileInputStream(RandomAccessFile file, long limit)
         {
                 this.file      = file;
                 this.readlimit = limit;
@@ -50,10 +50,27 @@ public class RandomAccessFileInputStream extends InputStream
                 return i;
         }
         
+        @Override
+        public synchronized int read(byte[] b, int off, int len) throws IOException
+        {
+                if ( len == 0 )
+                        return 0;
+                
+                if ( readlimit <= 0 )
+                        return -1;
+                
+                int n = file.read(b, off, (int)Math.min(len, readlimit));
+                
+                if ( n > 0 )
+                        readlimit -= n;
+                
+                return n;
+        }
+        
         @Override
         public int available() throws IOException
         {
-                return (int)(file.length() - file.getFilePointer());
+                return (int)Math.min(file.length() - file.getFilePointer(), Integer.MAX_VALUE);
         }
         
         /**
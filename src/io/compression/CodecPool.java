@@ -0,0 +1,98 @@
+package io.compression;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Bounded pool of Inflater and Deflater instances shared by all readers and
+ * writers. Setting up the native zlib state of an Inflater or Deflater costs
+ * more than decoding a small element, and the state is only freed by end()
+ * or the garbage collector. Instances are therefore borrowed for one
+ * compressed element and given back afterwards, where they are reset for
+ * the next element.
+ *
+ * At most MAXPOOLED instances of each kind are kept; instances given back
+ * to a full pool are ended. An instance must not be used after it has been
+ * given back.
+ */
+public final class CodecPool
+{
+        private static final int MAXPOOLED = Math.max(4, 2*Runtime.getRuntime().availableProcessors());
+        
+        private static final BlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<Inflater>(MAXPOOLED);
+        private static final BlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<Deflater>(MAXPOOLED);
+        
+        private CodecPool()
+        {
+        }
+        
+        /**
+         * Returns an Inflater from the pool or a new one, if the pool is empty
+         */
+        public static Inflater borrowInflater()
+        {
+                Inflater inflater = inflaters.poll();
+                
+                return (inflater != null) ? inflater : new Inflater();
+        }
+        
+        /**
+         * Gives an Inflater back to the pool
+         */
+        public static void release(Inflater inflater)
+        {
+                inflater.reset();
+                
+                if ( !inflaters.offer(inflater) )
+                        inflater.end();
+        }
+        
+        /**
+         * Returns a Deflater from the pool or a new one, if the pool is empty
+         * 
+         * @param level     compression level (see Deflater.setLevel)
+         * @param strategy  compression strategy (see Deflater.setStrategy)
+         */
+        public static Deflater borrowDeflater(int level, int strategy)
+        {
+                Deflater deflater = deflaters.poll();
+                
+                if ( deflater == null )
+                        deflater = new Deflater(level);
+                else
+                        deflater.setLevel(level);
+                
+                deflater.setStrategy(strategy);
+                
+                return deflater;
+        }
+        
+        /**
+         * Gives a Deflater back to the pool
+         */
+        public static void release(Deflater deflater)
+        {
+                deflater.reset();
+                
+                if ( !deflaters.offer(deflater) )
+                        deflater.end();
+        }
+        
+        /**
+         * Returns the number of pooled Inflaters (currently not borrowed)
+         */
+        public static int getPooledInflaters()
+        {
+                return inflaters.size();
+        }
+        
+        /**
+         * Returns the number of pooled Deflaters (currently not borrowed)
+         */
+        public static int getPooledDeflaters()
+        {
+                return deflaters.size();
+        }
+}
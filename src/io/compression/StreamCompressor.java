@@ -4,34 +4,88 @@ import java.io.ByteArrayOutputStream;
 //import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 
 /**
+ * Deflates bytes into memory. The Deflater is borrowed from the CodecPool
+ * and given back by toByteAray() or close().
  *
  * @author Boris Dortschy (<a href="mailto:bodo.pub@gmail.com">bodo.pub@gmail.com</a>)
  *
  */
 public class StreamCompressor extends OutputStream
 {
+        private static final int BUFFER_SIZE = 8192;
+        
         ByteArrayOutputStream   baos;
         DeflaterOutputStream    dos;
+        Deflater                deflater;
+        byte[]                  single = new byte[1];
         
         public StreamCompressor()
+        {
+                this(Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+        }
+        
+        /**
+         * @param level     compression level (see Deflater.setLevel)
+         * @param strategy  compression strategy (see Deflater.setStrategy)
+         */
+        public StreamCompressor(int level, int strategy)
         {
                 baos       = new ByteArrayOutputStream();
-                dos        = new DeflaterOutputStream(baos);
+                deflater   = CodecPool.borrowDeflater(level, strategy);
+                dos        = new DeflaterOutputStream(baos, deflater, BUFFER_SIZE);
         }
         
         public synchronized void write(int b) throws IOException
         {
-                dos.write(b); // b -> dos -> baos
+                ensureOpen();
+                single[0] = (byte)b;
+                dos.write(single, 0, 1); // b -> dos -> baos
         }
         
-        public byte[] toByteAray() throws IOException
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException
         {
-                dos.close();
+                ensureOpen();
+                dos.write(b, off, len);
+        }
+        
+        public synchronized byte[] toByteAray() throws IOException
+        {
+                if ( deflater != null )
+                {
+                        dos.finish();
+                        release();
+                }
                 baos.close();
                 byte[] compressedBytes = baos.toByteArray();
                 return compressedBytes;
         }
+        
+        @Override
+        public synchronized void close() throws IOException
+        {
+                release();
+        }
+        
+        private void ensureOpen() throws IOException
+        {
+                if ( deflater == null )
+                        throw new IOException("StreamCompressor is closed");
+        }
+        
+        /*
+         * Gives the Deflater back to the pool
+         */
+        private void release()
+        {
+                if ( deflater != null )
+                {
+                        CodecPool.release(deflater);
+                        deflater = null;
+                }
+        }
 }
@@ -2,38 +2,233 @@ package io.compression;
 
 import io.RandomAccessFileInputStream;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
-import java.util.zip.InflaterInputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
 
 /**
+ * Inflates the data of a miCOMPRESSED element. The compressed bytes are read
+ * and inflated in blocks: small reads (e.g. the single bytes of a tag) are
+ * served from a block of inflated bytes, large reads are inflated directly
+ * into the destination array.
+ *
+ * The Inflater is borrowed from the CodecPool and given back as soon as the
+ * end of the compressed data is reached or the stream is closed.
  *
  * @author Boris Dortschy (<a href="mailto:bodo.pub@gmail.com">bodo.pub@gmail.com</a>)
  *
  */
 public class StreamDecompressor extends InputStream
 {
-        private InflaterInputStream  iis;
+        private static final int BUFFER_SIZE = 8192;
+        
+        private InputStream  in;
+        private Inflater     inflater;  // null, once given back to the pool
+        private byte[]       input;     // compressed bytes
+        private byte[]       output;    // inflated bytes, output[outPos:outLimit-1] not read yet
+        private int          outPos;
+        private int          outLimit;
+        private long         position;  // decompressed bytes read or skipped
         
         public StreamDecompressor(InputStream is)
         {
-                this.iis  = new InflaterInputStream(is);
+                this.in       = is;
+                this.inflater = CodecPool.borrowInflater();
+                this.input    = new byte[BUFFER_SIZE];
+                this.output   = new byte[BUFFER_SIZE];
         }
         
-        public StreamDecompressor(RandomAccessFile raFile, int limit)
+        public StreamDecompressor(RandomAccessFile raFile, long limit)
         {
                 this(new RandomAccessFileInputStream(raFile,limit));
         }
         
+        /**
+         * Returns the position of the next byte to read
+         * within the decompressed data
+         */
+        public long getPosition()
+        {
+                return position;
+        }
+        
         public int read() throws IOException
         {
-                return iis.read();
+                if ( outPos >= outLimit && !fill() )
+                        return -1;
+                
+                position++;
+                
+                return output[outPos++] & 0xFF;
+        }
+        
+        /**
+         * Reads len bytes or, at the end of the compressed data, the remaining
+         * bytes. Unlike the general contract of InputStream, the read is not
+         * cut short at a block boundary, since the decoders of the elements
+         * rely on complete reads.
+         * @return the number of bytes read or -1 at the end of the compressed data
+         */
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+                if ( len == 0 )
+                        return 0;
+                
+                int n = 0;
+                
+                while ( n < len )
+                {
+                        int k = readBlock(b, off + n, len - n);
+                        
+                        if ( k < 0 )
+                                break;
+                        
+                        n += k;
+                }
+                
+                return (n == 0) ? -1 : n;
+        }
+        
+        /*
+         * Reads at most one block; the number of bytes read may be less than len
+         */
+        private int readBlock(byte[] b, int off, int len) throws IOException
+        {
+                if ( len == 0 )
+                        return 0;
+                
+                int n;
+                
+                if ( outPos < outLimit )
+                {
+                        n = Math.min(len, outLimit - outPos);
+                        System.arraycopy(output, outPos, b, off, n);
+                        outPos += n;
+                }
+                else if ( len >= BUFFER_SIZE )
+                {
+                        // Large reads are inflated directly into the destination array
+                        n = inflate(b, off, len);
+                        if ( n < 0 )
+                                return -1;
+                }
+                else
+                {
+                        if ( !fill() )
+                                return -1;
+                        n = Math.min(len, outLimit);
+                        System.arraycopy(output, 0, b, off, n);
+                        outPos = n;
+                }
+                
+                position += n;
+                
+                return n;
+        }
+        
+        @Override
+        public long skip(long n) throws IOException
+        {
+                long k = 0;
+                
+                while ( k < n )
+                {
+                        if ( outPos >= outLimit && !fill() )
+                                break;
+                        
+                        int m = (int)Math.min(n - k, outLimit - outPos);
+                        outPos += m;
+                        k      += m;
+                }
+                
+                position += k;
+                
+                return k;
+        }
+        
+        @Override
+        public int available() throws IOException
+        {
+                return outLimit - outPos;
         }
         
         @Override
         public void close() throws IOException
         {
-                iis.close();
+                end();
+                in.close();
+        }
+        
+        /**
+         * Gives the Inflater back to the pool without closing the underlying
+         * stream. No more bytes can be inflated afterwards; bytes inflated
+         * already can still be read.
+         */
+        public void end()
+        {
+                if ( inflater != null )
+                {
+                        CodecPool.release(inflater);
+                        inflater = null;
+                }
+        }
+        
+        /*
+         * Inflates the next block into the output buffer
+         * @return false, if the end of the compressed data is reached
+         */
+        private boolean fill() throws IOException
+        {
+                int n = inflate(output, 0, output.length);
+                
+                outPos   = 0;
+                outLimit = Math.max(n, 0);
+                
+                return n > 0;
+        }
+        
+        /*
+         * Inflates at most len bytes into b[off:off+len-1]
+         * @return the number of bytes inflated or -1 at the end of the compressed data
+         */
+        private int inflate(byte[] b, int off, int len) throws IOException
+        {
+                if ( inflater == null )
+                        return -1;
+                
+                try {
+                        int n;
+                        
+                        while ( (n = inflater.inflate(b, off, len)) == 0 )
+                        {
+                                if ( inflater.finished() || inflater.needsDictionary() )
+                                {
+                                        end();
+                                        return -1;
+                                }
+                                
+                                if ( inflater.needsInput() )
+                                {
+                                        int k = in.read(input, 0, input.length);
+                                        if ( k < 0 )
+                                                throw new EOFException("Unexpected end of compressed data");
+                                        inflater.setInput(input, 0, k);
+                                }
+                        }
+                        
+                        if ( inflater.finished() )
+                                end();
+                        
+                        return n;
+                }
+                catch (DataFormatException e) {
+                        String s = e.getMessage();
+                        throw new ZipException(s != null ? s : "Invalid compressed data format");
+                }
         }
 }
@@ -36,12 +36,19 @@ public class CompressedDataElement extends AbstractDataElement
                 try {
                         streamCompressor.write(dataObj);
                         b = streamCompressor.toByteAray();
-                        streamCompressor.close();
                 }
                 catch (IOException e) {
                         e.printStackTrace();
                         return null;
                 }
+                finally {
+                        try {
+                                streamCompressor.close();
+                        }
+                        catch (IOException e) {
+                                e.printStackTrace();
+                        }
+                }
                 
                 // Adjust data tag, since only right now we know the final
                 // size of the data.
@@ -1,5 +1,7 @@
 package subelements.base;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteOrder;
 import java.util.Arrays;
 
@@ -11,6 +13,7 @@ import java.util.Arrays;
 public class BooleanArray implements DataArray
 {
         final private int FIELDLENGTH = 1;
+        final private int CHUNKLENGTH = 8192; // elements converted at once by writeTo()
         
         private boolean[] data_array;
         
@@ -57,6 +60,31 @@ public class BooleanArray implements DataArray
                 return b;
         }
         
+        /**
+         * Writes the same bytes as dataToByteArray(ByteOrder) to an output
+         * stream, without building the complete byte-array in memory.
+         * 
+         * @param out         the stream to write the boolean-data to
+         * @param byte_order  the byte-order assumed for the boolean data items
+         * @throws IOException if writing to the stream fails
+         */
+        public void writeTo(OutputStream out, ByteOrder byte_order) throws IOException
+        {
+                int len = data_array.length;
+                
+                byte[] b = new byte[Math.min(len,CHUNKLENGTH)*FIELDLENGTH];
+                
+                for ( int i = 0; i < len; i += CHUNKLENGTH )
+                {
+                        int n = Math.min(CHUNKLENGTH, len-i);
+                        
+                        for ( int k = 0; k < n; k++ )
+                                b[k] = (byte)(data_array[i+k]==true ? 1:0);
+                        
+                        out.write(b, 0, n*FIELDLENGTH);
+                }
+        }
+        
         /* (non-Javadoc)
          * @see java.lang.Object#hashCode()
          */
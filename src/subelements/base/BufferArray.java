@@ -0,0 +1,305 @@
+package subelements.base;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import common.DataType;
+
+/**
+ * DataArray backed by a ByteBuffer instead of a Java array, e.g. by a view
+ * of a memory mapped file. The data items are kept in their encoded form
+ * (data type and byte order as found in the file) and are only converted
+ * when accessed, i.e. creating a BufferArray does not copy any data.
+ *
+ * A BufferArray is only valid as long as the content of its buffer does
+ * not change. Use toDataArray() to get an independent copy.
+ */
+public class BufferArray implements DataArray
+{
+        final private int CHUNKLENGTH = 65536; // bytes copied at once by writeTo()
+        
+        private ByteBuffer buffer;
+        private DataType   type;
+        
+        /**
+         * @param buffer  the bytes of the data items (from position to limit)
+         *                in the byte order of the buffer
+         * @param type    the data type of the items, one of the numeric
+         *                types miINT8 ... miUINT64, miSINGLE or miDOUBLE
+         */
+        public BufferArray(ByteBuffer buffer, DataType type)
+        {
+                if ( !type.isNumericType() )
+                        throw new IllegalArgumentException("BufferArray: Unsupported data type " + type);
+                
+                this.buffer = buffer.slice().order(buffer.order());
+                this.type   = type;
+        }
+        
+        public DataType getDataType()
+        {
+                return type;
+        }
+        
+        public ByteOrder getByteOrder()
+        {
+                return buffer.order();
+        }
+        
+        /**
+         * Returns a read-only view of the underlying bytes
+         */
+        public ByteBuffer getBuffer()
+        {
+                return buffer.asReadOnlyBuffer().order(buffer.order());
+        }
+        
+        public int length()
+        {
+                return buffer.capacity() / type.sizeOf();
+        }
+        
+        /**
+         * Returns the i-th data item converted to double; unsigned types
+         * are interpreted as unsigned.
+         */
+        public double getDouble(int i)
+        {
+                int offset = i * type.sizeOf();
+                
+                switch (type)
+                {
+                        case miINT8:   return buffer.get(offset);
+                        case miUINT8:  return buffer.get(offset) & 0xFF;
+                        case miINT16:  return buffer.getShort(offset);
+                        case miUINT16: return buffer.getChar(offset);
+                        case miINT32:  return buffer.getInt(offset);
+                        case miUINT32: return buffer.getInt(offset) & 0xFFFFFFFFL;
+                        case miINT64:  return buffer.getLong(offset);
+                        case miUINT64: return unsignedToDouble(buffer.getLong(offset));
+                        case miSINGLE: return buffer.getFloat(offset);
+                        default:       return buffer.getDouble(offset);
+                }
+        }
+        
+        /**
+         * Returns the i-th data item of an integer type as long; unsigned
+         * types are interpreted as unsigned (except for miUINT64, which
+         * returns the raw 64 bits).
+         */
+        public long getLong(int i)
+        {
+                int offset = i * type.sizeOf();
+                
+                switch (type)
+                {
+                        case miINT8:   return buffer.get(offset);
+                        case miUINT8:  return buffer.get(offset) & 0xFF;
+                        case miINT16:  return buffer.getShort(offset);
+                        case miUINT16: return buffer.getChar(offset);
+                        case miINT32:  return buffer.getInt(offset);
+                        case miUINT32: return buffer.getInt(offset) & 0xFFFFFFFFL;
+                        case miINT64:
+                        case miUINT64: return buffer.getLong(offset);
+                        case miSINGLE: return (long)buffer.getFloat(offset);
+                        default:       return (long)buffer.getDouble(offset);
+                }
+        }
+        
+        /**
+         * Copies <code>len</code> data items, starting with item
+         * <code>index</code>, converted to double into <code>dst</code>.
+         */
+        public void getDoubles(int index, double[] dst, int off, int len)
+        {
+                if ( type == DataType.miDOUBLE )
+                {
+                        ByteBuffer b = buffer.duplicate().order(buffer.order());
+                        b.position(index * 8);
+                        b.asDoubleBuffer().get(dst, off, len);
+                        return;
+                }
+                
+                for ( int k = 0; k < len; k++ )
+                        dst[off+k] = getDouble(index+k);
+        }
+        
+        /**
+         * Returns the data as heap based DataArray, i.e. as the same object
+         * decoding the data into memory would give (ByteArray for miINT8 and
+         * miUINT8, ShortArray for miINT16, CharArray for miUINT16, IntArray
+         * for miINT32 and miUINT32, LongArray for miINT64 and miUINT64,
+         * FloatArray for miSINGLE and DoubleArray for miDOUBLE).
+         */
+        public DataArray toDataArray()
+        {
+                ByteBuffer b = buffer.duplicate().order(buffer.order());
+                int        n = length();
+                
+                switch (type)
+                {
+                        case miINT8:
+                        case miUINT8:
+                        {
+                                byte[] arr = new byte[n];
+                                b.get(arr);
+                                return new ByteArray(arr);
+                        }
+                        case miINT16:
+                        {
+                                short[] arr = new short[n];
+                                b.asShortBuffer().get(arr);
+                                return new ShortArray(arr);
+                        }
+                        case miUINT16:
+                        {
+                                char[] arr = new char[n];
+                                b.asCharBuffer().get(arr);
+                                return new CharArray(arr);
+                        }
+                        case miINT32:
+                        case miUINT32:
+                        {
+                                int[] arr = new int[n];
+                                b.asIntBuffer().get(arr);
+                                return new IntArray(arr);
+                        }
+                        case miINT64:
+                        case miUINT64:
+                        {
+                                long[] arr = new long[n];
+                                b.asLongBuffer().get(arr);
+                                return new LongArray(arr);
+                        }
+                        case miSINGLE:
+                        {
+                                float[] arr = new float[n];
+                                b.asFloatBuffer().get(arr);
+                                return new FloatArray(arr);
+                        }
+                        default:
+                        {
+                                double[] arr = new double[n];
+                                b.asDoubleBuffer().get(arr);
+                                return new DoubleArray(arr);
+                        }
+                }
+        }
+        
+        public byte[] dataToByteArray(ByteOrder byte_order)
+        {
+                byte[] b = new byte[buffer.capacity()];
+                
+                buffer.duplicate().get(b);
+                
+                if ( byte_order != buffer.order() )
+                        swapBytes(b, b.length);
+                
+                return b;
+        }
+        
+        /**
+         * Writes the same bytes as dataToByteArray(ByteOrder) to an output
+         * stream. If the byte order matches the one of the buffer, the bytes
+         * are transferred as they are.
+         *
+         * @param out         the stream to write the data to
+         * @param byte_order  the byte-order assumed for the data items
+         * @throws IOException if writing to the stream fails
+         */
+        public void writeTo(OutputStream out, ByteOrder byte_order) throws IOException
+        {
+                boolean swap = byte_order != buffer.order();
+                
+                if ( buffer.hasArray() && !swap )
+                {
+                        out.write(buffer.array(), buffer.arrayOffset(), buffer.capacity());
+                        return;
+                }
+                
+                ByteBuffer src = buffer.duplicate();
+                byte[]     b   = new byte[Math.min(src.remaining(),CHUNKLENGTH)];
+                
+                while ( src.hasRemaining() )
+                {
+                        int n = Math.min(b.length, src.remaining());
+                        
+                        src.get(b, 0, n);
+                        
+                        if ( swap )
+                                swapBytes(b, n);
+                        
+                        out.write(b, 0, n);
+                }
+        }
+        
+        /*
+         * Reverses the bytes of each data item in b[0:len-1]
+         * (len is a multiple of the item size)
+         */
+        private void swapBytes(byte[] b, int len)
+        {
+                int size = type.sizeOf();
+                
+                for ( int i = 0; i < len; i += size )
+                {
+                        for ( int lo = i, hi = i + size - 1; lo < hi; lo++, hi-- )
+                        {
+                                byte tmp = b[lo];
+                                b[lo] = b[hi];
+                                b[hi] = tmp;
+                        }
+                }
+        }
+        
+        private static double unsignedToDouble(long value)
+        {
+                double d = (double)(value >>> 1) * 2.0;
+                return d + (value & 1);
+        }
+        
+        /* (non-Javadoc)
+         * @see java.lang.Object#hashCode()
+         */
+        @Override
+        public int hashCode() {
+                final int prime = 31;
+                int result = 1;
+                result = prime * result + type.hashCode();
+                result = prime * result + toDataArray().hashCode();
+                return result;
+        }
+        
+        /* (non-Javadoc)
+         * @see java.lang.Object#equals(java.lang.Object)
+         */
+        @Override
+        public boolean equals(Object obj)
+        {
+                if (this == obj)
+                        return true;
+                
+                if (obj == null)
+                        return false;
+                
+                if (getClass() != obj.getClass())
+                        return false;
+                
+                BufferArray other = (BufferArray) obj;
+                
+                if (type != other.type)
+                        return false;
+                
+                if (buffer.order() == other.buffer.order())
+                        return buffer.equals(other.buffer);
+                
+                return toDataArray().equals(other.toDataArray());
+        }
+        
+        public DoubleArray toDoubleArray(boolean isSigned)
+        {
+                return toDataArray().toDoubleArray(isSigned);
+        }
+}
@@ -1,5 +1,7 @@
 package subelements.base;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteOrder;
 import java.util.Arrays;
 
@@ -57,6 +59,19 @@ public class ByteArray implements DataArray
                 return b;
         }
         
+        /**
+         * Writes the same bytes as dataToByteArray(ByteOrder) to an output
+         * stream, without building the complete byte-array in memory.
+         * 
+         * @param out         the stream to write the byte-data to
+         * @param byte_order  the byte-order assumed for the byte data items
+         * @throws IOException if writing to the stream fails
+         */
+        public void writeTo(OutputStream out, ByteOrder byte_order) throws IOException
+        {
+                out.write(data_array);
+        }
+        
         /* (non-Javadoc)
          * @see java.lang.Object#hashCode()
          */
@@ -67,7 +82,7 @@ public class ByteArray implements DataArray
                 result = prime * result + Arrays.hashCode(data_array);
                 return result;
         }
-
+        
         /* (non-Javadoc)
          * @see java.lang.Object#equals(java.lang.Object)
          */
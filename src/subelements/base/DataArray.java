@@ -1,6 +1,8 @@
 package subelements.base;
 
 //import java.lang.Cloneable;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteOrder;
 
 /**
@@ -14,6 +16,12 @@ public interface DataArray // extends Cloneable
         
         byte[] dataToByteArray(ByteOrder byte_order);
         
+        /**
+         * Writes the same bytes as dataToByteArray(ByteOrder) to a stream
+         * without building the complete byte-array in memory.
+         */
+        void writeTo(OutputStream out, ByteOrder byte_order) throws IOException;
+        
         /**
          * @param isSigned  if true, the DataArray internal data is assumed
          *                  to represent signed values; if false,
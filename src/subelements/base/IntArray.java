@@ -1,5 +1,8 @@
 package subelements.base;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Arrays;
 
@@ -13,6 +16,7 @@ import java.util.Arrays;
 public class IntArray implements DataArray
 {
         final private int FIELDLENGTH = 4;
+        final private int CHUNKLENGTH = 8192; // elements converted at once by writeTo()
         
         private int[] data_array;
         
@@ -85,6 +89,32 @@ public class IntArray implements DataArray
                 return b;
         }
         
+        /**
+         * Writes the same bytes as dataToByteArray(ByteOrder) to an output
+         * stream, without building the complete byte-array in memory.
+         * 
+         * @param out         the stream to write the int-data to
+         * @param byte_order  the byte-order assumed for the int data items
+         * @throws IOException if writing to the stream fails
+         */
+        public void writeTo(OutputStream out, ByteOrder byte_order) throws IOException
+        {
+                int len = data_array.length;
+                
+                byte[]     b   = new byte[Math.min(len,CHUNKLENGTH)*FIELDLENGTH];
+                ByteBuffer buf = ByteBuffer.wrap(b).order(byte_order);
+                
+                for ( int i = 0; i < len; i += CHUNKLENGTH )
+                {
+                        int n = Math.min(CHUNKLENGTH, len-i);
+                        
+                        buf.clear();
+                        buf.asIntBuffer().put(data_array, i, n);
+                        
+                        out.write(b, 0, n*FIELDLENGTH);
+                }
+        }
+        
         /* (non-Javadoc)
          * @see java.lang.Object#hashCode()
          */
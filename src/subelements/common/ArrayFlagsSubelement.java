@@ -105,7 +105,7 @@ public class ArrayFlagsSubelement extends AbstractDataElement
          */
         public byte[] dataToByteArray(ByteOrder byte_order)
         {
-                byte[] b = new byte[super.getDataLength()];
+                byte[] b = new byte[byteArrayLength(super.getDataLength())];
                 
                 byte flags = 0;
                 flags |= (flag_SPARSE  == true) ? 0x10 : 0x00;
@@ -143,7 +143,15 @@ public class ArrayFlagsSubelement extends AbstractDataElement
         
         public ArrayFlagsSubelement read(MyDataInputStream in) throws DataTypeException
         {
-                DataTagFieldReader tagInfo = new DataTagFieldReader(in.getByteOrder());
+                return read(in, new DataTagFieldReader(in.getByteOrder()));
+        }
+        
+        /**
+         * Reads the sub-element using the given DataTagFieldReader for its tag
+         * (allows to reuse one DataTagFieldReader for all tags of a file)
+         */
+        public ArrayFlagsSubelement read(MyDataInputStream in, DataTagFieldReader tagInfo) throws DataTypeException
+        {
                 tagInfo.read(in);
                 
                 if ( tagInfo.getDataType() != DataType.miUINT32 )
@@ -152,32 +160,21 @@ public class ArrayFlagsSubelement extends AbstractDataElement
                 if ( tagInfo.getTagSize() != 8 )
                         return null;
                 
-                byte[] buf = new byte[4];
-                try {
-                        in.read(buf);
-                }
-                catch (IOException e) {
-                        e.printStackTrace();
-                        return null;
-                }
-                
-                int       flags   = (buf[2] & 0xFF) & 0x0E;
-                MxClassID classId = MxClassID.get(buf[3] & 0xFF);
-                if (in.getByteOrder().equals(ByteOrder.LITTLE_ENDIAN))
-                {
-                        flags   = (buf[1] & 0xFF) & 0x0E;
-                        classId = MxClassID.get(buf[0] & 0xFF);
-                }
-                
+                int value;
                 int nz;
                 try {
-                        nz = (int)in.readUnsignedInt();
+                        value = in.readInt();
+                        nz    = (int)in.readUnsignedInt();
                 }
                 catch (IOException e) {
                         e.printStackTrace();
                         return null;
                 }
                 
+                // Class in byte 0, flags in byte 1 (counted from the least significant byte)
+                int       flags   = ((value >> 8) & 0xFF) & 0x0E;
+                MxClassID classId = MxClassID.get(value & 0xFF);
+                
                 setSparseFlag ((flags & 0x10) > 0);
                 setComplexFlag((flags & 0x08) > 0);
                 setGlobalFlag ((flags & 0x04) > 0);
@@ -66,9 +66,9 @@ public class ArrayNameSubelement extends AbstractDataElement
          */
         public byte[] dataToByteArray(ByteOrder byte_order)
         {
-                byte[] b      = new byte[super.getDataLength()];
+                byte[] b      = new byte[byteArrayLength(super.getDataLength())];
                 String data   = (String)dataObj;
-                int    len    = super.getDataLength() / super.sizeOfDataType();
+                int    len    = (int)(super.getDataLength() / super.sizeOfDataType());
                 int    offset = 0;
                 
                 for ( int i = 0; i < len; i++ )
@@ -81,17 +81,32 @@ public class ArrayNameSubelement extends AbstractDataElement
         
         public ArrayNameSubelement read(MyDataInputStream in) throws DataTypeException
         {
-                DataTagFieldReader tagInfo = new DataTagFieldReader(in.getByteOrder());
+                return read(in, new DataTagFieldReader(in.getByteOrder()));
+        }
+        
+        /**
+         * Reads the sub-element using the given DataTagFieldReader for its tag
+         * (allows to reuse one DataTagFieldReader for all tags of a file)
+         */
+        public ArrayNameSubelement read(MyDataInputStream in, DataTagFieldReader tagInfo) throws DataTypeException
+        {
                 tagInfo.read(in);
                 
                 if ( tagInfo.getDataType() != DataType.miINT8 )
                         throw new DataTypeException( DataType.miINT8, tagInfo.getDataType() );
                 
-                int size = tagInfo.getDataSize();
+                if ( !tagInfo.fitsIntoArray() )
+                        return null;
+                
+                int size = (int)tagInfo.getDataSize();
                 
                 String name;
                 
-                if ( tagInfo.isShortElement() )
+                if ( size == 0 )
+                {
+                        name = ""; // e.g. elements of cell arrays
+                }
+                else if ( tagInfo.isShortElement() )
                 {
                         name = new String(tagInfo.getTagData(),4,size);
                         // In case of short elements, the padding is
@@ -103,7 +118,7 @@ public class ArrayNameSubelement extends AbstractDataElement
                         byte[] buf = new byte[size];
                         
                         try {
-                                in.read(buf);
+                                in.readFully(buf);
                                 in.skip(tagInfo.getPadding());
                         }
                         catch (IOException e) {
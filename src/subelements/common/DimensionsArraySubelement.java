@@ -80,9 +80,9 @@ public class DimensionsArraySubelement extends AbstractDataElement
          */
         public byte[] dataToByteArray(ByteOrder byte_order)
         {
-                byte[] b      = new byte[super.getDataLength()];
+                byte[] b      = new byte[byteArrayLength(super.getDataLength())];
                 int[]  data   = dataObj;
-                int    len    = super.getDataLength() / super.sizeOfDataType();
+                int    len    = (int)(super.getDataLength() / super.sizeOfDataType());
                 int    offset = 0;
                 
                 for ( int i = 0; i < len; i++ )
@@ -110,16 +110,24 @@ public class DimensionsArraySubelement extends AbstractDataElement
         
         public DimensionsArraySubelement read(MyDataInputStream in) throws DataTypeException
         {
-                DataTagFieldReader tagInfo = new DataTagFieldReader(in.getByteOrder());
+                return read(in, new DataTagFieldReader(in.getByteOrder()));
+        }
+        
+        /**
+         * Reads the sub-element using the given DataTagFieldReader for its tag
+         * (allows to reuse one DataTagFieldReader for all tags of a file)
+         */
+        public DimensionsArraySubelement read(MyDataInputStream in, DataTagFieldReader tagInfo) throws DataTypeException
+        {
                 tagInfo.read(in);
                 
                 if ( tagInfo.getDataType() != DataType.miINT32 )
                         throw new DataTypeException( DataType.miINT32, tagInfo.getDataType() );
                 
-                if ( tagInfo.getDataSize() < 8 )
+                if ( tagInfo.getDataSize() < 8 || !tagInfo.fitsIntoArray() )
                         return null;
                 
-                int dataSize = tagInfo.getDataSize();
+                int dataSize = (int)tagInfo.getDataSize();
                 int atomSize = tagInfo.getDataType().sizeOf();
                 
                 int[] dims = new int[dataSize/atomSize];
@@ -143,7 +151,9 @@ public class DimensionsArraySubelement extends AbstractDataElement
                         return null;
                 }
                 
-                setData(dims);
+                // Take over the freshly read array without copying it
+                dataObj = dims;
+                super.setNumOfDataElementBytes(dims.length*super.sizeOfDataType());
                 
                 return this;
         }
@@ -53,9 +53,9 @@ public class CharacterPartSubelement extends AbstractDataElement
         
         public byte[] dataToByteArray(ByteOrder byte_order)
         {
-                byte[] b      = new byte[super.getDataLength()];
+                byte[] b      = new byte[byteArrayLength(super.getDataLength())];
                 String data   = dataObj;
-                int    len    = super.getDataLength() / super.sizeOfDataType();
+                int    len    = (int)(super.getDataLength() / super.sizeOfDataType());
                 int    offset = 0;
                 
                 for ( int i = 0; i < len; i++ )
@@ -79,14 +79,21 @@ public class CharacterPartSubelement extends AbstractDataElement
         
         public CharacterPartSubelement read(MyDataInputStream in)
         {
-                DataTagFieldReader tagInfo = new DataTagFieldReader(in.getByteOrder());
-                
+                return read(in, new DataTagFieldReader(in.getByteOrder()));
+        }
+        
+        /**
+         * Reads the sub-element using the given DataTagFieldReader for its tag
+         * (allows to reuse one DataTagFieldReader for all tags of a file)
+         */
+        public CharacterPartSubelement read(MyDataInputStream in, DataTagFieldReader tagInfo)
+        {
                 tagInfo.read(in);
                 
-                if ( tagInfo.getDataType() != DataType.miUINT16 )
+                if ( tagInfo.getDataType() != DataType.miUINT16 || !tagInfo.fitsIntoArray() )
                         return null;
                 
-                int dataSize = tagInfo.getDataSize();
+                int dataSize = (int)tagInfo.getDataSize();
                 int atomSize = tagInfo.getDataType().sizeOf();
                 
                 int nChars = dataSize / atomSize;
@@ -106,18 +113,13 @@ public class CharacterPartSubelement extends AbstractDataElement
                 }
                 else
                 {
-                        byte[] buf = new byte[atomSize];
-                        
-                        for ( int i = 0; i < nChars; i++ )
-                        {
-                                try {
-                                        in.read(buf); // What about return value?
-                                }
-                                catch (IOException e) {
-                                        e.printStackTrace();
-                                        return null;
-                                }
-                                out[i] = Bytes.toChar(buf,0,in.getByteOrder());
+                        try {
+                                for ( int i = 0; i < nChars; i++ )
+                                        out[i] = in.readChar();
+                        }
+                        catch (IOException e) {
+                                e.printStackTrace();
+                                return null;
                         }
                         
                         try {
@@ -0,0 +1,135 @@
+package subelements.numeric;
+
+import io.MyDataInputStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import common.DataTagFieldReader;
+import common.DataType;
+
+/**
+ * Decodes the data items of a numeric part incrementally, i.e. a few
+ * items at a time, converted to double. Unlike NumericPartSubelement.read(...)
+ * the part is never held as a whole in memory; only a buffer of at most
+ * CONVERTLENGTH items is used. Integer types are interpreted as signed or
+ * unsigned according to DataType.isSignedType().
+ */
+public class NumericPartReader
+{
+        private static final int CONVERTLENGTH = 8192; // data items converted at once
+        
+        private MyDataInputStream  in;
+        private DataTagFieldReader tagInfo;
+        private DataType           type;
+        private long               remaining;  // data items not read yet
+        private ByteBuffer         chunk;
+        
+        /**
+         * Reads the tag of the numeric part; the data items can be read by
+         * readDoubles(...) afterwards.
+         * @param in  stream positioned at the tag of the numeric part
+         * @return this or null, if the tag cannot be read or is not numeric
+         */
+        public NumericPartReader read(MyDataInputStream in)
+        {
+                DataTagFieldReader tagInfo = new DataTagFieldReader(in.getByteOrder());
+                
+                if ( tagInfo.read(in) == false || tagInfo.getDataType().isNumericType() == false )
+                        return null;
+                
+                this.in        = in;
+                this.tagInfo   = tagInfo;
+                this.type      = tagInfo.getDataType();
+                this.remaining = tagInfo.getDataSize() / type.sizeOf();
+                this.chunk     = null;
+                
+                // Data items of short elements are part of the tag
+                if ( tagInfo.isShortElement() )
+                        this.chunk = ByteBuffer.wrap(tagInfo.getTagData(), 4, (int)tagInfo.getDataSize())
+                                               .slice().order(in.getByteOrder());
+                
+                return this;
+        }
+        
+        /**
+         * Returns the data type the items are stored in
+         */
+        public DataType getDataType()
+        {
+                return type;
+        }
+        
+        /**
+         * Returns the number of data items not read yet
+         */
+        public long remaining()
+        {
+                return remaining;
+        }
+        
+        /**
+         * Decodes the next data items
+         * @param dst  array receiving the items converted to double
+         * @param off  index of dst to put the first item at
+         * @param len  number of items to read
+         * @return the number of items read (less than len only at the end of
+         *         the part) or -1, if no items are left
+         */
+        public int readDoubles(double[] dst, int off, int len) throws IOException
+        {
+                if ( remaining == 0 )
+                        return -1;
+                
+                len = (int)Math.min(len, remaining);
+                
+                if ( tagInfo.isShortElement() )
+                {
+                        double[] tmp = new double[chunk.capacity() / type.sizeOf()];
+                        NumericPartSubelement.toDoubles(chunk, type, tmp.length, tmp);
+                        System.arraycopy(tmp, tmp.length - (int)remaining, dst, off, len);
+                        
+                        remaining -= len;
+                        return len;
+                }
+                
+                int atomSize = type.sizeOf();
+                
+                if ( chunk == null )
+                        chunk = ByteBuffer.allocate((int)Math.min(remaining, CONVERTLENGTH) * atomSize)
+                                          .order(in.getByteOrder());
+                
+                double[] scratch = null;
+                
+                for ( int done = 0; done < len; )
+                {
+                        int n = Math.min(chunk.capacity() / atomSize, len - done);
+                        
+                        in.readFully(chunk.array(), 0, n*atomSize);
+                        chunk.clear();
+                        
+                        if ( type == DataType.miDOUBLE )
+                        {
+                                chunk.asDoubleBuffer().get(dst, off + done, n);
+                        }
+                        else
+                        {
+                                if ( scratch == null )
+                                        scratch = new double[chunk.capacity() / atomSize];
+                                
+                                NumericPartSubelement.toDoubles(chunk, type, n, scratch);
+                                System.arraycopy(scratch, 0, dst, off + done, n);
+                        }
+                        
+                        done += n;
+                }
+                
+                remaining -= len;
+                
+                // Skip the padding behind the last item
+                if ( remaining == 0 )
+                        NumericPartSubelement.skipFully(in, tagInfo.getDataSize() % atomSize + tagInfo.getPadding());
+                
+                return len;
+        }
+}
@@ -2,22 +2,32 @@ package subelements.numeric;
 
 import io.MyDataInputStream;
 
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
 
 import subelements.base.BooleanArray;
+import subelements.base.BufferArray;
 import subelements.base.ByteArray;
 import subelements.base.CharArray;
 import subelements.base.DataArray;
 import subelements.base.DoubleArray;
 import subelements.base.FloatArray;
 import subelements.base.IntArray;
+import subelements.base.LongArray;
 import subelements.base.ShortArray;
 
 import abstractTypes.AbstractDataElement;
 import common.DataTagFieldReader;
 import common.DataType;
-import common.Bytes;
 
 /**
  *
@@ -26,6 +36,11 @@ import common.Bytes;
  */
 public class NumericPartSubelement extends AbstractDataElement
 {
+        private static final int CONVERTLENGTH   = 8192; // data items converted at once by readInto()
+        private static final int SMALLREADLENGTH = 64;   // payloads up to this size are read item by item
+        private static final int READCHUNKLENGTH = 65536; // bytes decoded at once by read()
+        private static final int MAXARRAYLENGTH  = Integer.MAX_VALUE - 8; // data items of one part
+        
         private DataArray dataObj;
         
         public NumericPartSubelement()
@@ -45,6 +60,18 @@ public class NumericPartSubelement extends AbstractDataElement
                 setData(d);
         }
         
+        public NumericPartSubelement(float [][] d)
+        {
+                super(DataType.miSINGLE);
+                setData(d);
+        }
+        
+        public NumericPartSubelement(float [] d)
+        {
+                super(DataType.miSINGLE);
+                setData(d);
+        }
+        
         public NumericPartSubelement(int [][] d)
         {
                 super(DataType.miINT32);
@@ -143,7 +170,7 @@ public class NumericPartSubelement extends AbstractDataElement
                 dataObj = new FloatArray(data);
                 
                 super.setDataType(DataType.miSINGLE);
-                super.setNumOfDataElementBytes(data.length*super.sizeOfDataType());
+                super.setNumOfDataElementBytes((long)data.length*super.sizeOfDataType());
         }
         
         public void setData(float[] d)
@@ -158,7 +185,7 @@ public class NumericPartSubelement extends AbstractDataElement
                 dataObj = new FloatArray(data);
                 
                 super.setDataType(DataType.miSINGLE);
-                super.setNumOfDataElementBytes(data.length*super.sizeOfDataType());
+                super.setNumOfDataElementBytes((long)data.length*super.sizeOfDataType());
         }
         
         public void setData(int[][] d)
@@ -176,7 +203,7 @@ public class NumericPartSubelement extends AbstractDataElement
                 dataObj = new IntArray(data);
                 
                 super.setDataType(DataType.miINT32);
-                super.setNumOfDataElementBytes(data.length*super.sizeOfDataType());
+                super.setNumOfDataElementBytes((long)data.length*super.sizeOfDataType());
         }
         
         public void setData(int[] d)
@@ -191,7 +218,7 @@ public class NumericPartSubelement extends AbstractDataElement
                 dataObj = new IntArray(data);
                 
                 super.setDataType(DataType.miINT32);
-                super.setNumOfDataElementBytes(data.length*super.sizeOfDataType());
+                super.setNumOfDataElementBytes((long)data.length*super.sizeOfDataType());
         }
         
         public void setData(short[][] d)
@@ -209,7 +236,7 @@ public class NumericPartSubelement extends AbstractDataElement
                 dataObj = new ShortArray(data);
                 
                 super.setDataType(DataType.miINT16);
-                super.setNumOfDataElementBytes(data.length*super.sizeOfDataType());
+                super.setNumOfDataElementBytes((long)data.length*super.sizeOfDataType());
         }
         
         public void setData(short [] d)
@@ -224,7 +251,7 @@ public class NumericPartSubelement extends AbstractDataElement
                 dataObj = new ShortArray(data);
                 
                 super.setDataType(DataType.miINT16);
-                super.setNumOfDataElementBytes(data.length*super.sizeOfDataType());
+                super.setNumOfDataElementBytes((long)data.length*super.sizeOfDataType());
         }
         
         public void setData(char[][] d)
@@ -242,7 +269,7 @@ public class NumericPartSubelement extends AbstractDataElement
                 dataObj = new CharArray(data);
                 
                 super.setDataType(DataType.miUINT16);
-                super.setNumOfDataElementBytes(data.length*super.sizeOfDataType());
+                super.setNumOfDataElementBytes((long)data.length*super.sizeOfDataType());
         }
         
         public void setData(char [] d)
@@ -257,7 +284,7 @@ public class NumericPartSubelement extends AbstractDataElement
                 dataObj = new CharArray(data);
                 
                 super.setDataType(DataType.miUINT16);
-                super.setNumOfDataElementBytes(data.length*super.sizeOfDataType());
+                super.setNumOfDataElementBytes((long)data.length*super.sizeOfDataType());
         }
         
         public void setData(byte [][] d)
@@ -275,7 +302,7 @@ public class NumericPartSubelement extends AbstractDataElement
                 dataObj = new ByteArray(data);
                 
                 super.setDataType(DataType.miINT8);
-                super.setNumOfDataElementBytes(data.length*super.sizeOfDataType());
+                super.setNumOfDataElementBytes((long)data.length*super.sizeOfDataType());
         }
         
         public void setData(byte [] d)
@@ -290,7 +317,7 @@ public class NumericPartSubelement extends AbstractDataElement
                 dataObj = new ByteArray(data);
                 
                 super.setDataType(DataType.miINT8);
-                super.setNumOfDataElementBytes(data.length*super.sizeOfDataType());
+                super.setNumOfDataElementBytes((long)data.length*super.sizeOfDataType());
         }
         
         public void setData(boolean [][] d)
@@ -308,7 +335,7 @@ public class NumericPartSubelement extends AbstractDataElement
                 dataObj = new BooleanArray(data);
                 
                 super.setDataType(DataType.miUINT8);
-                super.setNumOfDataElementBytes(data.length*super.sizeOfDataType());
+                super.setNumOfDataElementBytes((long)data.length*super.sizeOfDataType());
         }
         
         public void setData(boolean [] d)
@@ -323,7 +350,7 @@ public class NumericPartSubelement extends AbstractDataElement
                 dataObj = new BooleanArray(data);
                 
                 super.setDataType(DataType.miUINT8);
-                super.setNumOfDataElementBytes(data.length*super.sizeOfDataType());
+                super.setNumOfDataElementBytes((long)data.length*super.sizeOfDataType());
         }
         
         private void setData(double [][] d, boolean compress)
@@ -341,7 +368,7 @@ public class NumericPartSubelement extends AbstractDataElement
                 dataObj = new DoubleArray(data);
                 
                 super.setDataType(DataType.miDOUBLE);
-                super.setNumOfDataElementBytes(data.length*super.sizeOfDataType());
+                super.setNumOfDataElementBytes((long)data.length*super.sizeOfDataType());
                 
                 if (compress == true)
                         compressDouble(data);
@@ -359,7 +386,7 @@ public class NumericPartSubelement extends AbstractDataElement
                 dataObj = new DoubleArray(data);
                 
                 super.setDataType(DataType.miDOUBLE);
-                super.setNumOfDataElementBytes(data.length*super.sizeOfDataType());
+                super.setNumOfDataElementBytes((long)data.length*super.sizeOfDataType());
                 
                 if (compress == true)
                         compressDouble(data);
@@ -381,7 +408,7 @@ public class NumericPartSubelement extends AbstractDataElement
                 dataObj = new IntArray(data);
                 
                 super.setDataType(type);
-                super.setNumOfDataElementBytes(data.length*super.sizeOfDataType());
+                super.setNumOfDataElementBytes((long)data.length*super.sizeOfDataType());
         }
         
         private void setData(short [] d, DataType type)
@@ -396,7 +423,7 @@ public class NumericPartSubelement extends AbstractDataElement
                 dataObj = new ShortArray(data);
                 
                 super.setDataType(type);
-                super.setNumOfDataElementBytes(data.length*super.sizeOfDataType());
+                super.setNumOfDataElementBytes((long)data.length*super.sizeOfDataType());
         }
         
         private void setData(byte [] d, DataType type)
@@ -411,7 +438,7 @@ public class NumericPartSubelement extends AbstractDataElement
                 dataObj = new ByteArray(data);
                 
                 super.setDataType(type);
-                super.setNumOfDataElementBytes(data.length*super.sizeOfDataType());
+                super.setNumOfDataElementBytes((long)data.length*super.sizeOfDataType());
         }
         
         public byte[] dataToByteArray(ByteOrder byte_order)
@@ -419,6 +446,75 @@ public class NumericPartSubelement extends AbstractDataElement
                 return dataObj.dataToByteArray(byte_order);
         }
         
+        @Override
+        protected void writeDataTo(OutputStream out, ByteOrder byte_order) throws IOException
+        {
+                dataObj.writeTo(out, byte_order);
+        }
+        
+        /*
+         * Used by read(...) to take over freshly decoded data as is, i.e.
+         * without the defensive copy made by the setData(...) methods
+         */
+        private void setDecodedData(DataArray data, DataType type, long numBytes)
+        {
+                dataObj = data;
+                
+                super.setDataType(type);
+                super.setNumOfDataElementBytes(numBytes);
+        }
+        
+        /*
+         * Takes over the raw bytes of data items of the given type, decoded
+         * through a typed view of the buffer
+         */
+        private void setDecodedBytes(byte[] raw, DataType type, ByteOrder byte_order)
+        {
+                int        nElements = raw.length / type.sizeOf();
+                ByteBuffer buf       = ByteBuffer.wrap(raw).order(byte_order);
+                
+                if ( type == DataType.miINT8 || type == DataType.miUINT8 )
+                {
+                        setDecodedData(new ByteArray(raw), type, raw.length);
+                }
+                else if ( type == DataType.miINT16 )
+                {
+                        short[] arr = new short[nElements];
+                        buf.asShortBuffer().get(arr);
+                        setDecodedData(new ShortArray(arr), type, raw.length);
+                }
+                else if ( type == DataType.miUINT16 )
+                {
+                        char[] arr = new char[nElements];
+                        buf.asCharBuffer().get(arr);
+                        setDecodedData(new CharArray(arr), type, raw.length);
+                }
+                else if ( type == DataType.miINT32 || type == DataType.miUINT32 )
+                {
+                        int[] arr = new int[nElements];
+                        buf.asIntBuffer().get(arr);
+                        setDecodedData(new IntArray(arr), type, raw.length);
+                }
+                else if ( type == DataType.miINT64 || type == DataType.miUINT64 )
+                {
+                        long[] arr = new long[nElements];
+                        buf.asLongBuffer().get(arr);
+                        setDecodedData(new LongArray(arr), type, raw.length);
+                }
+                else if ( type == DataType.miSINGLE )
+                {
+                        float[] arr = new float[nElements];
+                        buf.asFloatBuffer().get(arr);
+                        setDecodedData(new FloatArray(arr), type, raw.length);
+                }
+                else if ( type == DataType.miDOUBLE )
+                {
+                        double[] arr = new double[nElements];
+                        buf.asDoubleBuffer().get(arr);
+                        setDecodedData(new DoubleArray(arr), type, raw.length);
+                }
+        }
+        
         private void compressDouble(double[] data)
         {
                 int      reqBytes = requiredByteSize(data);
@@ -593,253 +689,493 @@ public class NumericPartSubelement extends AbstractDataElement
         }
         public NumericPartSubelement read(MyDataInputStream in)
         {
-                DataTagFieldReader tagInfo = new DataTagFieldReader(in.getByteOrder());
-                
+                return read(in, new DataTagFieldReader(in.getByteOrder()));
+        }
+        
+        /**
+         * Reads the numeric part using the given DataTagFieldReader for its
+         * tag. A NumericPartSubelement can be used for any number of reads,
+         * every read replaces the data of the previous one.
+         */
+        public NumericPartSubelement read(MyDataInputStream in, DataTagFieldReader tagInfo)
+        {
                 tagInfo.read(in);
                 
-                // This call to 'setDataType(...)' is superfluous, since
-                // 1) the data is always converted to type double anyway;
-                // see the definition of variable 'out' and call of function
-                // 'bytesToDouble(...)' that always returns type double further
-                // down
-                // and
-                // 2) function setData( double[], boolean ) is always called at
-                // the end in this function, which itself will set the type
-                // to miDOUBLE, too.
-                super.setDataType(tagInfo.getDataType());
+                long dataSize = tagInfo.getDataSize();
+                int  atomSize = tagInfo.getDataType().sizeOf();
                 
-                int dataSize = tagInfo.getDataSize();
-                int atomSize = tagInfo.getDataType().sizeOf();
+                if ( dataSize / atomSize > MAXARRAYLENGTH )
+                {
+                        System.err.println("NumericPartSubelement::read: Too many data items for an array.");
+                        return null;
+                }
                 
-                int nElements = dataSize / atomSize;
+                int nElements = (int)(dataSize / atomSize);
+                long numBytes = (long)nElements * atomSize;
                 
                 DataType  type = tagInfo.getDataType();
                 
+                // The data is kept in the type it is stored in (see
+                // setDecodedBytes(...)); widening to double or to a larger
+                // integer type is left to the accessors of the data object
                 if (tagInfo.isShortElement() == true)
                 {
-                        int offset = 4; // skip short tag itself
+                        // Data follows the short tag in the same 8 bytes
                         byte[] buf = tagInfo.getTagData();
+                        byte[] raw = Arrays.copyOfRange(buf, 4, 4 + nElements*atomSize);
                         
-                        // The following may produce trouble with the
-                        // satData(...) method at the end
-                        // Type recognition can fail in case of e.g.
-                        // miUINT8 and char-type
-                        if ( type == DataType.miINT8 )
+                        setDecodedBytes(raw, type, in.getByteOrder());
+                }
+                else
+                {
+                        // Take the payload as it is, if the stream can hand
+                        // out a view of it (uncompressed data of a memory
+                        // mapped file)
+                        ByteBuffer view = (numBytes <= MAXARRAYLENGTH) ? in.readView((int)numBytes) : null;
+                        
+                        if ( view != null )
                         {
-                                byte[] arr = new byte[nElements];
-                                
-                                for ( int i = 0; i < nElements; i++ )
-                                {
-                                        arr[i] = Bytes.toByte(buf, offset, in.getByteOrder());
-                                        offset += atomSize;
+                                try {
+                                        in.skip(dataSize - view.limit() + tagInfo.getPadding());
+                                }
+                                catch (IOException e) {
+                                        e.printStackTrace();
+                                        return null;
                                 }
                                 
-                                setData(arr,DataType.miINT8);
+                                setDecodedData(new BufferArray(view, type), type, view.limit());
+                                
+                                return this;
                         }
-                        else if ( type == DataType.miUINT8 )
+                        
+                        // Few data items (e.g. scalars) are decoded one by one,
+                        // which needs no buffer besides the result
+                        if ( numBytes <= SMALLREADLENGTH )
                         {
-                                byte[] arr = new byte[nElements];
-                                
-                                for ( int i = 0; i < nElements; i++ )
-                                {
-                                        arr[i] = (byte)Bytes.toUByte(buf, offset, in.getByteOrder());
-                                        offset += atomSize;
+                                try {
+                                        setDecodedData(readItems(in, type, nElements), type, numBytes);
+                                        in.skip(dataSize - numBytes + tagInfo.getPadding());
+                                }
+                                catch (IOException e) {
+                                        e.printStackTrace();
+                                        return null;
                                 }
                                 
-                                setData(arr,DataType.miUINT8);
+                                return this;
+                        }
+                        
+                        // Decode the payload chunk by chunk through typed views
+                        // of a buffer instead of assembling every element from
+                        // single bytes; the payload may exceed the size of a
+                        // byte array (up to 4 GB)
+                        try {
+                                setDecodedData(readChunked(in, type, nElements), type, numBytes);
+                                in.skip(dataSize - numBytes + tagInfo.getPadding());
+                        }
+                        catch (IOException e) {
+                                e.printStackTrace();
+                                return null;
                         }
-                        else if ( type == DataType.miINT16 )
+                }
+                
+                return this;
+        }
+        
+        /*
+         * Decodes n data items of the given type item by item from the stream
+         */
+        private static DataArray readItems(MyDataInputStream in, DataType type, int n) throws IOException
+        {
+                switch (type)
+                {
+                        case miINT8:
+                        case miUINT8:
                         {
-                                short[] arr = new short[nElements];
-                                
-                                for ( int i = 0; i < nElements; i++ )
-                                {
-                                        arr[i] = Bytes.toShort(buf, offset, in.getByteOrder());
-                                        offset += atomSize;
-                                }
-                                
-                                setData(arr,DataType.miINT16);
+                                byte[] arr = new byte[n];
+                                in.readFully(arr);
+                                return new ByteArray(arr);
                         }
-                        else if ( type == DataType.miUINT16 )
+                        case miINT16:
                         {
-                                short[] arr = new short[nElements];
-                                
-                                for ( int i = 0; i < nElements; i++ )
-                                {
-                                        arr[i] = (short)Bytes.toUShort(buf, offset, in.getByteOrder());
-                                        offset += atomSize;
-                                }
-                                
-                                setData(arr,DataType.miINT16);
+                                short[] arr = new short[n];
+                                for ( int k = 0; k < n; k++ )
+                                        arr[k] = in.readShort();
+                                return new ShortArray(arr);
                         }
-                        else if ( type == DataType.miINT32 )
+                        case miUINT16:
                         {
-                                int[] arr = new int[nElements];
-                                
-                                for ( int i = 0; i < nElements; i++ )
-                                {
-                                        arr[i] = Bytes.toInt(buf, offset, in.getByteOrder());
-                                        offset += atomSize;
-                                }
-                                
-                                setData(arr,DataType.miINT32);
+                                char[] arr = new char[n];
+                                for ( int k = 0; k < n; k++ )
+                                        arr[k] = in.readChar();
+                                return new CharArray(arr);
                         }
-                        else if ( type == DataType.miUINT32 )
+                        case miINT32:
+                        case miUINT32:
                         {
-                                int[] arr = new int[nElements];
-                                
-                                for ( int i = 0; i < nElements; i++ )
-                                {
-                                        arr[i] = (int)Bytes.toUInt(buf, offset, in.getByteOrder());
-                                        offset += atomSize;
-                                }
-                                
-                                setData(arr,DataType.miUINT32);
+                                int[] arr = new int[n];
+                                for ( int k = 0; k < n; k++ )
+                                        arr[k] = in.readInt();
+                                return new IntArray(arr);
                         }
-                        else if ( type == DataType.miSINGLE )
+                        case miINT64:
+                        case miUINT64:
                         {
-                                float[] arr = new float[nElements];
-                                
-                                for ( int i = 0; i < nElements; i++ )
-                                {
-                                        arr[i] = Bytes.toFloat(buf, offset, in.getByteOrder());
-                                        offset += atomSize;
-                                }
-                                
-                                setData(arr);
+                                long[] arr = new long[n];
+                                for ( int k = 0; k < n; k++ )
+                                        arr[k] = in.readLong();
+                                return new LongArray(arr);
                         }
-                }
-                else
-                {
-                        if ( type == DataType.miINT8 )
+                        case miSINGLE:
                         {
-                                byte[] arr = new byte[nElements];
-                                
-                                try {
-                                        for ( int i = 0; i < nElements; i++ )
-                                        {
-                                                arr[i] = (byte)in.readByte();
-                                        }
-                                }
-                                catch (IOException e) {
-                                        e.printStackTrace();
-                                        return null;
-                                }
-                                
-                                setData(arr,DataType.miINT8);
+                                float[] arr = new float[n];
+                                for ( int k = 0; k < n; k++ )
+                                        arr[k] = in.readFloat();
+                                return new FloatArray(arr);
                         }
-                        else if ( type == DataType.miUINT8 )
+                        default:
                         {
-                                byte[] arr = new byte[nElements];
-                                
-                                try {
-                                        for ( int i = 0; i < nElements; i++ )
-                                        {
-                                                arr[i] = (byte)in.readUnsignedByte();
-                                        }
-                                }
-                                catch (IOException e) {
-                                        e.printStackTrace();
-                                        return null;
-                                }
-                                
-                                setData(arr,DataType.miUINT8);
+                                double[] arr = new double[n];
+                                for ( int k = 0; k < n; k++ )
+                                        arr[k] = in.readDouble();
+                                return new DoubleArray(arr);
                         }
-                        else if ( type == DataType.miINT16 )
+                }
+        }
+        
+        /*
+         * Decodes n data items of the given type from the stream; a buffer
+         * of at most READCHUNKLENGTH bytes is filled and converted at a time
+         */
+        private static DataArray readChunked(MyDataInputStream in, DataType type, int n) throws IOException
+        {
+                if ( type == DataType.miINT8 || type == DataType.miUINT8 )
+                {
+                        byte[] arr = new byte[n];
+                        in.readFully(arr);
+                        return new ByteArray(arr);
+                }
+                
+                int        atomSize   = type.sizeOf();
+                int        chunkItems = Math.max(1, Math.min(n, READCHUNKLENGTH / atomSize));
+                ByteBuffer chunk      = ByteBuffer.allocate(chunkItems*atomSize).order(in.getByteOrder());
+                
+                DataArray  result;
+                short[]    s = null;
+                char[]     c = null;
+                int[]      i = null;
+                long[]     l = null;
+                float[]    f = null;
+                double[]   d = null;
+                
+                switch (type)
+                {
+                        case miINT16:  result = new ShortArray(s = new short[n]);  break;
+                        case miUINT16: result = new CharArray(c = new char[n]);    break;
+                        case miINT32:
+                        case miUINT32: result = new IntArray(i = new int[n]);      break;
+                        case miINT64:
+                        case miUINT64: result = new LongArray(l = new long[n]);    break;
+                        case miSINGLE: result = new FloatArray(f = new float[n]);  break;
+                        default:       result = new DoubleArray(d = new double[n]); break;
+                }
+                
+                for ( int done = 0; done < n; done += chunkItems )
+                {
+                        int k = Math.min(chunkItems, n - done);
+                        
+                        in.readFully(chunk.array(), 0, k*atomSize);
+                        chunk.clear();
+                        
+                        if      ( s != null ) chunk.asShortBuffer().get(s, done, k);
+                        else if ( c != null ) chunk.asCharBuffer().get(c, done, k);
+                        else if ( i != null ) chunk.asIntBuffer().get(i, done, k);
+                        else if ( l != null ) chunk.asLongBuffer().get(l, done, k);
+                        else if ( f != null ) chunk.asFloatBuffer().get(f, done, k);
+                        else                  chunk.asDoubleBuffer().get(d, done, k);
+                }
+                
+                return result;
+        }
+        
+        /**
+         * Reads a numeric part, but decodes only a block (hyperslab) of the
+         * array. The other data items are skipped, i.e. they are not read at
+         * all from uncompressed files and only inflated, but not decoded,
+         * from compressed files.
+         * The block consists of the elements with indices
+         * start[d] + k*stride[d], k = 0 ... count[d]-1 in every dimension d;
+         * the decoded data holds them in column-major order.
+         * 
+         * @param in      stream positioned at the tag of the numeric part
+         * @param dims    the dimensions of the complete array
+         * @param start   the index of the first element of the block per dimension
+         * @param count   the number of elements of the block per dimension
+         * @param stride  the distance of elements of the block per dimension
+         * @return this or null, if reading failed
+         */
+        public NumericPartSubelement read(MyDataInputStream in, int[] dims, int[] start, int[] count, int[] stride)
+        {
+                DataTagFieldReader tagInfo = new DataTagFieldReader(in.getByteOrder());
+                
+                if ( tagInfo.read(in) == false )
+                        return null;
+                
+                DataType type     = tagInfo.getDataType();
+                long     dataSize = tagInfo.getDataSize();
+                int      atomSize = type.sizeOf();
+                
+                super.setDataType(type);
+                
+                // Data items of short elements are part of the tag
+                MyDataInputStream src = in;
+                if ( tagInfo.isShortElement() )
+                        src = new MyDataInputStream(new ByteArrayInputStream(tagInfo.getTagData(),4,(int)dataSize),
+                                        in.getByteOrder());
+                
+                long nSelected = 1;
+                for ( int d = 0; d < count.length; d++ )
+                        nSelected *= count[d];
+                
+                byte[] raw = new byte[(int)nSelected*atomSize];
+                
+                try {
+                        long consumed = readBlock(src, raw, atomSize, dims, start, count, stride);
+                        
+                        if ( !tagInfo.isShortElement() )
+                                skipFully(in, dataSize - consumed + tagInfo.getPadding());
+                }
+                catch (IOException e) {
+                        e.printStackTrace();
+                        return null;
+                }
+                
+                setDecodedBytes(raw, type, in.getByteOrder());
+                
+                return this;
+        }
+        
+        /*
+         * Copies the data items of a block from the stream into 'raw',
+         * skipping all others. Since the block elements are visited in
+         * column-major order, their positions in the stream are increasing.
+         * Runs along the first dimension with stride 1 are read at once.
+         * @return the number of bytes consumed from the stream
+         */
+        private static long readBlock(MyDataInputStream in, byte[] raw, int atomSize,
+                        int[] dims, int[] start, int[] count, int[] stride) throws IOException
+        {
+                int nDims = dims.length;
+                
+                if ( raw.length == 0 )
+                        return 0;
+                
+                // Distance of neighbouring elements per dimension (in items)
+                long[] step = new long[nDims];
+                step[0] = 1;
+                for ( int d = 1; d < nDims; d++ )
+                        step[d] = step[d-1] * dims[d-1];
+                
+                int[] k   = new int[nDims]; // index of the current run in the block
+                long  pos = 0;              // current position in the stream (in items)
+                int   off = 0;              // current position in raw
+                
+                while ( true )
+                {
+                        long first = start[0];
+                        for ( int d = 1; d < nDims; d++ )
+                                first += (start[d] + (long)k[d]*stride[d]) * step[d];
+                        
+                        if ( stride[0] == 1 )
                         {
-                                short[] arr = new short[nElements];
-                                
-                                try {
-                                        for ( int i = 0; i < nElements; i++ )
-                                        {
-                                                arr[i] = in.readShort();
-                                        }
-                                }
-                                catch (IOException e) {
-                                        e.printStackTrace();
-                                        return null;
-                                }
-                                
-                                setData(arr,DataType.miINT16);
+                                skipFully(in, (first - pos) * atomSize);
+                                in.readFully(raw, off, count[0]*atomSize);
+                                off += count[0]*atomSize;
+                                pos  = first + count[0];
                         }
-                        else if ( type == DataType.miUINT16 )
+                        else
                         {
-                                char[] arr = new char[nElements];
-                                
-                                try {
-                                        for ( int i = 0; i < nElements; i++ )
-                                        {
-                                                arr[i] = (char)in.readChar();
-                                        }
-                                }
-                                catch (IOException e) {
-                                        e.printStackTrace();
-                                        return null;
+                                for ( int i = 0; i < count[0]; i++ )
+                                {
+                                        long item = first + (long)i*stride[0];
+                                        skipFully(in, (item - pos) * atomSize);
+                                        in.readFully(raw, off, atomSize);
+                                        off += atomSize;
+                                        pos  = item + 1;
                                 }
-                                
-                                setData(arr);
                         }
-                        else if ( type == DataType.miINT32 )
+                        
+                        // Next run: increment the multi-index over dimensions 1 ... nDims-1
+                        int d = 1;
+                        while ( d < nDims && ++k[d] == count[d] )
                         {
-                                int[] arr = new int[nElements];
-                                
-                                try {
-                                        for ( int i = 0; i < nElements; i++ )
-                                        {
-                                                arr[i] = in.readInt();
-                                        }
-                                }
-                                catch (IOException e) {
-                                        e.printStackTrace();
-                                        return null;
-                                }
-                                
-                                setData(arr,DataType.miINT32);
+                                k[d] = 0;
+                                d++;
                         }
-                        else if ( type == DataType.miUINT32 )
+                        
+                        if ( d == nDims )
+                                break;
+                }
+                
+                return pos * atomSize;
+        }
+        
+        /**
+         * Decodes a numeric part directly into a float buffer: every data
+         * item is converted from the type it is stored in to float in one
+         * pass, without decoding the part into a DataArray first. Integer
+         * types are interpreted as signed or unsigned according to
+         * DataType.isSignedType().
+         * 
+         * @param in   stream positioned at the tag of the numeric part
+         * @param dst  buffer receiving the data items at its position
+         * @return the number of data items or -1, if reading failed
+         * @throws BufferOverflowException if dst has not enough space left
+         */
+        public static int readInto(MyDataInputStream in, FloatBuffer dst)
+        {
+                return readInto(in, dst, null);
+        }
+        
+        /**
+         * Decodes a numeric part directly into a double buffer
+         * (see readInto(MyDataInputStream, FloatBuffer)).
+         */
+        public static int readInto(MyDataInputStream in, DoubleBuffer dst)
+        {
+                return readInto(in, null, dst);
+        }
+        
+        private static int readInto(MyDataInputStream in, FloatBuffer fdst, DoubleBuffer ddst)
+        {
+                DataTagFieldReader tagInfo = new DataTagFieldReader(in.getByteOrder());
+                
+                if ( tagInfo.read(in) == false )
+                        return -1;
+                
+                DataType type      = tagInfo.getDataType();
+                long     dataSize  = tagInfo.getDataSize();
+                int      atomSize  = type.sizeOf();
+                
+                if ( dataSize / atomSize > (fdst != null ? fdst.remaining() : ddst.remaining()) )
+                        throw new BufferOverflowException();
+                
+                int      nElements = (int)(dataSize / atomSize);
+                
+                // Data items of short elements are part of the tag
+                MyDataInputStream src = in;
+                if ( tagInfo.isShortElement() )
+                        src = new MyDataInputStream(new ByteArrayInputStream(tagInfo.getTagData(),4,(int)dataSize),
+                                        in.getByteOrder());
+                
+                int        chunkItems = Math.max(1, Math.min(nElements, CONVERTLENGTH));
+                ByteBuffer chunk      = ByteBuffer.allocate(chunkItems*atomSize).order(in.getByteOrder());
+                double[]   scratch    = null;
+                
+                try {
+                        for ( int done = 0; done < nElements; done += chunkItems )
                         {
-                                int[] arr = new int[nElements];
+                                int n = Math.min(chunkItems, nElements - done);
                                 
-                                try {
-                                        for ( int i = 0; i < nElements; i++ )
-                                        {
-                                                arr[i] = (int)in.readUnsignedInt();
-                                        }
+                                src.readFully(chunk.array(), 0, n*atomSize);
+                                chunk.clear();
+                                
+                                // Same type: bulk transfer
+                                if ( fdst != null && type == DataType.miSINGLE )
+                                {
+                                        FloatBuffer f = chunk.asFloatBuffer();
+                                        f.limit(n);
+                                        fdst.put(f);
+                                        continue;
                                 }
-                                catch (IOException e) {
-                                        e.printStackTrace();
-                                        return null;
+                                
+                                if ( ddst != null && type == DataType.miDOUBLE )
+                                {
+                                        DoubleBuffer d = chunk.asDoubleBuffer();
+                                        d.limit(n);
+                                        ddst.put(d);
+                                        continue;
                                 }
                                 
-                                setData(arr,DataType.miUINT32);
-                        }
-                        else if ( type == DataType.miDOUBLE )
-                        {
-                                double[] arr = new double[nElements];
+                                if ( scratch == null )
+                                        scratch = new double[chunkItems];
                                 
-                                try {
-                                        for ( int i = 0; i < nElements; i++ )
-                                        {
-                                                arr[i] = in.readDouble();
-                                        }
-                                }
-                                catch (IOException e) {
-                                        e.printStackTrace();
-                                        return null;
-                                }
+                                toDoubles(chunk, type, n, scratch);
                                 
-                                setData(arr,false);
+                                if ( ddst != null )
+                                        ddst.put(scratch, 0, n);
+                                else
+                                        for ( int k = 0; k < n; k++ )
+                                                fdst.put((float)scratch[k]);
                         }
                         
-                        try {
-                                in.skip(tagInfo.getPadding());
-                        }
-                        catch (IOException e) {
-                                e.printStackTrace();
-                                return null;
-                        }
+                        if ( !tagInfo.isShortElement() )
+                                skipFully(in, dataSize - (long)nElements*atomSize + tagInfo.getPadding());
+                }
+                catch (IOException e) {
+                        e.printStackTrace();
+                        return -1;
                 }
                 
-                return this;
+                return nElements;
+        }
+        
+        /*
+         * Converts the first n data items of type 'type' in b to double
+         */
+        static void toDoubles(ByteBuffer b, DataType type, int n, double[] dst)
+        {
+                boolean signed = type.isSignedType();
+                
+                switch (type)
+                {
+                        case miINT8:
+                        case miUINT8:
+                                for ( int k = 0; k < n; k++ )
+                                        dst[k] = signed ? b.get(k) : b.get(k) & 0xFF;
+                                break;
+                        case miINT16:
+                        case miUINT16:
+                                for ( int k = 0; k < n; k++ )
+                                        dst[k] = signed ? b.getShort(2*k) : b.getChar(2*k);
+                                break;
+                        case miINT32:
+                        case miUINT32:
+                                for ( int k = 0; k < n; k++ )
+                                        dst[k] = signed ? b.getInt(4*k) : b.getInt(4*k) & 0xFFFFFFFFL;
+                                break;
+                        case miINT64:
+                        case miUINT64:
+                                for ( int k = 0; k < n; k++ )
+                                {
+                                        long v = b.getLong(8*k);
+                                        dst[k] = (signed || v >= 0) ? v : ((double)(v >>> 1) * 2.0 + (v & 1));
+                                }
+                                break;
+                        case miSINGLE:
+                                for ( int k = 0; k < n; k++ )
+                                        dst[k] = b.getFloat(4*k);
+                                break;
+                        default:
+                                for ( int k = 0; k < n; k++ )
+                                        dst[k] = b.getDouble(8*k);
+                                break;
+                }
+        }
+        
+        static void skipFully(InputStream in, long n) throws IOException
+        {
+                while ( n > 0 )
+                {
+                        long k = in.skip(n);
+                        
+                        if ( k <= 0 )
+                        {
+                                if ( in.read() < 0 )
+                                        throw new EOFException();
+                                k = 1;
+                        }
+                        
+                        n -= k;
+                }
         }
 }
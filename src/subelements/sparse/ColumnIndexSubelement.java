@@ -3,11 +3,15 @@ package subelements.sparse;
 import io.MyDataInputStream;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Arrays;
 
 import abstractTypes.AbstractDataElement;
 
+import subelements.base.IntArray;
+
 import common.DataTagFieldReader;
 import common.DataType;
 import exception.DataTypeException;
@@ -36,7 +40,7 @@ public class ColumnIndexSubelement extends AbstractDataElement
         {
                 dataObj = new int[idx.length];
                 System.arraycopy(idx, 0, dataObj, 0, idx.length);
-                setNumOfDataElementBytes(idx.length*super.sizeOfDataType());
+                setNumOfDataElementBytes((long)idx.length*super.sizeOfDataType());
         }
         
         public int[] getRowIndices()
@@ -55,9 +59,9 @@ public class ColumnIndexSubelement extends AbstractDataElement
         
         protected byte[] dataToByteArray(ByteOrder byte_order)
         {
-                byte[] b      = new byte[getDataLength()];
+                byte[] b      = new byte[byteArrayLength(getDataLength())];
                 int[]  data   = dataObj;
-                int    len    = getDataLength() / super.sizeOfDataType();
+                int    len    = (int)(getDataLength() / super.sizeOfDataType());
                 int    offset = 0;
                 
                 for ( int i = 0; i < len; i++ )
@@ -83,6 +87,12 @@ public class ColumnIndexSubelement extends AbstractDataElement
                 return b;
         }
         
+        @Override
+        protected void writeDataTo(OutputStream out, ByteOrder byte_order) throws IOException
+        {
+                new IntArray(dataObj).writeTo(out, byte_order);
+        }
+        
         public ColumnIndexSubelement read(MyDataInputStream in) throws DataTypeException
         {
                 DataTagFieldReader tagInfo = new DataTagFieldReader(in.getByteOrder());
@@ -91,30 +101,37 @@ public class ColumnIndexSubelement extends AbstractDataElement
                 if ( tagInfo.getDataType() != DataType.miINT32 )
                         throw new DataTypeException(DataType.miINT32, tagInfo.getDataType());
                 
-                int size = tagInfo.getDataSize();
+                if ( !tagInfo.fitsIntoArray() )
+                        return null;
+                
+                int size = (int)tagInfo.getDataSize();
                 
                 int[] idx = new int[size/tagInfo.getDataType().sizeOf()];
                 
-                for ( int i = 0; i < idx.length; i++ )
+                // Indices are decoded at once through an int view of their bytes
+                if ( tagInfo.isShortElement() )
                 {
+                        ByteBuffer.wrap(tagInfo.getTagData(),4,size).order(in.getByteOrder()).asIntBuffer().get(idx);
+                }
+                else
+                {
+                        byte[] raw = new byte[idx.length*4];
+                        
                         try {
-                                idx[i] = in.readInt();
+                                in.readFully(raw);
+                                in.skip(size - raw.length + tagInfo.getPadding());
                         }
                         catch (IOException e) {
                                 e.printStackTrace();
                                 return null;
                         }
+                        
+                        ByteBuffer.wrap(raw).order(in.getByteOrder()).asIntBuffer().get(idx);
                 }
                 
-                try {
-                        in.skip(tagInfo.getPadding());
-                }
-                catch (IOException e) {
-                        e.printStackTrace();
-                        return null;
-                }
-                
-                setData(idx);
+                // The decoded array is taken over without the copy made by setData(...)
+                dataObj = idx;
+                setNumOfDataElementBytes((long)idx.length*super.sizeOfDataType());
                 
                 return this;
         }
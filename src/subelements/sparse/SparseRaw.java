@@ -13,8 +13,8 @@ import subelements.base.DataArray;
  */
 public class SparseRaw
 {
-        public int[] ir;
-        public int[] jc;
+        public int[] ir; // row indices (CSC)
+        public int[] jc; // column pointers (CSC)
         
         public DataArray real_part;
         public DataArray imag_part;
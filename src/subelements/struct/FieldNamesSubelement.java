@@ -146,7 +146,7 @@ public class FieldNamesSubelement extends AbstractDataElement
         
         protected byte[] dataToByteArray(ByteOrder byte_order)
         {
-                byte[] b      = new byte[getDataLength()];
+                byte[] b      = new byte[byteArrayLength(getDataLength())];
                 int    offset = 0;
                 
                 for ( String data : dataObj )
@@ -176,11 +176,14 @@ public class FieldNamesSubelement extends AbstractDataElement
                 if ( tagInfo.getDataType() != DataType.miINT8 )
                         throw new DataTypeException(DataType.miINT8, tagInfo.getDataType());
                 
-                int nNames = tagInfo.getDataSize() / fieldLen;
+                if ( !tagInfo.fitsIntoArray() )
+                        return null;
+                
+                int nNames = (int)tagInfo.getDataSize() / fieldLen;
                 
                 if ( tagInfo.isShortElement() )
                 {
-                        int offset = 0;
+                        int offset = 4; // skip short tag itself
                         for ( int i = 0; i < nNames; i++ )
                         {
                                 addData(tagInfo.getTagData(),offset);
@@ -194,7 +197,7 @@ public class FieldNamesSubelement extends AbstractDataElement
                         for ( int i = 0; i < nNames; i++ )
                         {
                                 try {
-                                        in.read(buf);
+                                        in.readFully(buf);
                                 }
                                 catch (IOException e) {
                                         e.printStackTrace();
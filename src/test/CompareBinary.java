@@ -0,0 +1,58 @@
+package test;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Byte-level comparison of two files
+ */
+public class CompareBinary
+{
+        /**
+         * Compares the content of two files, ignoring the first
+         * <code>offset</code> bytes (e.g. the 128 byte header of .mat files,
+         * which contains the creation date).
+         *
+         * @param filename1  name of the first file
+         * @param filename2  name of the second file
+         * @param offset     number of leading bytes not to compare
+         * @return true, if both files have the same length and the same content
+         *         behind <code>offset</code>
+         */
+        public static boolean compare(String filename1, String filename2, int offset) throws IOException
+        {
+                File file1 = new File(filename1);
+                File file2 = new File(filename2);
+                
+                if ( file1.length() != file2.length() )
+                        return false;
+                
+                InputStream in1 = new BufferedInputStream(new FileInputStream(file1));
+                InputStream in2 = new BufferedInputStream(new FileInputStream(file2));
+                
+                try {
+                        in1.skip(offset);
+                        in2.skip(offset);
+                        
+                        int b1, b2;
+                        
+                        do {
+                                b1 = in1.read();
+                                b2 = in2.read();
+                                
+                                if ( b1 != b2 )
+                                        return false;
+                        }
+                        while ( b1 != -1 );
+                        
+                        return true;
+                }
+                finally {
+                        in1.close();
+                        in2.close();
+                }
+        }
+}
@@ -1,19 +1,59 @@
 package test;
 
 import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.zip.Deflater;
+
+import io.MxColumnIterator;
+import io.MxEventAdapter;
 import io.MxFileReader;
 import io.MxFileWriter;
+import io.MxStreamingNumericWriter;
+import io.compression.CodecPool;
+import io.compression.StreamCompressor;
+import io.compression.StreamDecompressor;
 
 import junit.framework.JUnit4TestAdapter;
 
+import com.sun.management.ThreadMXBean;
+
 import org.junit.Test;
 
+import subelements.base.BufferArray;
 import subelements.base.ByteArray;
 import subelements.base.DoubleArray;
 import subelements.base.IntArray;
 
+import common.DataTagField;
+import common.DataTagFieldReader;
 import common.DataType;
+import common.LazyMxDataObject;
 import common.MxDataObject;
 import common.MxCellDataObject;
 import common.MxCharacterDataObject;
@@ -23,6 +63,11 @@ import common.MxNumericDataObject;
 import common.MxSparseDataObject;
 import common.MxStructDataObject;
 
+import abstractTypes.AbstractArrayElement;
+import io.AdaptiveCompressionPolicy;
+import io.CompressionPolicy;
+import io.CompressionStats;
+
 import array.MxCellArray;
 import array.MxCharacterArray;
 import array.MxNumericArray;
@@ -1155,7 +1200,7 @@ public class MxArrayIOTest
                 refStruct1.setClassID(MxClassID.mxSTRUCT_CLASS);
                 refStruct1.setDimensions(new int[]{1,1});
                 refStruct1.setName(varname);
-                refStruct1.data_vec   = new MxDataObject[] {refVec4,refMat4};
+                refStruct1.setAllFields( new MxDataObject[] {refVec4,refMat4} );
                 
                 MxFileReader jfreader = new MxFileReader(writeName);
                 MxFileReader mfreader = new MxFileReader(readName);
@@ -1469,7 +1514,7 @@ public class MxArrayIOTest
                 refStruct1.setClassID(MxClassID.mxSTRUCT_CLASS);
                 refStruct1.setDimensions(new int[]{1,1});
                 refStruct1.setName("StructX_a");
-                refStruct1.data_vec   = new MxDataObject[] {refvec,refmat};
+                refStruct1.setAllFields( new MxDataObject[] {refvec,refmat} );
                 
                 MxFileReader jfreader = new MxFileReader(writeName);
                 MxFileReader mfreader = new MxFileReader(readName);
@@ -1658,4 +1703,1768 @@ public class MxArrayIOTest
                 assertEquals(s2, ref, m2);
                 assertEquals(s3, m1, m2);
         }
+        
+        @Test
+        /*
+         * Reading through the memory mapping must give the same result
+         * as reading through the RandomAccessFile
+         */
+        public void testMemoryMappedRead() throws Exception
+        {
+                final String[] readNames = { mDir + "mcell2.mat",
+                                             mDir + "mstruct_cat_cell.mat",
+                                             mDir + "msparse5.mat",
+                                             mDir + "mmat6_v7.mat" };
+                
+                for ( String readName : readNames )
+                {
+                        MxFileReader freader = new MxFileReader(readName);
+                        MxFileReader mreader = new MxFileReader(readName,true);
+                        
+                        for ( String varname : freader.getVarNames() )
+                        {
+                                MxDataObject m1 = freader.getVariable(varname);
+                                MxDataObject m2 = mreader.getVariable(varname);
+                                
+                                assertNotNull(m1);
+                                assertEquals("Test if mapped read equals file read: " + varname, m1, m2);
+                        }
+                        
+                        freader.close();
+                        mreader.close();
+                }
+        }
+        
+        @Test
+        /*
+         * MATLAB: g_int64 = int64([-2^31, 1, 2^31-1]);
+         *         save -v6 g_int64 g_int64
+         *         save -v7 g_int64_v7 g_int64
+         */
+        public void testInt64() throws Exception
+        {
+                final String tDir = "lib" + fileSep + "test_matrices" + fileSep;
+                final String[] readNames = { tDir + "g_int64.mat",
+                                             tDir + "g_int64_v7.mat" };
+                final String varname = "g_int64";
+                
+                long[] ref = {-2147483648L, 1L, 2147483647L};
+                
+                for ( String readName : readNames )
+                {
+                        MxFileReader mfreader = new MxFileReader(readName);
+                        
+                        MxDataObject m = mfreader.getVariable(varname);
+                        
+                        mfreader.close();
+                        
+                        long[] data = ((MxNumericDataObject)m).getInt64LinearArray();
+                        assertArrayEquals("Test if int64 data read from file equals reference", ref, data);
+                }
+        }
+        
+        @Test
+        /*
+         * Streaming an element must produce the same bytes as converting
+         * it to a byte array, for plain and compressed elements
+         */
+        public void testStreamedWrite() throws Exception
+        {
+                for ( boolean compFlag : new boolean[] {false,true} )
+                {
+                        MxNumericArray vec = new MxNumericArray("vec");
+                        vec.setData(new double[] {1.5,-2,3e10,4});
+                        
+                        MxCharacterArray str = new MxCharacterArray("str");
+                        str.setData("abc");
+                        
+                        MxCellArray cellArray = new MxCellArray("cell",compFlag);
+                        cellArray.setData(new AbstractArrayElement[] {vec,str});
+                        
+                        MxNumericArray mat = new MxNumericArray("mat",compFlag);
+                        mat.setData(new double[][] {{1,2},{3,4}}, new double[][] {{5,6},{7,8}});
+                        
+                        for ( AbstractArrayElement array : new AbstractArrayElement[] {cellArray,mat} )
+                        {
+                                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                                array.writeTo(out, ByteOrder.LITTLE_ENDIAN);
+                                
+                                assertArrayEquals("Test if streamed element equals byte array",
+                                                array.toByteArray(ByteOrder.LITTLE_ENDIAN), out.toByteArray());
+                        }
+                }
+        }
+        
+        @Test
+        /*
+         * A lazy handle must provide the variable's meta data without
+         * decoding it and must decode to the same object as getVariable()
+         */
+        public void testLazyVariable() throws Exception
+        {
+                final String readName = mDir + "mstruct_cat_cell.mat";
+                
+                MxFileReader mfreader = new MxFileReader(readName);
+                
+                for ( String varname : mfreader.getVarNames() )
+                {
+                        MxDataObject m1 = mfreader.getVariable(varname);
+                        MxDataObject m2 = mfreader.getVariable(varname,true);
+                        
+                        assertTrue(m2 instanceof LazyMxDataObject);
+                        
+                        LazyMxDataObject lazy = (LazyMxDataObject)m2;
+                        
+                        assertFalse("Test if lazy variable is not decoded yet", lazy.isLoaded());
+                        assertEquals(m1.getName(), lazy.getName());
+                        assertEquals(m1.getClassID(), lazy.getClassID());
+                        assertArrayEquals(m1.getDimensions(), lazy.getDimensions());
+                        
+                        assertEquals("Test if lazy variable equals decoded variable", m1, lazy.getDataObject());
+                        assertTrue(lazy.isLoaded());
+                        
+                        lazy.release();
+                        assertFalse(lazy.isLoaded());
+                        assertEquals("Test if released variable is decoded again", m1, lazy.getDataObject());
+                }
+                
+                mfreader.close();
+        }
+        
+        @Test
+        /*
+         * Reopening a file through its sidecar index must give the same
+         * variables as scanning the file
+         */
+        public void testIndexFile() throws Exception
+        {
+                final String readName  = mDir + "mstruct_cat_cell.mat";
+                final String writeName = jDir + "jstruct_cat_cell_idx.mat";
+                
+                Files.copy(new File(readName).toPath(), new File(writeName).toPath(),
+                                StandardCopyOption.REPLACE_EXISTING);
+                
+                File idxFile = new File(writeName + ".idx");
+                idxFile.delete();
+                
+                // First open creates the index file, second open uses it
+                MxFileReader freader1 = new MxFileReader(writeName,false,true);
+                freader1.close();
+                
+                assertTrue("Test if index file has been created", idxFile.isFile());
+                
+                MxFileReader freader  = new MxFileReader(readName);
+                MxFileReader freader2 = new MxFileReader(writeName,false,true);
+                
+                assertEquals(new HashSet<String>(Arrays.asList(freader.getVarNames())),
+                                new HashSet<String>(Arrays.asList(freader2.getVarNames())));
+                
+                for ( String varname : freader.getVarNames() )
+                {
+                        assertEquals("Test if variable read with index file equals variable read without",
+                                        freader.getVariable(varname), freader2.getVariable(varname));
+                }
+                
+                freader.close();
+                freader2.close();
+                
+                // A corrupt index file is not used, the file is scanned instead
+                RandomAccessFile raf = new RandomAccessFile(idxFile, "rw");
+                raf.seek(24);
+                raf.writeInt(-1);
+                raf.close();
+                
+                freader2 = new MxFileReader(writeName,false,true);
+                assertEquals(freader.getVarNames().length, freader2.getVarNames().length);
+                freader2.close();
+                
+                // A valid index file is used: the variables are found through it,
+                // even though the first element of the .mat file is unreadable now
+                File matFile = new File(writeName);
+                long mtime   = matFile.lastModified();
+                raf = new RandomAccessFile(matFile, "rw");
+                raf.seek(128);
+                raf.write(new byte[8]);
+                raf.close();
+                assertTrue(matFile.setLastModified(mtime));
+                
+                freader2 = new MxFileReader(writeName,false,true);
+                assertEquals(new HashSet<String>(Arrays.asList(freader.getVarNames())),
+                                new HashSet<String>(Arrays.asList(freader2.getVarNames())));
+                freader2.close();
+                
+                idxFile.delete();
+        }
+        
+        @Test
+        /*
+         * Field name tables larger than the read buffer of the stream
+         * must be read completely
+         */
+        public void testManyFieldNames() throws Exception
+        {
+                final String writeName = jDir + "jmany_fields.mat";
+                final int    n         = 400;
+                
+                for ( boolean compressed : new boolean[] {false, true} )
+                {
+                        MxStructArray struct = new MxStructArray("s", n, compressed);
+                        for ( int k = 0; k < n; k++ )
+                        {
+                                MxNumericArray a = new MxNumericArray("");
+                                a.setData(new double[] {k});
+                                struct.addData(String.format("fld_%016d", k), a);
+                        }
+                        
+                        MxFileWriter fwriter = new MxFileWriter(writeName);
+                        fwriter.write(struct);
+                        fwriter.close();
+                        
+                        for ( boolean mapped : new boolean[] {false, true} )
+                        {
+                                MxFileReader freader = new MxFileReader(writeName, mapped);
+                                MxStructDataObject st = (MxStructDataObject)freader.getVariable("s");
+                                
+                                assertEquals(n, st.getFieldNames().length);
+                                for ( int k = 0; k < n; k++ )
+                                {
+                                        String name = String.format("fld_%016d", k);
+                                        assertEquals(name, st.getFieldNames()[k]);
+                                        assertArrayEquals(new double[] {k},
+                                                          ((MxNumericDataObject)st.getField(name)).getDoubleLinearArray(), 0);
+                                }
+                                
+                                freader.close();
+                        }
+                }
+        }
+        
+        @Test
+        /*
+         * Decoding all variables concurrently must give the same result
+         * as decoding them one after the other
+         */
+        public void testReadAllParallel() throws Exception
+        {
+                final String writeName = jDir + "jparallel_v7.mat";
+                final String[] readNames = { mDir + "mstruct_cat_cell.mat",
+                                             writeName };
+                
+                // File with several compressed variables
+                MxFileWriter fwriter = new MxFileWriter(writeName);
+                
+                for ( int k = 0; k < 8; k++ )
+                {
+                        double[] data = new double[1000];
+                        for ( int i = 0; i < data.length; i++ )
+                                data[i] = Math.sin(i*(k+1));
+                        
+                        MxNumericArray numArray = new MxNumericArray("var" + k,true);
+                        numArray.setData(data);
+                        fwriter.write(numArray);
+                }
+                
+                fwriter.close();
+                
+                ExecutorService executor = Executors.newFixedThreadPool(4);
+                
+                try {
+                        for ( String readName : readNames )
+                        {
+                                for ( boolean memoryMapped : new boolean[] {false,true} )
+                                {
+                                        MxFileReader freader = new MxFileReader(readName,memoryMapped);
+                                        
+                                        Map<String,MxDataObject> all = freader.readAll(executor);
+                                        
+                                        assertEquals(freader.getVarNames().length, all.size());
+                                        
+                                        for ( String varname : freader.getVarNames() )
+                                        {
+                                                assertNotNull(all.get(varname));
+                                                assertEquals("Test if parallel read equals sequential read: " + varname,
+                                                                freader.getVariable(varname), all.get(varname));
+                                        }
+                                        
+                                        freader.close();
+                                }
+                        }
+                }
+                finally {
+                        executor.shutdown();
+                }
+        }
+        
+        @Test
+        /*
+         * Writing a batch of elements with parallel compression must give
+         * the same file as writing the elements one after the other
+         */
+        public void testParallelCompression() throws Exception
+        {
+                final String writeName1 = jDir + "jbatch1_v7.mat";
+                final String writeName2 = jDir + "jbatch2_v7.mat";
+                final String writeName3 = jDir + "jbatch3_v7.mat";
+                
+                List<AbstractArrayElement> arrays = new ArrayList<AbstractArrayElement>();
+                
+                for ( int k = 0; k < 6; k++ )
+                {
+                        double[] data = new double[2000];
+                        for ( int i = 0; i < data.length; i++ )
+                                data[i] = Math.cos(i*(k+1));
+                        
+                        MxNumericArray numArray = new MxNumericArray("var" + k,(k%3) != 0);
+                        numArray.setData(data);
+                        arrays.add(numArray);
+                }
+                
+                MxFileWriter fwriter1 = new MxFileWriter(writeName1);
+                for ( AbstractArrayElement array : arrays )
+                        fwriter1.write(array);
+                fwriter1.close();
+                
+                ExecutorService executor = Executors.newFixedThreadPool(3);
+                
+                try {
+                        MxFileWriter fwriter2 = new MxFileWriter(writeName2);
+                        fwriter2.write(arrays, executor);
+                        fwriter2.close();
+                        
+                        MxFileWriter fwriter3 = new MxFileWriter(writeName3);
+                        fwriter3.setCompressionLevel(Deflater.BEST_SPEED);
+                        fwriter3.setCompressionStrategy(Deflater.FILTERED);
+                        fwriter3.write(arrays, executor);
+                        fwriter3.close();
+                }
+                finally {
+                        executor.shutdown();
+                }
+                
+                assertTrue( CompareBinary.compare(writeName1, writeName2, 128) );
+                
+                MxFileReader freader1 = new MxFileReader(writeName1);
+                MxFileReader freader3 = new MxFileReader(writeName3);
+                
+                for ( String varname : freader1.getVarNames() )
+                {
+                        assertEquals("Test if variable compressed with other settings is read the same",
+                                        freader1.getVariable(varname), freader3.getVariable(varname));
+                }
+                
+                assertEquals(freader1.getVarNames().length, freader3.getVarNames().length);
+                
+                freader1.close();
+                freader3.close();
+        }
+        
+        @Test
+        /*
+         * Several threads calling getVariable() on the same reader must not
+         * interfere with each other
+         */
+        public void testConcurrentGetVariable() throws Exception
+        {
+                final String readName = mDir + "mstruct_cat_cell.mat";
+                
+                final MxFileReader freader = new MxFileReader(readName);
+                final String[]     names   = freader.getVarNames();
+                
+                final Map<String,MxDataObject> reference = new HashMap<String,MxDataObject>();
+                for ( String varname : names )
+                        reference.put(varname, freader.getVariable(varname));
+                
+                final int nThreads = 8;
+                
+                ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+                List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+                
+                try {
+                        for ( int t = 0; t < nThreads; t++ )
+                        {
+                                results.add(executor.submit(new Callable<Boolean>()
+                                {
+                                        public Boolean call()
+                                        {
+                                                for ( int n = 0; n < 200; n++ )
+                                                {
+                                                        String varname = names[n % names.length];
+                                                        
+                                                        if ( !reference.get(varname).equals(freader.getVariable(varname)) )
+                                                                return false;
+                                                }
+                                                
+                                                return true;
+                                        }
+                                }));
+                        }
+                        
+                        for ( Future<Boolean> result : results )
+                                assertTrue("Test if concurrently read variables are correct", result.get());
+                }
+                finally {
+                        executor.shutdown();
+                        freader.close();
+                }
+        }
+        
+        @Test
+        /*
+         * Zero-copy reading of a memory mapped file must give views that
+         * hold the same data as a regular read and write the same bytes
+         */
+        public void testZeroCopyRead() throws Exception
+        {
+                final String writeName = jDir + "jzerocopy.mat";
+                
+                for ( ByteOrder order : new ByteOrder[] {ByteOrder.LITTLE_ENDIAN,ByteOrder.BIG_ENDIAN} )
+                {
+                        MxFileWriter fwriter = new MxFileWriter(writeName,order);
+                        
+                        MxNumericArray dvec = new MxNumericArray("dvec");
+                        dvec.setData(new double[] {0.5,-1.25,3e10,Math.PI});
+                        fwriter.write(dvec);
+                        
+                        MxNumericArray ivec = new MxNumericArray("ivec");
+                        ivec.setData(new int[] {-70000,1,2,70000});
+                        fwriter.write(ivec);
+                        
+                        fwriter.close();
+                        
+                        MxFileReader freader = new MxFileReader(writeName);
+                        MxFileReader mreader = new MxFileReader(writeName,true);
+                        mreader.setZeroCopy(true);
+                        
+                        for ( String varname : new String[] {"dvec","ivec"} )
+                        {
+                                MxNumericDataObject m1 = (MxNumericDataObject)freader.getVariable(varname);
+                                MxNumericDataObject m2 = (MxNumericDataObject)mreader.getVariable(varname);
+                                
+                                assertTrue("Test if zero-copy read returns a view",
+                                                m2.getRealDataStorage() instanceof BufferArray);
+                                
+                                BufferArray view = (BufferArray)m2.getRealDataStorage();
+                                
+                                assertEquals(order, view.getByteOrder());
+                                assertEquals("Test if view holds the decoded data",
+                                                m1.getRealDataStorage(), view.toDataArray());
+                                assertArrayEquals(m1.getRealDataStorage().toDoubleArray(true).getData(),
+                                                view.toDoubleArray(true).getData(), 0.0);
+                                
+                                for ( ByteOrder outOrder : new ByteOrder[] {ByteOrder.LITTLE_ENDIAN,ByteOrder.BIG_ENDIAN} )
+                                {
+                                        ByteArrayOutputStream out = new ByteArrayOutputStream();
+                                        view.writeTo(out, outOrder);
+                                        
+                                        byte[] ref = m1.getRealDataStorage().dataToByteArray(outOrder);
+                                        
+                                        assertArrayEquals(ref, view.dataToByteArray(outOrder));
+                                        assertArrayEquals(ref, out.toByteArray());
+                                }
+                        }
+                        
+                        assertArrayEquals(((MxNumericDataObject)freader.getVariable("ivec")).getInt32LinearArray(),
+                                        ((MxNumericDataObject)mreader.getVariable("ivec")).getInt32LinearArray());
+                        
+                        freader.close();
+                        mreader.close();
+                }
+        }
+        
+        @Test
+        /*
+         * A block read by a hyperslab read must equal the same block taken
+         * from the completely decoded variable
+         */
+        public void testHyperslabRead() throws Exception
+        {
+                final String writeName = jDir + "jhyperslab.mat";
+                
+                final int rows = 7;
+                final int cols = 5;
+                
+                double[][] re = new double[rows][cols];
+                double[][] im = new double[rows][cols];
+                int[][]    in = new int[rows][cols];
+                for ( int i = 0; i < rows; i++ )
+                {
+                        for ( int j = 0; j < cols; j++ )
+                        {
+                                re[i][j] = i + 0.1*j;
+                                im[i][j] = -i - 0.5*j;
+                                in[i][j] = 1000*i - 70000*j;
+                        }
+                }
+                
+                MxFileWriter fwriter = new MxFileWriter(writeName);
+                for ( boolean compFlag : new boolean[] {false,true} )
+                {
+                        MxNumericArray mat = new MxNumericArray("re" + compFlag,compFlag);
+                        mat.setData(re);
+                        fwriter.write(mat);
+                        
+                        MxNumericArray cmat = new MxNumericArray("cplx" + compFlag,compFlag);
+                        cmat.setData(re,im);
+                        fwriter.write(cmat);
+                        
+                        MxNumericArray imat = new MxNumericArray("int" + compFlag,compFlag);
+                        imat.setData(in);
+                        fwriter.write(imat);
+                }
+                fwriter.close();
+                
+                final int[][][] blocks = {
+                                // start     count      stride
+                                { {0,0},    {rows,cols}, {1,1} },
+                                { {0,2},    {rows,2},    {1,1} },
+                                { {2,1},    {3,3},       {1,1} },
+                                { {1,0},    {3,3},       {2,2} },
+                                { {6,4},    {1,1},       {1,1} },
+                                { {0,0},    {0,2},       {1,1} } };
+                
+                for ( boolean mapped : new boolean[] {false,true} )
+                {
+                        MxFileReader freader = new MxFileReader(writeName,mapped);
+                        
+                        for ( String varname : freader.getVarNames() )
+                        {
+                                MxNumericDataObject full = (MxNumericDataObject)freader.getVariable(varname);
+                                double[] fullRe = full.getRealDataStorage().toDoubleArray(true).getData();
+                                double[] fullIm = full.isComplex() ? full.getImagDataStorage().toDoubleArray(true).getData() : null;
+                                
+                                for ( int[][] b : blocks )
+                                {
+                                        int[] start = b[0], count = b[1], stride = b[2];
+                                        
+                                        MxNumericDataObject part = freader.getVariable(varname,start,count,stride);
+                                        
+                                        assertNotNull(part);
+                                        assertArrayEquals(count, part.getDimensions());
+                                        assertEquals(full.getRealDataStorageType(), part.getRealDataStorageType());
+                                        
+                                        double[] refRe = new double[count[0]*count[1]];
+                                        double[] refIm = new double[count[0]*count[1]];
+                                        for ( int j = 0; j < count[1]; j++ )
+                                        {
+                                                for ( int i = 0; i < count[0]; i++ )
+                                                {
+                                                        int k = (start[0]+i*stride[0]) + (start[1]+j*stride[1])*rows;
+                                                        refRe[i+j*count[0]] = fullRe[k];
+                                                        if ( fullIm != null )
+                                                                refIm[i+j*count[0]] = fullIm[k];
+                                                }
+                                        }
+                                        
+                                        assertArrayEquals("Test if block equals part of variable " + varname,
+                                                        refRe, part.getRealDataStorage().toDoubleArray(true).getData(), 0.0);
+                                        if ( fullIm != null )
+                                                assertArrayEquals(refIm, part.getImagDataStorage().toDoubleArray(true).getData(), 0.0);
+                                }
+                        }
+                        
+                        try {
+                                freader.getVariable("retrue",new int[] {0,3},new int[] {1,2},new int[] {1,2});
+                                fail("Test if block exceeding the variable is rejected");
+                        }
+                        catch (IllegalArgumentException e) {
+                        }
+                        
+                        freader.close();
+                }
+        }
+        
+        @Test
+        /*
+         * Appending variables to an existing file must give the same file
+         * as writing all variables at once; remains of an interrupted write
+         * must be dropped
+         */
+        public void testAppend() throws Exception
+        {
+                final String writeName  = jDir + "jappend.mat";
+                final String writeName2 = jDir + "jappend_ref.mat";
+                
+                MxNumericArray vec = new MxNumericArray("vec");
+                vec.setData(new double[] {1.5,-2,3e10,4});
+                
+                MxNumericArray mat = new MxNumericArray("mat",true);
+                mat.setData(new double[][] {{1,2},{3,4}}, new double[][] {{5,6},{7,8}});
+                
+                MxCharacterArray str = new MxCharacterArray("str");
+                str.setData("appended");
+                
+                MxFileWriter fwriter = new MxFileWriter(writeName2,ByteOrder.BIG_ENDIAN);
+                fwriter.write(vec);
+                fwriter.write(mat);
+                fwriter.write(str);
+                fwriter.close();
+                
+                fwriter = new MxFileWriter(writeName,ByteOrder.BIG_ENDIAN);
+                fwriter.write(vec);
+                fwriter.close();
+                
+                // The byte order of the existing file is kept
+                fwriter = new MxFileWriter(writeName,ByteOrder.LITTLE_ENDIAN,true);
+                assertEquals(ByteOrder.BIG_ENDIAN, fwriter.getByteOrder());
+                fwriter.write(mat);
+                fwriter.close();
+                
+                // Simulate an interrupted write
+                RandomAccessFile raFile = new RandomAccessFile(writeName,"rw");
+                raFile.seek(raFile.length());
+                raFile.write(new byte[] {0,0,0,14,0,0,1,0,1,2,3});
+                raFile.close();
+                
+                fwriter = new MxFileWriter(writeName,true);
+                fwriter.write(str);
+                fwriter.close();
+                
+                assertTrue("Test if appended file equals file written at once",
+                                CompareBinary.compare(writeName, writeName2, 128));
+                
+                MxFileReader freader = new MxFileReader(writeName);
+                assertEquals(3, freader.getVarNames().length);
+                assertEquals("appended", ((MxCharacterDataObject)freader.getVariable("str")).getString());
+                freader.close();
+                
+                // Complete data behind the elements, which is not an array
+                // element, is not cut off and the file is not opened
+                raFile = new RandomAccessFile(writeName,"rw");
+                raFile.seek(raFile.length());
+                raFile.write(new byte[] {0,0,0,9,0,0,0,8,1,2,3,4,5,6,7,8});
+                long length = raFile.length();
+                raFile.close();
+                
+                fwriter = new MxFileWriter(writeName,true);
+                fwriter.write(vec);
+                fwriter.close();
+                
+                assertEquals(length, new File(writeName).length());
+        }
+        
+        @Test
+        /*
+         * A matrix written column by column must give the same file as the
+         * matrix written at once
+         */
+        public void testStreamingWriter() throws Exception
+        {
+                final String writeName  = jDir + "jstreaming.mat";
+                final String writeName2 = jDir + "jstreaming_ref.mat";
+                
+                final int rows = 5;
+                final int cols = 7;
+                
+                double[][] mat = new double[rows][cols];
+                for ( int i = 0; i < rows; i++ )
+                        for ( int j = 0; j < cols; j++ )
+                                mat[i][j] = i + 0.25*j;
+                
+                MxNumericArray vec = new MxNumericArray("vec");
+                vec.setData(new double[] {1.5,-2,3e10,4});
+                
+                MxNumericArray ref = new MxNumericArray("mat");
+                ref.setData(mat);
+                
+                MxFileWriter fwriter = new MxFileWriter(writeName2);
+                fwriter.write(ref);
+                fwriter.write(vec);
+                fwriter.close();
+                
+                fwriter = new MxFileWriter(writeName);
+                MxStreamingNumericWriter swriter = fwriter.createStreamingWriter("mat",rows);
+                
+                double[] col = new double[rows];
+                for ( int j = 0; j < 4; j++ )
+                {
+                        for ( int i = 0; i < rows; i++ )
+                                col[i] = mat[i][j];
+                        swriter.writeColumn(col);
+                }
+                
+                // Remaining columns in chunks not aligned with columns
+                double[] rest = new double[rows*(cols-4)];
+                for ( int j = 4; j < cols; j++ )
+                        for ( int i = 0; i < rows; i++ )
+                                rest[i+(j-4)*rows] = mat[i][j];
+                swriter.write(rest, 0, 3);
+                swriter.write(rest, 3, rest.length-3);
+                swriter.close();
+                
+                fwriter.write(vec);
+                fwriter.close();
+                
+                assertTrue("Test if streamed matrix equals matrix written at once",
+                                CompareBinary.compare(writeName, writeName2, 128));
+                
+                MxFileReader freader = new MxFileReader(writeName);
+                MxNumericDataObject m = (MxNumericDataObject)freader.getVariable("mat");
+                assertArrayEquals(new int[] {rows,cols}, m.getDimensions());
+                assertArrayEquals(mat[rows-1], m.getRealDoubleMtx()[rows-1], 0.0);
+                freader.close();
+                
+                // Closing the file closes an open streaming writer
+                fwriter = new MxFileWriter(writeName);
+                swriter = fwriter.createStreamingWriter("mat",rows);
+                for ( int j = 0; j < 3; j++ )
+                {
+                        for ( int i = 0; i < rows; i++ )
+                                col[i] = mat[i][j];
+                        swriter.writeColumn(col);
+                }
+                fwriter.close();
+                
+                freader = new MxFileReader(writeName);
+                m = (MxNumericDataObject)freader.getVariable("mat");
+                assertArrayEquals(new int[] {rows,3}, m.getDimensions());
+                assertArrayEquals(Arrays.copyOf(mat[rows-1],3), m.getRealDoubleMtx()[rows-1], 0.0);
+                freader.close();
+        }
+        
+        @Test
+        /*
+         * Sparse matrices are read in CSC form; the coordinate form
+         * is only built on request
+         */
+        public void testSparseCSC() throws Exception
+        {
+                final String writeName = jDir + "jsparse_csc.mat";
+                final String varname   = "sparse";
+                
+                /*
+                 *  0    1.1    0    0    0
+                 *  2.2  0      0    0    4.4
+                 *  0    3.3    0    0    5.5
+                 */
+                int[]    ir   = {1, 0, 2, 1, 2};
+                int[]    jc   = {0, 1, 1, 4, 4};
+                double[] data = {2.2, 1.1, 3.3, 4.4, 5.5};
+                
+                MxSparseArray sparseArray = new MxSparseArray(varname);
+                sparseArray.setData(ir,jc,data);
+                
+                MxFileWriter fwriter = new MxFileWriter(writeName);
+                fwriter.write(sparseArray);
+                fwriter.close();
+                
+                MxFileReader freader = new MxFileReader(writeName);
+                MxSparseDataObject m = (MxSparseDataObject)freader.getVariable(varname);
+                freader.close();
+                
+                assertEquals(5, m.getNumNonZeros());
+                assertArrayEquals(new int[] {1, 0, 2, 1, 2}, Arrays.copyOf(m.getIr(), 5));
+                assertArrayEquals(new int[] {0, 1, 3, 3, 3, 5}, m.getJc());
+                assertSame("Test if CSC arrays are not copied", m.getJc(), m.getJc());
+                
+                assertArrayEquals(ir, m.getRowIndeices());
+                assertArrayEquals(jc, m.getColumnIndices());
+                
+                // Cursor visits the non-empty columns only
+                List<Integer> columns = new ArrayList<Integer>();
+                List<Integer> rows    = new ArrayList<Integer>();
+                MxSparseDataObject.ColumnCursor c = m.columnCursor();
+                while ( c.next() )
+                {
+                        columns.add(c.column());
+                        for ( int k = c.start(); k < c.end(); k++ )
+                                rows.add(m.getIr()[k]);
+                }
+                assertEquals(Arrays.asList(0, 1, 4), columns);
+                assertEquals(Arrays.asList(1, 0, 2, 1, 2), rows);
+                
+                // Objects set in coordinate form equal objects read in CSC form
+                MxSparseDataObject ref = new MxSparseDataObject(m);
+                ref.setNzMax(m.getNzMax());
+                ref.setRealDataStorageType(m.getRealDataStorageType());
+                ref.setRealDataStorage(m.getRealDataStorage());
+                ref.setRowIndeices(ir);
+                ref.setColumnIndices(jc);
+                
+                assertEquals(ref, m);
+                assertEquals(ref.hashCode(), m.hashCode());
+        }
+        
+        @Test
+        /*
+         * Sparse matrices built from unsorted coordinates (with duplicates
+         * summed up or overwritten) must equal the matrix built in CSC form
+         */
+        public void testSparseBuilder() throws Exception
+        {
+                final String writeName = jDir + "jsparse_builder.mat";
+                
+                /*
+                 *  0    1.1    0    0    0
+                 *  2.2  0      0    0    4.4
+                 *  0    3.3    0    0    5.5
+                 *  (4 rows)
+                 */
+                int[]    ir   = {2, 1, 0, 2, 1, 1, 0, 1};
+                int[]    jc   = {4, 4, 1, 1, 0, 0, 3, 4};
+                double[] data = {5.5, 9.9, 1.1, 3.3, 2.2, 0.0, 0.0, 4.4};
+                
+                // Unsorted input, the last non-zero value of a location wins
+                MxSparseArray last = new MxSparseArray("last");
+                last.setData(ir,jc,data,null,4,5,false);
+                
+                // Duplicates summed up: S(2,5) = 9.9 + 4.4, S(2,1) = 2.2 + 0.0
+                MxSparseArray sum = new MxSparseArray("sum");
+                sum.setData(ir,jc,data,null,-1,-1,true);
+                
+                // Given in CSC form
+                MxSparseArray csc = new MxSparseArray("csc");
+                csc.setCSC(new int[] {1, 0, 2, 1, 2}, new int[] {0, 1, 3, 3, 3, 5},
+                           new double[] {2.2, 1.1, 3.3, 4.4, 5.5}, null, 4, 5);
+                
+                MxFileWriter fwriter = new MxFileWriter(writeName);
+                fwriter.write(last);
+                fwriter.write(sum);
+                fwriter.write(csc);
+                fwriter.close();
+                
+                MxFileReader freader = new MxFileReader(writeName);
+                MxSparseDataObject mLast = (MxSparseDataObject)freader.getVariable("last");
+                MxSparseDataObject mSum  = (MxSparseDataObject)freader.getVariable("sum");
+                MxSparseDataObject mCSC  = (MxSparseDataObject)freader.getVariable("csc");
+                freader.close();
+                
+                assertArrayEquals(new int[] {4, 5}, mLast.getDimensions());
+                assertArrayEquals(new int[] {1, 0, 2, 1, 2}, mLast.getIr());
+                assertArrayEquals(new int[] {0, 1, 3, 3, 3, 5}, mLast.getJc());
+                assertArrayEquals(new double[] {2.2, 1.1, 3.3, 4.4, 5.5},
+                                  mLast.getRealDataStorage().toDoubleArray(true).getData(), 0);
+                
+                assertArrayEquals(new int[] {3, 5}, mSum.getDimensions());
+                assertArrayEquals(new int[] {1, 0, 2, 1, 2}, mSum.getIr());
+                assertArrayEquals(new double[] {2.2, 1.1, 3.3, 9.9 + 4.4, 5.5},
+                                  mSum.getRealDataStorage().toDoubleArray(true).getData(), 0);
+                
+                mCSC.setName("last");
+                assertEquals(mLast, mCSC);
+                
+                // Invalid input
+                try {
+                        new MxSparseArray("x").setData(ir,jc,data,null,2,5,false);
+                        fail("Row index exceeds the number of rows");
+                }
+                catch (IllegalArgumentException e) {}
+                
+                try {
+                        new MxSparseArray("x").setCSC(new int[] {0}, new int[] {0, 2}, new double[] {1}, null, 1, 1);
+                        fail("Column pointers exceed the number of elements");
+                }
+                catch (IllegalArgumentException e) {}
+                
+                int[][] badRows = { {0, 2}, {-1, 0}, {1, 0}, {1, 1} };
+                for ( int[] rows : badRows )
+                {
+                        try {
+                                new MxSparseArray("x").setCSC(rows, new int[] {0, 2}, new double[] {1, 2}, null, 2, 1);
+                                fail("Row indices out of range or not increasing: " + Arrays.toString(rows));
+                        }
+                        catch (IllegalArgumentException e) {}
+                }
+        }
+        
+        @Test
+        /*
+         * Numeric arrays set from char, float and byte arrays must be written
+         * and read back in their own storage types
+         */
+        public void testNativeStorageTypes() throws Exception
+        {
+                final String writeName = jDir + "jnative.mat";
+                
+                char[]  u16      = {0, 1, 40000, 65535, 7};
+                char[]  u16short = {65535, 3};
+                float[] single   = {1.5f, -2.25f, 3.0e-20f};
+                byte[]  i8       = {-128, 0, 127};
+                
+                MxFileWriter fwriter = new MxFileWriter(writeName);
+                
+                MxNumericArray a = new MxNumericArray("u16");
+                a.setData(u16);
+                fwriter.write(a);
+                
+                a = new MxNumericArray("u16short"); // stored in a short element
+                a.setData(u16short);
+                fwriter.write(a);
+                
+                a = new MxNumericArray("single");
+                a.setData(single);
+                fwriter.write(a);
+                
+                a = new MxNumericArray("i8");
+                a.setData(i8);
+                fwriter.write(a);
+                
+                fwriter.close();
+                
+                MxFileReader freader = new MxFileReader(writeName);
+                MxFileReader mreader = new MxFileReader(writeName,true);
+                mreader.setZeroCopy(true);
+                
+                for ( MxFileReader reader : new MxFileReader[] {freader, mreader} )
+                {
+                        MxNumericDataObject m = (MxNumericDataObject)reader.getVariable("u16");
+                        assertEquals(DataType.miUINT16, m.getRealDataStorageType());
+                        assertArrayEquals(u16, m.getUInt16RawLinearArray());
+                        assertSame("Test if storage is not copied", m.getUInt16RawLinearArray(), m.getUInt16RawLinearArray());
+                        assertArrayEquals(new int[] {0, 1, 40000, 65535, 7}, m.getUInt16LinearArray());
+                        assertArrayEquals(new double[] {0, 1, 40000, 65535, 7}, m.getDoubleLinearArray(), 0);
+                        
+                        m = (MxNumericDataObject)reader.getVariable("u16short");
+                        assertEquals(DataType.miUINT16, m.getRealDataStorageType());
+                        assertArrayEquals(u16short, m.getUInt16RawLinearArray());
+                        
+                        m = (MxNumericDataObject)reader.getVariable("single");
+                        assertEquals(MxClassID.mxSINGLE_CLASS, m.getClassID());
+                        assertEquals(DataType.miSINGLE, m.getRealDataStorageType());
+                        assertArrayEquals(single, m.getSingleLinearArray(), 0);
+                        assertSame("Test if storage is not copied", m.getSingleLinearArray(), m.getSingleLinearArray());
+                        
+                        m = (MxNumericDataObject)reader.getVariable("i8");
+                        assertEquals(DataType.miINT8, m.getRealDataStorageType());
+                        assertArrayEquals(i8, m.getInt8LinearArray());
+                        assertSame("Test if storage is not copied", m.getInt8LinearArray(), m.getInt8LinearArray());
+                }
+                
+                freader.close();
+                mreader.close();
+        }
+        
+        @Test
+        /*
+         * Variables read directly into Java arrays must equal the converted
+         * data of the decoded variables, whatever their storage type
+         */
+        public void testGetVariableAs() throws Exception
+        {
+                final String writeName = jDir + "jdirect.mat";
+                
+                double[] dbl   = {0.5, -1.25, 1e10, 3};
+                double[] small = {0, 1, 200, 255};   // stored as uint8
+                double[] neg   = {-3, 0, 1000, -1};  // stored as int16
+                short[]  i16   = {-32768, -1, 0, 32767};
+                char[]   u16   = {0, 1, 40000, 65535};
+                int[]    i32   = {-70000, 1, 2, 70000};
+                float[]  sgl   = {1.5f, -2.25f};
+                
+                MxFileWriter fwriter = new MxFileWriter(writeName);
+                
+                MxNumericArray a = new MxNumericArray("dbl", true);
+                a.setData(dbl);
+                fwriter.write(a);
+                
+                a = new MxNumericArray("small");
+                a.setData(small);
+                fwriter.write(a);
+                
+                a = new MxNumericArray("neg", true);
+                a.setData(neg);
+                fwriter.write(a);
+                
+                a = new MxNumericArray("i16");
+                a.setData(i16);
+                fwriter.write(a);
+                
+                a = new MxNumericArray("u16");
+                a.setData(u16);
+                fwriter.write(a);
+                
+                a = new MxNumericArray("i32", true);
+                a.setData(i32);
+                fwriter.write(a);
+                
+                a = new MxNumericArray("sgl");
+                a.setData(sgl);
+                fwriter.write(a);
+                
+                MxCharacterArray str = new MxCharacterArray("str");
+                str.setData("text");
+                fwriter.write(str);
+                
+                fwriter.close();
+                
+                MxFileReader freader = new MxFileReader(writeName);
+                
+                assertEquals(DataType.miUINT8, ((MxNumericDataObject)freader.getVariable("small")).getRealDataStorageType());
+                assertEquals(DataType.miINT16, ((MxNumericDataObject)freader.getVariable("neg")).getRealDataStorageType());
+                
+                for ( String name : new String[] {"dbl", "small", "neg", "i16", "u16", "i32", "sgl"} )
+                {
+                        double[] ref = ((MxNumericDataObject)freader.getVariable(name)).getDoubleLinearArray();
+                        
+                        assertArrayEquals(name, ref, freader.getVariableAs(name, double[].class), 0);
+                        
+                        float[] f = freader.getVariableAs(name, float[].class);
+                        assertEquals(ref.length, f.length);
+                        for ( int k = 0; k < ref.length; k++ )
+                                assertEquals(name, (float)ref[k], f[k], 0);
+                }
+                
+                assertArrayEquals(sgl, freader.getVariableAs("sgl", float[].class), 0);
+                
+                // Buffers are filled from their position on
+                FloatBuffer fb = FloatBuffer.allocate(6);
+                fb.put(7f);
+                assertEquals(4, freader.getVariableInto("u16", fb));
+                assertEquals(5, fb.position());
+                assertArrayEquals(new float[] {7, 0, 1, 40000, 65535, 0}, fb.array(), 0);
+                
+                try {
+                        freader.getVariableInto("u16", DoubleBuffer.allocate(3));
+                        fail("Buffer is too small");
+                }
+                catch (BufferOverflowException e) {}
+                
+                assertEquals(-1, freader.getVariableInto("str", DoubleBuffer.allocate(10)));
+                assertNull(freader.getVariableAs("missing", double[].class));
+                
+                freader.close();
+        }
+        
+        @Test
+        /*
+         * Decoding the elements of a cell array must not allocate more than
+         * a few scratch objects per element
+         */
+        public void testReadAllocation() throws Exception
+        {
+                final String writeName = jDir + "jalloc.mat";
+                final int    n         = 200;
+                
+                // Cell arrays with many small elements; the difference of
+                // n and 2n elements gives the allocation per element
+                MxFileWriter fwriter = new MxFileWriter(writeName);
+                
+                for ( int size : new int[] {n, 2*n} )
+                {
+                        AbstractArrayElement[] cells = new AbstractArrayElement[size];
+                        for ( int k = 0; k < size; k++ )
+                        {
+                                MxNumericArray a = new MxNumericArray("");
+                                a.setData(new double[] {k + 0.5});
+                                cells[k] = a;
+                        }
+                        
+                        MxCellArray cellArray = new MxCellArray("cells" + size);
+                        cellArray.setData(cells);
+                        fwriter.write(cellArray);
+                }
+                
+                fwriter.close();
+                
+                // Needs the allocation counter of the HotSpot ThreadMXBean
+                Object mxBean = ManagementFactory.getThreadMXBean();
+                assumeTrue(mxBean instanceof ThreadMXBean);
+                
+                ThreadMXBean bean = (ThreadMXBean)mxBean;
+                assumeTrue(bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled());
+                
+                long thread = Thread.currentThread().getId();
+                
+                MxFileReader freader = new MxFileReader(writeName);
+                
+                long[] allocated = new long[2];
+                
+                for ( int round = 0; round < 20; round++ ) // warm up, keep last
+                {
+                        for ( int r = 0; r < 2; r++ )
+                        {
+                                long before = bean.getThreadAllocatedBytes(thread);
+                                MxCellDataObject c = (MxCellDataObject)freader.getVariable("cells" + (r+1)*n);
+                                allocated[r] = bean.getThreadAllocatedBytes(thread) - before;
+                                
+                                assertEquals((r+1)*n, c.getNumOfElements());
+                        }
+                }
+                
+                freader.close();
+                
+                // Result objects of a scalar cell: MxNumericDataObject, dimensions,
+                // DoubleArray and double[1] (about 130 bytes); before reusing the
+                // scratch objects of the decode, about 1000 bytes were allocated
+                long perElement = (allocated[1] - allocated[0]) / n;
+                assertTrue("Allocated " + perElement + " bytes per element", perElement < 256);
+        }
+        
+        @Test(timeout=30000)
+        /*
+         * Cell arrays grown cell by cell must equal pre-sized cell arrays
+         * and must be built in linear time
+         */
+        public void testCellBuilder() throws Exception
+        {
+                final String writeName1 = jDir + "jcell_builder1.mat";
+                final String writeName2 = jDir + "jcell_builder2.mat";
+                final int    n          = 200000;
+                
+                // Cell by cell into a growing array, in reverse order
+                MxCellArray grown = new MxCellArray("c");
+                for ( int k = n-1; k >= 0; k-- )
+                {
+                        MxNumericArray a = new MxNumericArray("");
+                        a.setData(new double[] {k + 0.5});
+                        grown.addData(a, 0, k);
+                }
+                
+                // Pre-sized array
+                MxCellArray sized = new MxCellArray("c", 1, n);
+                for ( int k = 0; k < n; k++ )
+                {
+                        MxNumericArray a = new MxNumericArray("");
+                        a.setData(new double[] {k + 0.5});
+                        sized.addData(a, 0, k);
+                }
+                
+                MxFileWriter fwriter = new MxFileWriter(writeName1);
+                fwriter.write(grown);
+                fwriter.close();
+                
+                fwriter = new MxFileWriter(writeName2);
+                fwriter.write(sized);
+                fwriter.close();
+                
+                assertTrue(CompareBinary.compare(writeName1, writeName2, 128));
+                
+                MxFileReader freader = new MxFileReader(writeName1);
+                MxCellDataObject c = (MxCellDataObject)freader.getVariable("c");
+                freader.close();
+                
+                assertArrayEquals(new int[] {1, n}, c.getDimensions());
+                assertArrayEquals(new double[] {n - 0.5},
+                                  ((MxNumericDataObject)c.getCellLinear(n-1)).getDoubleLinearArray(), 0);
+                
+                // Cells not set are empty, cells set twice are replaced
+                MxCellArray sparse = new MxCellArray("s");
+                MxNumericArray a = new MxNumericArray("");
+                a.setData(new double[] {1.5, 2.5});
+                sparse.addData(a, 2, 1);
+                a = new MxNumericArray("");
+                a.setData(new double[] {3.5});
+                sparse.addData(a, 2, 1);
+                sparse.addData(null, 0, 2);
+                
+                fwriter = new MxFileWriter(writeName1);
+                fwriter.write(sparse);
+                fwriter.close();
+                
+                freader = new MxFileReader(writeName1);
+                c = (MxCellDataObject)freader.getVariable("s");
+                freader.close();
+                
+                assertArrayEquals(new int[] {3, 3}, c.getDimensions());
+                for ( int k = 0; k < 9; k++ )
+                {
+                        if ( k == 5 )
+                                assertArrayEquals(new double[] {3.5},
+                                                  ((MxNumericDataObject)c.getCellLinear(k)).getDoubleLinearArray(), 0);
+                        else
+                                assertTrue(c.getCellLinear(k) instanceof MxEmptyDataObject);
+                }
+                
+                // Struct fields set twice are replaced
+                MxStructArray struct = new MxStructArray("st", 2, false);
+                a = new MxNumericArray("");
+                a.setData(new double[] {1, 2, 3});
+                struct.addData("x", a);
+                a = new MxNumericArray("");
+                a.setData(new double[] {4});
+                struct.addData("y", a);
+                a = new MxNumericArray("");
+                a.setData(new double[] {5.5});
+                struct.addData("x", a);
+                
+                fwriter = new MxFileWriter(writeName1);
+                fwriter.write(struct);
+                fwriter.close();
+                
+                freader = new MxFileReader(writeName1);
+                MxStructDataObject st = (MxStructDataObject)freader.getVariable("st");
+                freader.close();
+                
+                assertEquals(2, st.getAllFields().length);
+                assertEquals("x", st.getAllFields()[0].getName());
+                assertEquals("y", st.getAllFields()[1].getName());
+                assertArrayEquals(new double[] {5.5},
+                                  ((MxNumericDataObject)st.getField("x")).getDoubleLinearArray(), 0);
+        }
+        
+        @Test
+        /*
+         * Struct fields decoded on first access must equal the fields of
+         * the eagerly decoded struct
+         */
+        public void testLazyStructFields() throws Exception
+        {
+                final String writeName = jDir + "jlazy_fields.mat";
+                
+                double[] big = new double[100000];
+                for ( int k = 0; k < big.length; k++ )
+                        big[k] = k * 0.25;
+                
+                for ( boolean compressed : new boolean[] {false, true} )
+                {
+                        MxStructArray struct = new MxStructArray("st", 51, compressed);
+                        
+                        MxNumericArray a = new MxNumericArray("");
+                        a.setData(big);
+                        struct.addData("big", a);
+                        
+                        for ( int k = 0; k < 50; k++ )
+                        {
+                                a = new MxNumericArray("");
+                                a.setData(new double[] {k});
+                                struct.addData("f" + k, a);
+                        }
+                        
+                        MxFileWriter fwriter = new MxFileWriter(writeName);
+                        fwriter.write(struct);
+                        fwriter.close();
+                        
+                        MxFileReader freader = new MxFileReader(writeName);
+                        MxStructDataObject eager = (MxStructDataObject)freader.getVariable("st");
+                        
+                        freader.setLazyFields(true);
+                        MxStructDataObject st = (MxStructDataObject)freader.getVariable("st");
+                        
+                        assertEquals(51, st.getFieldNames().length);
+                        assertEquals("big", st.getFieldNames()[0]);
+                        assertFalse(st.isFieldDecoded("big"));
+                        assertTrue(st.isFieldDecoded("f49"));
+                        assertArrayEquals(new double[] {49},
+                                          ((MxNumericDataObject)st.getField("f49")).getDoubleLinearArray(), 0);
+                        assertFalse(st.isFieldDecoded("big"));
+                        assertNull(st.getField("none"));
+                        
+                        // Hashing does not decode lazy fields
+                        assertEquals(eager.hashCode(), st.hashCode());
+                        assertTrue(new HashSet<MxDataObject>(Arrays.asList(st)).contains(st));
+                        assertFalse(st.isFieldDecoded("big"));
+                        
+                        MxNumericDataObject b = (MxNumericDataObject)st.getField("big");
+                        assertTrue(st.isFieldDecoded("big"));
+                        assertEquals("big", b.getName());
+                        assertArrayEquals(big, b.getDoubleLinearArray(), 0);
+                        
+                        assertEquals(eager, st);
+                        
+                        // Mapped files resolve fields the same way
+                        freader.close();
+                        freader = new MxFileReader(writeName,true);
+                        freader.setLazyFields(true);
+                        st = (MxStructDataObject)freader.getVariable("st");
+                        assertEquals(eager, st);
+                        freader.close();
+                }
+        }
+        
+        @Test
+        /*
+         * Tag sizes and element positions beyond 2 GB must be handled as
+         * unsigned 32-bit sizes and 64-bit offsets
+         */
+        public void testLargeFileOffsets() throws Exception
+        {
+                final String writeName = jDir + "jlarge_offsets.mat";
+                final String smallName = jDir + "jlarge_offsets_small.mat";
+                
+                // Tag sizes are unsigned 32-bit values
+                for ( ByteOrder bo : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN} )
+                {
+                        DataTagFieldReader tagInfo = new DataTagFieldReader(bo);
+                        assertTrue(tagInfo.read(new DataTagField(DataType.miMATRIX, 0xC0000000L).toByteArray(bo)));
+                        assertEquals(0xC0000000L, tagInfo.getDataSize());
+                        assertEquals(0xC0000008L, tagInfo.getElementSize());
+                        assertFalse(tagInfo.fitsIntoArray());
+                }
+                
+                try {
+                        new DataTagField(DataType.miMATRIX, DataTagField.MAX_NUM_OF_BYTES + 1);
+                        fail("Sizes beyond 4 GB cannot be encoded");
+                }
+                catch (IllegalArgumentException e) {
+                }
+                
+                // A uint8 variable of 2.25 GB (a sparse file, the data is
+                // never written) followed by a small variable
+                MxNumericArray a = new MxNumericArray("after");
+                a.setData(new double[] {1.5, 2.5, 3.5});
+                MxFileWriter fwriter = new MxFileWriter(smallName);
+                fwriter.write(a);
+                fwriter.close();
+                
+                ByteOrder bo    = fwriter.getByteOrder();
+                byte[]    small = Files.readAllBytes(new File(smallName).toPath());
+                long      n     = 0x90000000L;
+                
+                ByteBuffer big = ByteBuffer.allocate(64).order(bo);
+                big.putInt(DataType.miMATRIX.getIndex()).putInt((int)(48 + n));
+                big.putInt(DataType.miUINT32.getIndex()).putInt(8).putInt(MxClassID.mxUINT8_CLASS.getValue()).putInt(0);
+                big.putInt(DataType.miINT32.getIndex()).putInt(8).putInt(2).putInt((int)(n/2));
+                big.putInt(3 << 16 | DataType.miINT8.getIndex()).put("big".getBytes("US-ASCII")).put((byte)0);
+                big.putInt(DataType.miUINT8.getIndex()).putInt((int)n);
+                
+                RandomAccessFile raf = new RandomAccessFile(writeName, "rw");
+                try {
+                        raf.setLength(0);
+                        raf.write(small, 0, 128);
+                        raf.write(big.array(), 0, big.position());
+                        raf.setLength(128 + big.position() + n);
+                        raf.seek(raf.length());
+                        raf.write(small, 128, small.length - 128);
+                        raf.close();
+                        
+                        // Appending walks the elements up to the end of the file
+                        a = new MxNumericArray("late");
+                        a.setData(new double[] {4.5});
+                        fwriter = new MxFileWriter(writeName, true);
+                        fwriter.write(a);
+                        fwriter.close();
+                        
+                        for ( boolean mapped : new boolean[] {false, true} )
+                        {
+                                MxFileReader freader = new MxFileReader(writeName, mapped);
+                                
+                                assertEquals(new HashSet<String>(Arrays.asList("big", "after", "late")),
+                                             new HashSet<String>(Arrays.asList(freader.getVarNames())));
+                                
+                                MxDataObject info = freader.getVariable("big", true);
+                                assertEquals(MxClassID.mxUINT8_CLASS, info.getClassID());
+                                assertArrayEquals(new int[] {2, (int)(n/2)}, info.getDimensions());
+                                
+                                assertArrayEquals(new double[] {1.5, 2.5, 3.5},
+                                                  ((MxNumericDataObject)freader.getVariable("after")).getDoubleLinearArray(), 0);
+                                assertArrayEquals(new double[] {4.5},
+                                                  ((MxNumericDataObject)freader.getVariable("late")).getDoubleLinearArray(), 0);
+                                
+                                freader.close();
+                        }
+                }
+                finally {
+                        raf.close();
+                        new File(writeName).delete();
+                }
+        }
+        
+        @Test
+        /*
+         * Iterating a numeric variable column by column must give the
+         * columns of the decoded variable
+         */
+        public void testColumnIterator() throws Exception
+        {
+                final String writeName = jDir + "jcolumns.mat";
+                final int    rows      = 50;
+                final int    cols      = 1003;
+                
+                double[][] mtx = new double[rows][cols];
+                short[]    ints = new short[rows*cols];
+                for ( int j = 0; j < cols; j++ )
+                        for ( int i = 0; i < rows; i++ )
+                        {
+                                mtx[i][j]       = i + 0.001 * j;
+                                ints[i+j*rows]  = (short)(i - j);
+                        }
+                
+                for ( boolean compressed : new boolean[] {false, true} )
+                {
+                        MxNumericArray a = new MxNumericArray("m", compressed);
+                        a.setData(mtx);
+                        MxNumericArray b = new MxNumericArray("i", compressed);
+                        b.setData(ints);
+                        MxNumericArray c = new MxNumericArray("s", compressed);
+                        c.setData(new byte[] {7});
+                        
+                        MxFileWriter fwriter = new MxFileWriter(writeName);
+                        fwriter.write(a);
+                        fwriter.write(b);
+                        fwriter.write(c);
+                        fwriter.close();
+                        
+                        MxFileReader freader = new MxFileReader(writeName);
+                        
+                        // Batches as new arrays
+                        MxColumnIterator it = freader.getColumnIterator("m", 64);
+                        assertEquals(rows, it.getRows());
+                        assertEquals(cols, it.getColumns());
+                        
+                        int col = 0;
+                        while ( it.hasNext() )
+                        {
+                                double[] batch = it.next();
+                                assertEquals(0, batch.length % rows);
+                                for ( int k = 0; k < batch.length; k++ )
+                                        assertEquals(mtx[k % rows][col + k / rows], batch[k], 0);
+                                col += batch.length / rows;
+                        }
+                        assertEquals(cols, col);
+                        it.close();
+                        
+                        // Batches as views of a reused array; stored type int16
+                        it = freader.getColumnIterator("i", 100);
+                        col = 0;
+                        while ( it.hasNext() )
+                        {
+                                DoubleBuffer batch = it.nextBuffer();
+                                for ( int k = 0; batch.hasRemaining(); k++ )
+                                        assertEquals(ints[col*it.getRows() + k], batch.get(), 0);
+                                col = it.getColumnIndex();
+                        }
+                        assertEquals(ints.length, col * it.getRows());
+                        
+                        // Stopped early and closed: the Inflater is given back
+                        int pooled = CodecPool.getPooledInflaters();
+                        it = freader.getColumnIterator("m", 10);
+                        Spliterator<double[]> sp = it.spliterator();
+                        assertEquals((cols + 9) / 10, sp.getExactSizeIfKnown());
+                        assertTrue(sp.tryAdvance(new Consumer<double[]>()
+                        {
+                                public void accept(double[] batch)
+                                {
+                                        assertEquals(10 * rows, batch.length);
+                                }
+                        }));
+                        it.close();
+                        if ( compressed )
+                                assertEquals(Math.max(pooled, 1), CodecPool.getPooledInflaters());
+                        
+                        it = freader.getColumnIterator("s", 1);
+                        assertArrayEquals(new double[] {7}, it.next(), 0);
+                        assertFalse(it.hasNext());
+                        
+                        assertNull(freader.getColumnIterator("missing", 1));
+                        
+                        freader.close();
+                }
+        }
+        
+        /*
+         * Records the events of MxFileReader.parse as strings; consecutive
+         * chunks of the same part are recorded once
+         */
+        private static class EventRecorder extends MxEventAdapter
+        {
+                List<String> events = new ArrayList<String>();
+                String       skipField;
+                boolean      skipNext;
+                long         count;
+                double       sum;
+                
+                public boolean startArray(MxDataObject header)
+                {
+                        if ( skipNext )
+                        {
+                                skipNext = false;
+                                return false;
+                        }
+                        events.add("start:" + header.getName() + ":" + header.getClassID());
+                        return true;
+                }
+                
+                public void numericChunk(ByteBuffer data, DataType type, boolean imaginary)
+                {
+                        String e = "num:" + imaginary;
+                        if ( !e.equals(events.get(events.size()-1)) )
+                                events.add(e);
+                        
+                        for ( int k = data.position(); k < data.limit(); k += type.sizeOf() )
+                        {
+                                switch (type)
+                                {
+                                        case miDOUBLE: sum += data.getDouble(k);       break;
+                                        case miSINGLE: sum += data.getFloat(k);        break;
+                                        case miINT8:   sum += data.get(k);             break;
+                                        case miUINT8:  sum += data.get(k) & 0xFF;      break;
+                                        case miINT16:  sum += data.getShort(k);        break;
+                                        case miUINT16: sum += data.getChar(k);         break;
+                                        case miINT32:  sum += data.getInt(k);          break;
+                                        case miUINT32: sum += data.getInt(k) & 0xFFFFFFFFL; break;
+                                        default:       sum += data.getLong(k);         break;
+                                }
+                                count++;
+                        }
+                }
+                
+                public void sparseIndices(int[] ir, int[] jc)
+                {
+                        events.add("sparse:" + ir.length);
+                }
+                
+                public void characters(String s)
+                {
+                        events.add("chars:" + s);
+                }
+                
+                public void startCell(int index)
+                {
+                        events.add("cell:" + index);
+                }
+                
+                public void endCell(int index)
+                {
+                        events.add("endcell:" + index);
+                }
+                
+                public void startStruct(String[] fieldNames)
+                {
+                        events.add("struct:" + Arrays.toString(fieldNames));
+                }
+                
+                public void endStruct()
+                {
+                        events.add("endstruct");
+                }
+                
+                public void endArray()
+                {
+                        events.add("end");
+                }
+                
+                public void field(String name)
+                {
+                        events.add("field:" + name);
+                        skipNext = name.equals(skipField);
+                }
+        }
+        
+        @Test
+        /*
+         * Parsing variables must send the events of their elements in file
+         * order; skipped arrays must not affect the following ones
+         */
+        public void testEventParser() throws Exception
+        {
+                final String writeName = jDir + "jevents.mat";
+                final int    n         = 100000;
+                
+                double[] big = new double[n];
+                for ( int k = 0; k < n; k++ )
+                        big[k] = k + 0.5;
+                
+                for ( boolean compressed : new boolean[] {false, true} )
+                {
+                        MxCellArray c = new MxCellArray("c", 1, 2, compressed);
+                        MxCharacterArray chars = new MxCharacterArray("");
+                        chars.setData("ab");
+                        c.addData(chars, 0, 0);
+                        MxNumericArray z = new MxNumericArray("");
+                        z.setData(new double[] {1}, new double[] {2});
+                        c.addData(z, 0, 1);
+                        
+                        MxStructArray st = new MxStructArray("s", 2, compressed);
+                        MxNumericArray x = new MxNumericArray("");
+                        x.setData(big);
+                        st.addData("x", x);
+                        MxNumericArray y = new MxNumericArray("");
+                        y.setData(new double[] {3});
+                        st.addData("y", y);
+                        
+                        MxSparseArray sp = new MxSparseArray("sp", compressed);
+                        sp.setCSC(new int[] {0, 1}, new int[] {0, 1, 2}, new double[] {5, 6}, null, 2, 2);
+                        
+                        MxFileWriter fwriter = new MxFileWriter(writeName);
+                        fwriter.write(c);
+                        fwriter.write(st);
+                        fwriter.write(sp);
+                        fwriter.close();
+                        
+                        List<String> expected = Arrays.asList(
+                                "start:c:mxCELL_CLASS",
+                                "cell:0", "start::mxCHAR_CLASS", "chars:ab", "end", "endcell:0",
+                                "cell:1", "start::mxDOUBLE_CLASS", "num:false", "num:true", "end", "endcell:1",
+                                "end",
+                                "start:s:mxSTRUCT_CLASS", "struct:[x, y]",
+                                "field:x", "start::mxDOUBLE_CLASS", "num:false", "end",
+                                "field:y", "start::mxDOUBLE_CLASS", "num:false", "end",
+                                "endstruct", "end",
+                                "start:sp:mxSPARSE_CLASS", "sparse:2", "num:false", "end");
+                        
+                        for ( boolean mapped : new boolean[] {false, true} )
+                        {
+                                MxFileReader freader = new MxFileReader(writeName, mapped);
+                                
+                                EventRecorder h = new EventRecorder();
+                                assertTrue(freader.parse(h));
+                                assertEquals(expected, h.events);
+                                assertEquals(1 + 2 + 3 + 5 + 6 + (double)n * n / 2, h.sum, 1e-6);
+                                assertEquals(n + 5, h.count);
+                                
+                                // Skipped arrays cause no events; the following ones are not affected
+                                h = new EventRecorder();
+                                h.skipField = "x";
+                                assertTrue(freader.parse("s", h));
+                                assertEquals(Arrays.asList("start:s:mxSTRUCT_CLASS", "struct:[x, y]", "field:x",
+                                                           "field:y", "start::mxDOUBLE_CLASS", "num:false", "end",
+                                                           "endstruct", "end"), h.events);
+                                assertEquals(3, h.sum, 0);
+                                
+                                assertFalse(freader.parse("missing", h));
+                                
+                                freader.close();
+                        }
+                }
+        }
+        
+        @Test
+        /*
+         * Many small compressed variables must be written and read back
+         * correctly with pooled Inflaters and Deflaters
+         */
+        public void testCodecPool() throws Exception
+        {
+                final String writeName = jDir + "jmany_compressed.mat";
+                final int    n         = 2000;
+                
+                MxFileWriter fwriter = new MxFileWriter(writeName);
+                for ( int k = 0; k < n; k++ )
+                {
+                        MxNumericArray a = new MxNumericArray("v" + k, true);
+                        a.setData(new double[] {k, k + 0.5, -k});
+                        fwriter.write(a);
+                }
+                fwriter.close();
+                assertTrue(CodecPool.getPooledDeflaters() > 0);
+                
+                for ( boolean mapped : new boolean[] {false, true} )
+                {
+                        MxFileReader freader = new MxFileReader(writeName, mapped);
+                        for ( int k = 0; k < n; k++ )
+                                assertArrayEquals(new double[] {k, k + 0.5, -k},
+                                                  ((MxNumericDataObject)freader.getVariable("v" + k)).getDoubleLinearArray(), 0);
+                        freader.close();
+                }
+                assertTrue(CodecPool.getPooledInflaters() > 0);
+                
+                // Byte-wise and block-wise access see the same inflated data
+                byte[] data = new byte[100000];
+                for ( int k = 0; k < data.length; k++ )
+                        data[k] = (byte)(k % 251 + k / 1000);
+                
+                StreamCompressor sc = new StreamCompressor();
+                for ( int k = 0; k < 1000; k++ )
+                        sc.write(data[k]);
+                sc.write(data, 1000, data.length - 1000);
+                byte[] compressed = sc.toByteAray();
+                sc.close();
+                
+                StreamDecompressor sd = new StreamDecompressor(new ByteArrayInputStream(compressed));
+                byte[] out = new byte[data.length];
+                for ( int k = 0; k < 10; k++ )
+                        out[k] = (byte)sd.read();
+                assertEquals(20, sd.skip(20));
+                int off = 30;
+                for ( int m; off < data.length && (m = sd.read(out, off, Math.min(30000, data.length - off))) > 0; )
+                        off += m;
+                assertEquals(data.length, off);
+                assertEquals(data.length, sd.getPosition());
+                assertEquals(-1, sd.read());
+                sd.close();
+                
+                System.arraycopy(data, 10, out, 10, 20);
+                assertArrayEquals(data, out);
+                
+                // A bulk read is not cut short at block boundaries
+                sd = new StreamDecompressor(new ByteArrayInputStream(compressed));
+                assertEquals(5, sd.read(out, 0, 5));
+                assertEquals(data.length - 5, sd.read(out, 5, data.length - 5));
+                sd.close();
+                assertArrayEquals(data, out);
+        }
+        
+        @Test
+        /*
+         * A compression policy must decide per variable whether it is
+         * stored or compressed, and the statistics must count the decisions
+         */
+        public void testCompressionPolicy() throws Exception
+        {
+                final String writeName = jDir + "jpolicy.mat";
+                final int    n         = 100000;
+                
+                Random random = new Random(42);
+                double[] noise = new double[n];
+                for ( int k = 0; k < n; k++ )
+                        noise[k] = Double.longBitsToDouble(random.nextLong());
+                double[] zeros = new double[n];
+                
+                List<AbstractArrayElement> arrays = new ArrayList<AbstractArrayElement>();
+                MxNumericArray a = new MxNumericArray("scalar", true);
+                a.setData(new double[] {1});
+                arrays.add(a);
+                a = new MxNumericArray("noise", true);
+                a.setData(noise);
+                arrays.add(a);
+                a = new MxNumericArray("zeros", false);
+                a.setData(zeros);
+                arrays.add(a);
+                
+                ExecutorService executor = Executors.newFixedThreadPool(2);
+                
+                try {
+                        for ( boolean parallel : new boolean[] {false, true} )
+                        {
+                                MxFileWriter fwriter = new MxFileWriter(writeName);
+                                fwriter.setCompressionPolicy(new AdaptiveCompressionPolicy());
+                                
+                                if ( parallel )
+                                        fwriter.write(arrays, executor);
+                                else
+                                        for ( AbstractArrayElement array : arrays )
+                                                fwriter.write(array);
+                                
+                                fwriter.close();
+                                
+                                // The scalar is too small and the noise incompressible
+                                CompressionStats stats = fwriter.getCompressionStats();
+                                assertEquals(2, stats.getStoredElements());
+                                assertEquals(1, stats.getCompressedElements());
+                                assertTrue(stats.getCompressionRatio() < 0.01);
+                                assertEquals(128 + stats.getStoredBytes() + stats.getCompressedBytes(),
+                                             new File(writeName).length());
+                                
+                                MxFileReader freader = new MxFileReader(writeName);
+                                assertArrayEquals(new double[] {1},
+                                                  ((MxNumericDataObject)freader.getVariable("scalar")).getDoubleLinearArray(), 0);
+                                assertArrayEquals(noise, ((MxNumericDataObject)freader.getVariable("noise")).getDoubleLinearArray(), 0);
+                                assertArrayEquals(zeros, ((MxNumericDataObject)freader.getVariable("zeros")).getDoubleLinearArray(), 0);
+                                freader.close();
+                        }
+                }
+                finally {
+                        executor.shutdown();
+                }
+                
+                assertTrue(AdaptiveCompressionPolicy.estimateRatio(new byte[4096]) < 0.1);
+                
+                // A custom policy sees the size and a sample of each element
+                final List<Long> sizes = new ArrayList<Long>();
+                MxFileWriter fwriter = new MxFileWriter(writeName);
+                fwriter.setCompressionPolicy(new CompressionPolicy()
+                {
+                        public int getSampleSize()
+                        {
+                                return 16;
+                        }
+                        
+                        public int getCompressionLevel(AbstractArrayElement array, long size, byte[] sample, int level)
+                        {
+                                assertEquals(16, sample.length);
+                                sizes.add(size);
+                                return Deflater.BEST_COMPRESSION;
+                        }
+                });
+                for ( AbstractArrayElement array : arrays )
+                        fwriter.write(array);
+                fwriter.close();
+                
+                assertEquals(3, fwriter.getCompressionStats().getCompressedElements());
+                assertEquals(0, fwriter.getCompressionStats().getStoredElements());
+                assertEquals(sizes.get(1).longValue(), 8 + 16 + 16 + 16 + 8 + 8L * n);
+                
+                MxFileReader freader = new MxFileReader(writeName);
+                assertArrayEquals(noise, ((MxNumericDataObject)freader.getVariable("noise")).getDoubleLinearArray(), 0);
+                freader.close();
+        }
 }